@@ -0,0 +1,127 @@
+package au.id.fedorgabrus.feverlog;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+/**
+ * Shows countdown till the next treatment in a progress bar and a text view.
+ *
+ * <p>Wakes up only when the shown text changes: once a minute while more than an hour is left,
+ * when the text shows hours and minutes, and once a second during the last hour, when it shows
+ * seconds too. Text is formatted into a reused buffer, so ticks don't allocate strings. Should be
+ * stopped while the countdown isn't visible and started again with the remaining time. Should be
+ * used on the main thread.</p>
+ */
+final class CountdownRenderer {
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    // Seconds are shown when no more than this time is left.
+    private static final long SECONDS_THRESHOLD = MILLIS_PER_HOUR;
+
+    private final Handler handler = new Handler();
+    private final ProgressBar progressBar;
+    private final TextView textView;
+    // Called when the countdown reaches zero.
+    private final Runnable finishListener;
+    // Text of the countdown, long enough for any number of hours.
+    private final char[] buffer = new char[32];
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            render();
+        }
+    };
+    // Time of the end in the elapsed realtime clock.
+    private long deadline;
+    private boolean running = false;
+
+    /**
+     * Constructor for the renderer.
+     *
+     * @param progressBar progress bar with the maximum set to the whole interval in seconds.
+     * @param textView text view for the time left.
+     * @param finishListener called when the countdown reaches zero, not called when it's stopped.
+     */
+    CountdownRenderer(ProgressBar progressBar, TextView textView, Runnable finishListener) {
+        this.progressBar = progressBar;
+        this.textView = textView;
+        this.finishListener = finishListener;
+    }
+
+    /**
+     * Starts countdown, replacing the running one.
+     *
+     * @param millisInFuture time left in milliseconds.
+     */
+    void start(long millisInFuture) {
+        handler.removeCallbacks(tick);
+        deadline = SystemClock.elapsedRealtime() + millisInFuture;
+        running = true;
+        render();
+    }
+
+    /**
+     * Stops countdown without calling the finish listener. Shown values are kept.
+     */
+    void stop() {
+        handler.removeCallbacks(tick);
+        running = false;
+    }
+
+    /**
+     * Checks if countdown is running.
+     *
+     * @return true if countdown is started and hasn't finished or stopped.
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    // Shows time left and schedules the next change of the text.
+    private void render() {
+        long millisLeft = deadline - SystemClock.elapsedRealtime();
+        if (millisLeft <= 0) {
+            running = false;
+            finishListener.run();
+            return;
+        }
+        progressBar.setProgress((int) (millisLeft / MILLIS_PER_SECOND));
+        long unit = millisLeft > SECONDS_THRESHOLD ? MILLIS_PER_MINUTE : MILLIS_PER_SECOND;
+        textView.setText(buffer, 0, format(millisLeft, unit));
+        // Time left is shown rounded up, so the text changes when it reaches the next whole unit,
+        // a whole unit after it's exactly on one. Also wakes up on the seconds threshold.
+        long delay = (millisLeft - 1) % unit + 1;
+        handler.postDelayed(tick, delay);
+    }
+
+    // Writes time left rounded up to the unit as "05h 12m" or "00h 12m 34s" into the buffer.
+    // Returns its length.
+    private int format(long millisLeft, long unit) {
+        long totalSeconds = (millisLeft + unit - 1) / unit * (unit / MILLIS_PER_SECOND);
+        int length = writeNumber(0, totalSeconds / 3600, 'h');
+        buffer[length++] = ' ';
+        length = writeNumber(length, totalSeconds / 60 % 60, 'm');
+        if (unit == MILLIS_PER_SECOND) {
+            buffer[length++] = ' ';
+            length = writeNumber(length, totalSeconds % 60, 's');
+        }
+        return length;
+    }
+
+    // Writes number with at least two digits followed by the suffix. Returns the next offset.
+    private int writeNumber(int offset, long number, char suffix) {
+        int digits = 2;
+        for (long rest = number / 100; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        buffer[offset + digits] = suffix;
+        return offset + digits + 1;
+    }
+}
@@ -21,6 +21,7 @@ import android.widget.TextView;
 import android.widget.TimePicker;
 import android.widget.Toast;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -28,8 +29,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.Objects;
 
+import au.id.fedorgabrus.feverlog.models.AppSettings;
 import au.id.fedorgabrus.feverlog.models.FeverTreatment;
-import au.id.fedorgabrus.feverlog.models.TreatmentData;
 
 public class CustomTreatmentActivity extends AppCompatActivity{
     /**
@@ -49,9 +50,10 @@ public class CustomTreatmentActivity extends AppCompatActivity{
      */
     public static final String TREATMENT_INTENT_EXTRA_HEADER = "TREATMENT_INTENT_EXTRA_HEADER";
     /**
-     * Used to put/extract treatment index into/from intent.
+     * Used to return the treatment before editing along with the edited one.
      */
-    public static final String TREATMENT_INDEX_EXTRA_HEADER = "TREATMENT_INDEX_EXTRA_HEADER";
+    public static final String ORIGINAL_TREATMENT_INTENT_EXTRA_HEADER =
+            "ORIGINAL_TREATMENT_INTENT_EXTRA_HEADER";
 
     // Pattern for date in the date EditText view.
     private static final String DATE_FORMATTER_PATTERN = "dd/MM/yyy";
@@ -64,8 +66,11 @@ public class CustomTreatmentActivity extends AppCompatActivity{
     private EditText nameCustomTreatmentEditText;
     private EditText dateCustomTreatmentEditText;
     private EditText timeCustomTreatmentEditText;
+    private EditText doseAmountCustomTreatmentEditText;
+    private EditText doseUnitCustomTreatmentEditText;
 
-    private int treatmentIndex = -1;
+    // Treatment to edit.
+    private FeverTreatment originalTreatment = null;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -91,6 +96,8 @@ public class CustomTreatmentActivity extends AppCompatActivity{
         dateCustomTreatmentEditText.setInputType(EditorInfo.TYPE_NULL);
         timeCustomTreatmentEditText = findViewById(R.id.timeCustomTreatmentEditText);
         timeCustomTreatmentEditText.setInputType(EditorInfo.TYPE_NULL);
+        doseAmountCustomTreatmentEditText = findViewById(R.id.doseAmountCustomTreatmentEditText);
+        doseUnitCustomTreatmentEditText = findViewById(R.id.doseUnitCustomTreatmentEditText);
         final Button okCustomTreatmentButton = findViewById(R.id.okCustomTreatmentButton);
         final Button cancelCustomTreatmentButton = findViewById(R.id.cancelCustomTreatmentButton);
 
@@ -98,25 +105,22 @@ public class CustomTreatmentActivity extends AppCompatActivity{
         if (activityPurpose.equals(CREATE_NEW)) {
             customTreatmentHeaderTextView.setText(R.string.new_header_custom_treatment);
             okCustomTreatmentButton.setText(R.string.create_custom_treatment);
+            // New treatments start with the dose from the settings.
+            populateInterfaceDose(AppSettings.getDefaultDoseAmount(),
+                    AppSettings.getDefaultDoseUnit());
         }
         else if (activityPurpose.equals(EDIT)) {
             customTreatmentHeaderTextView.setText(R.string.edit_header_custom_treatment);
             okCustomTreatmentButton.setText(R.string.update_custom_treatment);
-            // Gets treatment index from intent.
-            treatmentIndex = intent.getIntExtra(TREATMENT_INDEX_EXTRA_HEADER, -1);
-            if (treatmentIndex == -1) {
-                Log.e(TAG, "No treatment index was received with intent.");
+            // Gets treatment to edit from intent, it isn't necessarily loaded into the data model.
+            originalTreatment = (FeverTreatment) intent
+                    .getSerializableExtra(TREATMENT_INTENT_EXTRA_HEADER);
+            if (originalTreatment == null) {
+                Log.e(TAG, "No treatment was received with intent.");
                 finish();
                 return;
             }
-            // Gets treatment to edit.
-            FeverTreatment treatmentToEdit = TreatmentData.getInstance().getTreatment(treatmentIndex);
-            if (treatmentToEdit == null) {
-                Log.e(TAG, "No treatment with provided by intent index in the data model.");
-                finish();
-                return;
-            }
-            populateInterfaceTreatment(treatmentToEdit);
+            populateInterfaceTreatment(originalTreatment);
         }
         
         // Handles ok button click.
@@ -187,6 +191,23 @@ public class CustomTreatmentActivity extends AppCompatActivity{
                 .format(DateTimeFormatter.ofPattern(DATE_FORMATTER_PATTERN)));
         timeCustomTreatmentEditText.setText(treatment.getTreatmentTime().toLocalTime()
                 .format(DateTimeFormatter.ofPattern(TIME_FORMATTER_PATTERN)));
+        populateInterfaceDose(treatment.getDoseAmount(), treatment.getDoseUnit());
+    }
+
+    /**
+     * Populates dose fields, leaves them blank if the dose isn't recorded.
+     *
+     * @param doseAmount dose amount.
+     * @param doseUnit dose unit.
+     */
+    private void populateInterfaceDose(double doseAmount, String doseUnit) {
+        if (doseAmount != FeverTreatment.NO_DOSE_AMOUNT) {
+            doseAmountCustomTreatmentEditText.setText(
+                    BigDecimal.valueOf(doseAmount).stripTrailingZeros().toPlainString());
+        }
+        if (doseUnit != null) {
+            doseUnitCustomTreatmentEditText.setText(doseUnit);
+        }
     }
 
     /**
@@ -232,32 +253,54 @@ public class CustomTreatmentActivity extends AppCompatActivity{
             timeCustomTreatmentEditText.requestFocus();
             return;
         }
+        // Dose is optional, blank amount isn't recorded.
+        String doseAmountString = doseAmountCustomTreatmentEditText.getText().toString().trim();
+        double doseAmount = FeverTreatment.NO_DOSE_AMOUNT;
+        if (!doseAmountString.isEmpty()) {
+            try {
+                doseAmount = Double.parseDouble(doseAmountString);
+            }
+            catch (NumberFormatException e) {
+                doseAmount = Double.NaN;
+            }
+            if (!(doseAmount >= 0) || Double.isInfinite(doseAmount)) {
+                doseAmountCustomTreatmentEditText.requestFocus();
+                doseAmountCustomTreatmentEditText.selectAll();
+                Toast.makeText(this, R.string.invalid_dose_amount_field, Toast.LENGTH_SHORT).show();
+                return;
+            }
+        }
+        String doseUnit = doseUnitCustomTreatmentEditText.getText().toString().trim();
+        if (doseUnit.isEmpty()) {
+            doseUnit = null;
+        }
         final LocalDateTime dateTime = LocalDateTime.parse(dateString + timeString,
                 DateTimeFormatter.ofPattern(DATE_FORMATTER_PATTERN + TIME_FORMATTER_PATTERN));
         Intent intent = new Intent();
         // Creates new treatment.
         FeverTreatment treatment;
         if (activityPurpose.equals(CREATE_NEW)) {
-            treatment = new FeverTreatment(dateTime, name);
+            treatment = new FeverTreatment(FeverTreatment.DEFAULT_ID, dateTime, name,
+                    doseAmount, doseUnit);
             intent.putExtra(TREATMENT_INTENT_EXTRA_HEADER, treatment);
         }
         // Updates existed treatment.
         else if (activityPurpose.equals(EDIT)) {
-            treatment = TreatmentData.getInstance().getTreatment(treatmentIndex);
-            if (treatment == null) {
-                Log.e(TAG, "validateAndSaveData(): invalid treatmentIndex value");
-                finish();
-                return;
-            }
             // Finishes activity as cancelled if no value has changed.
-            if (treatment.getTreatmentName().equals(name) && treatment.getTreatmentTime().isEqual(dateTime)) {
+            if (originalTreatment.getTreatmentName().equals(name)
+                    && originalTreatment.getTreatmentTime().isEqual(dateTime)
+                    && originalTreatment.getDoseAmount() == doseAmount
+                    && Objects.equals(originalTreatment.getDoseUnit(), doseUnit)) {
                 setResult(RESULT_CANCELED);
                 finish();
                 return;
             }
-            intent.putExtra(TREATMENT_INDEX_EXTRA_HEADER, treatmentIndex);
-            treatment.setTreatmentName(name);
-            treatment.setTreatmentTime(dateTime);
+            // The data model and DB are updated by the parent activity.
+            treatment = new FeverTreatment(originalTreatment.getId(), dateTime, name,
+                    doseAmount, doseUnit);
+            treatment.setProfileId(originalTreatment.getProfileId());
+            intent.putExtra(ORIGINAL_TREATMENT_INTENT_EXTRA_HEADER, originalTreatment);
+            intent.putExtra(TREATMENT_INTENT_EXTRA_HEADER, treatment);
         }
         setResult(RESULT_OK, intent);
         finish();
@@ -0,0 +1,81 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Keeps a single connection to the treatments.db for the whole application.
+ *
+ * <p>Every screen acquires the manager when it is created and releases it when destroyed. The DB
+ * is opened on the first use and closed only when the last screen releases it, so moving between
+ * screens doesn't reopen it. Write-ahead logging is enabled, so reads don't block the writer.
+ * Realized as a singleton. Thread safe.</p>
+ */
+final class DatabaseManager {
+    private static final String TAG = "DatabaseManager";
+
+    private static DatabaseManager instance = null;
+
+    private final TreatmentsDBHelper dbHelper;
+    // Number of screens that use the DB.
+    private int references = 0;
+
+    // Private constructor.
+    private DatabaseManager(Context context) {
+        dbHelper = new TreatmentsDBHelper(context);
+        dbHelper.setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Getter for the manager instance.
+     *
+     * @param context any context, application context is retained.
+     * @return database manager.
+     */
+    static synchronized DatabaseManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Registers new user of the DB.
+     */
+    synchronized void acquire() {
+        references++;
+    }
+
+    /**
+     * Unregisters user of the DB and closes the DB when there are no users left.
+     */
+    synchronized void release() {
+        if (references == 0) {
+            Log.e(TAG, "release(): DB isn't acquired.");
+            return;
+        }
+        references--;
+        if (references == 0) {
+            dbHelper.close();
+        }
+    }
+
+    /**
+     * Returns helper that performs operations on the DB.
+     *
+     * @return DB helper.
+     */
+    TreatmentsDBHelper getHelper() {
+        return dbHelper;
+    }
+
+    /**
+     * Returns the DB, opening it if needed. Shouldn't be called on the main thread.
+     *
+     * @return writable database.
+     */
+    SQLiteDatabase getDatabase() {
+        return dbHelper.getWritableDatabase();
+    }
+}
@@ -0,0 +1,297 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+
+/**
+ * Loads treatment history of a profile from the DB page by page, starting from the newest
+ * treatment.
+ *
+ * <p>Uses keyset pagination over the profile and usage date index: each page continues after the
+ * usage date and id of the last loaded row, so the cost of a page doesn't depend on how many rows
+ * were loaded before it. Has an instance per profile, as pages are shared by all activities
+ * through the data model of the profile. Screens that walk the history on their own create
+ * separate pagers. Thread safe.</p>
+ * <p>Screens that keep only a window of the history load pages before and after the shown rows
+ * and reload the window with the static methods, which take the bounds from the shown rows.</p>
+ */
+public class HistoryPager {
+    /**
+     * Number of treatments in a page.
+     */
+    public static final int PAGE_SIZE = 100;
+
+    // Pagers by profile ids.
+    private static final Map<Long, HistoryPager> instances = new HashMap<>();
+
+    // Names are resolved through the treatments dictionary. Selections are shared with the
+    // history export, which walks the history the same way.
+    static final String[] COLUMNS = new String[] {
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_ID,
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME,
+            TreatmentsContract.Treatments.QUALIFIED_NAME,
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_DOSE_AMOUNT,
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_DOSE_UNIT
+    };
+    // Positions of the columns in the cursor.
+    static final int ID_COLUMN_INDEX = 0;
+    static final int USAGE_TIME_COLUMN_INDEX = 1;
+    static final int NAME_COLUMN_INDEX = 2;
+    static final int DOSE_AMOUNT_COLUMN_INDEX = 3;
+    static final int DOSE_UNIT_COLUMN_INDEX = 4;
+    // Selects history of the profile.
+    static final String SELECTION_PROFILE =
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_PROFILE_ID + " = ?";
+    // Continues after the last loaded row. Ties are ordered by ascending id, same as in the index.
+    static final String SELECTION_AFTER_LAST = SELECTION_PROFILE + " AND "
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " <= ? AND ("
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " < ? OR "
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_ID + " > ?)";
+    static final String ORDER_BY =
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " DESC, "
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_ID + " ASC";
+    // Newer rows before the first loaded row, read in the reverse order.
+    static final String SELECTION_BEFORE_FIRST = SELECTION_PROFILE + " AND "
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " >= ? AND ("
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " > ? OR "
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_ID + " < ?)";
+    static final String REVERSE_ORDER_BY =
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " ASC, "
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_ID + " DESC";
+    // Bounds of a range of rows, both inclusive.
+    static final String SELECTION_FROM_FIRST =
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " <= ? AND ("
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " < ? OR "
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_ID + " >= ?)";
+    static final String SELECTION_TO_LAST =
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " >= ? AND ("
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " > ? OR "
+            + TreatmentsContract.TreatmentsHistory.QUALIFIED_ID + " <= ?)";
+
+    // Profile of the loaded history.
+    private final long profileId;
+    // Last loaded row, null if nothing was loaded yet.
+    private FeverTreatment last = null;
+    // True if the last page was shorter than the page size.
+    private boolean exhausted = false;
+
+    // Private constructor.
+    private HistoryPager(long profileId) {
+        this.profileId = profileId;
+    }
+
+    /**
+     * Getter for the pager of the profile.
+     *
+     * @param profileId id of the profile.
+     * @return history pager.
+     */
+    public static synchronized HistoryPager getInstance(long profileId) {
+        HistoryPager pager = instances.get(profileId);
+        if (pager == null) {
+            pager = new HistoryPager(profileId);
+            instances.put(profileId, pager);
+        }
+        return pager;
+    }
+
+    /**
+     * Creates a pager that isn't shared through the data model.
+     *
+     * @param profileId id of the profile.
+     * @return new history pager starting from the newest treatment.
+     */
+    public static HistoryPager create(long profileId) {
+        return new HistoryPager(profileId);
+    }
+
+    /**
+     * Starts loading from the newest treatment again and loads pages until all treatments for the
+     * past 24 hours are loaded.
+     *
+     * @param db database to query.
+     * @return treatments in descending time order.
+     */
+    public synchronized List<FeverTreatment> loadRecentHistory(SQLiteDatabase db) {
+        reset();
+        LocalDateTime time24hAgo = LocalDateTime.now().minusHours(24);
+        List<FeverTreatment> result = new ArrayList<>();
+        List<FeverTreatment> page;
+        do {
+            page = loadNextPage(db);
+            result.addAll(page);
+        } while (!page.isEmpty() && !exhausted
+                && page.get(page.size() - 1).getTreatmentTime().compareTo(time24hAgo) >= 0);
+        return result;
+    }
+
+    /**
+     * Loads next pages until at least the provided number of treatments is loaded or there are no
+     * more treatments. Loads at least one page.
+     *
+     * @param db database to query.
+     * @param minRows minimum number of treatments to load.
+     * @return treatments in descending time order.
+     */
+    public synchronized List<FeverTreatment> loadPages(SQLiteDatabase db, int minRows) {
+        List<FeverTreatment> result = new ArrayList<>();
+        List<FeverTreatment> page;
+        do {
+            page = loadNextPage(db);
+            result.addAll(page);
+        } while (!page.isEmpty() && !exhausted && result.size() < minRows);
+        return result;
+    }
+
+    /**
+     * Loads the next page of the history.
+     *
+     * @param db database to query.
+     * @return treatments in descending time order, empty list if there are no more treatments.
+     */
+    public synchronized List<FeverTreatment> loadNextPage(SQLiteDatabase db) {
+        if (exhausted || db == null) {
+            return new ArrayList<>();
+        }
+        List<FeverTreatment> page = loadPageAfter(db, profileId, last);
+        if (!page.isEmpty()) {
+            last = page.get(page.size() - 1);
+        }
+        exhausted = page.size() < PAGE_SIZE;
+        return page;
+    }
+
+    /**
+     * Loads the page of the history that follows the provided treatment.
+     *
+     * @param db database to query.
+     * @param profileId id of the profile.
+     * @param last last loaded treatment, null to start from the newest treatment.
+     * @return treatments in descending time order, shorter than the page size if there are no
+     *      more treatments.
+     */
+    public static List<FeverTreatment> loadPageAfter(SQLiteDatabase db, long profileId,
+                                                     FeverTreatment last) {
+        if (last == null) {
+            return query(db, SELECTION_PROFILE, new String[] {String.valueOf(profileId)},
+                    ORDER_BY, PAGE_SIZE);
+        }
+        return query(db, SELECTION_AFTER_LAST, keyArgs(profileId, last), ORDER_BY, PAGE_SIZE);
+    }
+
+    /**
+     * Loads the page of newer treatments that precedes the provided treatment.
+     *
+     * @param db database to query.
+     * @param profileId id of the profile.
+     * @param first first loaded treatment.
+     * @return treatments in descending time order, shorter than the page size if they reach the
+     *      newest treatment.
+     */
+    public static List<FeverTreatment> loadPageBefore(SQLiteDatabase db, long profileId,
+                                                      FeverTreatment first) {
+        // Index is read backwards from the first treatment.
+        List<FeverTreatment> page = query(db, SELECTION_BEFORE_FIRST, keyArgs(profileId, first),
+                REVERSE_ORDER_BY, PAGE_SIZE);
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     * Loads the treatments between the provided ones again, e.g. to show changes of the loaded
+     * rows, and counts the treatments before them. Cost depends on the number of loaded rows, the
+     * count only reads the index.
+     *
+     * @param db database to query.
+     * @param profileId id of the profile.
+     * @param first first treatment of the range, null to start from the newest treatment.
+     * @param last last treatment of the range, null to continue to the oldest treatment.
+     * @param limit maximum number of treatments to load.
+     * @return loaded range.
+     */
+    public static HistoryRange loadRange(SQLiteDatabase db, long profileId, FeverTreatment first,
+                                         FeverTreatment last, int limit) {
+        String selection = SELECTION_PROFILE;
+        List<String> selectionArgs = new ArrayList<>();
+        selectionArgs.add(String.valueOf(profileId));
+        if (first != null) {
+            selection += " AND " + SELECTION_FROM_FIRST;
+            selectionArgs.addAll(Arrays.asList(keyArgs(profileId, first)).subList(1, 4));
+        }
+        if (last != null) {
+            selection += " AND " + SELECTION_TO_LAST;
+            selectionArgs.addAll(Arrays.asList(keyArgs(profileId, last)).subList(1, 4));
+        }
+        // One more row tells if the range was cut.
+        List<FeverTreatment> treatments = query(db, selection,
+                selectionArgs.toArray(new String[0]), ORDER_BY, limit + 1);
+        boolean cut = treatments.size() > limit;
+        if (cut) {
+            treatments.remove(limit);
+        }
+        int offset = first == null ? 0 : (int) DatabaseUtils.longForQuery(db,
+                TreatmentsContract.TreatmentsHistory.SQL_COUNT_BEFORE, keyArgs(profileId, first));
+        return new HistoryRange(offset, treatments, cut || last != null);
+    }
+
+    // Arguments of the keyset selections: profile id, usage time twice and id of the treatment.
+    private static String[] keyArgs(long profileId, FeverTreatment treatment) {
+        String usageTime =
+                String.valueOf(TreatmentsDBHelper.toUsageTime(treatment.getTreatmentTime()));
+        return new String[] {String.valueOf(profileId), usageTime, usageTime,
+                String.valueOf(treatment.getId())};
+    }
+
+    // Reads treatments with names.
+    private static List<FeverTreatment> query(SQLiteDatabase db, String selection,
+                                              String[] selectionArgs, String orderBy, int limit) {
+        List<FeverTreatment> treatments = new ArrayList<>();
+        Cursor cursor = db.query(
+                TreatmentsContract.TreatmentsHistory.TABLE_WITH_NAMES,
+                COLUMNS,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                orderBy,
+                String.valueOf(limit)
+        );
+        try {
+            while (cursor.moveToNext()) {
+                treatments.add(TreatmentsDBHelper.readTreatment(cursor));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return treatments;
+    }
+
+    /**
+     * Checks if there are treatments that weren't loaded yet.
+     *
+     * @return true if more pages may be available.
+     */
+    public synchronized boolean hasMorePages() {
+        return !exhausted;
+    }
+
+    /**
+     * Resets pager to start from the newest treatment.
+     */
+    public synchronized void reset() {
+        last = null;
+        exhausted = false;
+    }
+}
@@ -0,0 +1,59 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import java.util.List;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+
+/**
+ * Consecutive treatments of the history loaded with
+ * {@link HistoryPager#loadRange(android.database.sqlite.SQLiteDatabase, long, FeverTreatment,
+ * FeverTreatment, int)}, together with their position in the whole history.
+ */
+public final class HistoryRange {
+    // Number of treatments before the first one of the range.
+    private final int offset;
+    // Treatments in descending time order.
+    private final List<FeverTreatment> treatments;
+    // True if there may be older treatments after the range.
+    private final boolean hasOlder;
+
+    /**
+     * All args constructor.
+     *
+     * @param offset number of treatments before the first one of the range.
+     * @param treatments treatments in descending time order.
+     * @param hasOlder true if there may be older treatments after the range.
+     */
+    HistoryRange(int offset, List<FeverTreatment> treatments, boolean hasOlder) {
+        this.offset = offset;
+        this.treatments = treatments;
+        this.hasOlder = hasOlder;
+    }
+
+    /**
+     * Getter for the number of treatments before the range.
+     *
+     * @return number of newer treatments that aren't in the range.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Getter for the treatments.
+     *
+     * @return treatments in descending time order.
+     */
+    public List<FeverTreatment> getTreatments() {
+        return treatments;
+    }
+
+    /**
+     * Checks if there may be older treatments after the range.
+     *
+     * @return true if the range doesn't reach the oldest treatment or if it isn't known.
+     */
+    public boolean hasOlder() {
+        return hasOlder;
+    }
+}
@@ -0,0 +1,341 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports history of a profile into a CSV file and imports it back, streaming the rows.
+ *
+ * <p>Export walks the history with the same keyset pages as the {@link HistoryPager} and writes
+ * every row as soon as it's read through a buffered writer over the file channel. Import parses
+ * the file record by record and inserts rows in chunks, each chunk in its own transaction with
+ * the compiled statements reused for all rows. Memory use doesn't depend on the number of rows.
+ * Progress is reported after every chunk. Transfer can be cancelled from any thread, it stops
+ * before the next chunk, rows of the committed chunks of a cancelled import are kept.</p>
+ *
+ * <p>File has a header row and a row per treatment with local date and time in ISO format,
+ * treatment name, dose amount and dose unit. Dose fields are empty if not recorded.</p>
+ */
+public final class HistoryTransfer {
+    private static final String TAG = "HistoryTransfer";
+    /**
+     * Number of rows read or inserted between progress reports, inserted in one transaction.
+     */
+    static final int CHUNK_SIZE = 500;
+    // Size of the file buffers, in bytes and chars.
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String HEADER = "time,treatment,dose_amount,dose_unit";
+    // Number of fields in a row.
+    private static final int FIELD_COUNT = 4;
+    // Name of the first header field, used to recognize the header row.
+    private static final String TIME_FIELD = "time";
+
+    // Receives number of rows transferred so far, null if progress isn't reported.
+    private final TreatmentsRepository.Callback<Integer> progress;
+    // Checked before every chunk.
+    private volatile boolean cancelled = false;
+
+    /**
+     * Constructor.
+     *
+     * @param progress receives number of rows transferred so far after every chunk, on the
+     *                 transfer thread. Can be null.
+     */
+    HistoryTransfer(TreatmentsRepository.Callback<Integer> progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Asks the transfer to stop before the next chunk. Can be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks if the transfer was cancelled.
+     *
+     * @return true if {@link #cancel()} was called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Writes history of the profile into the channel, newest treatments first. Channel isn't
+     * closed.
+     *
+     * @param db database to read from.
+     * @param profileId id of the profile.
+     * @param channel channel of the file to write into.
+     * @return number of exported rows.
+     * @throws IOException if the file can't be written.
+     */
+    int exportHistory(SQLiteDatabase db, long profileId, WritableByteChannel channel)
+            throws IOException {
+        Writer writer = new BufferedWriter(Channels.newWriter(channel,
+                StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE);
+        writer.write(HEADER);
+        writer.write('\n');
+        String profile = String.valueOf(profileId);
+        String selection = HistoryPager.SELECTION_PROFILE;
+        String[] selectionArgs = new String[] {profile};
+        long lastUsageTime = 0;
+        int lastId = 0;
+        int rows = 0;
+        int chunkSize;
+        do {
+            if (cancelled) {
+                break;
+            }
+            Cursor cursor = db.query(
+                    TreatmentsContract.TreatmentsHistory.TABLE_WITH_NAMES,
+                    HistoryPager.COLUMNS,
+                    selection,
+                    selectionArgs,
+                    null,
+                    null,
+                    HistoryPager.ORDER_BY,
+                    String.valueOf(CHUNK_SIZE)
+            );
+            chunkSize = 0;
+            try {
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getInt(HistoryPager.ID_COLUMN_INDEX);
+                    lastUsageTime = cursor.getLong(HistoryPager.USAGE_TIME_COLUMN_INDEX);
+                    writeRow(writer, cursor);
+                    chunkSize++;
+                }
+            }
+            finally {
+                cursor.close();
+            }
+            rows += chunkSize;
+            reportProgress(rows);
+            String usageTime = String.valueOf(lastUsageTime);
+            selection = HistoryPager.SELECTION_AFTER_LAST;
+            selectionArgs = new String[] {profile, usageTime, usageTime, String.valueOf(lastId)};
+        } while (chunkSize == CHUNK_SIZE);
+        writer.flush();
+        return rows;
+    }
+
+    /**
+     * Reads rows from the channel and inserts them into the history of the profile. Rows that
+     * can't be parsed are skipped. Channel isn't closed.
+     *
+     * @param db database to write into.
+     * @param profileId id of the profile.
+     * @param channel channel of the file to read from.
+     * @return number of imported rows.
+     * @throws IOException if the file can't be read or isn't valid UTF-8.
+     */
+    int importHistory(SQLiteDatabase db, long profileId, ReadableByteChannel channel)
+            throws IOException {
+        Reader reader = new BufferedReader(Channels.newReader(channel,
+                StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE);
+        // Reused for every row.
+        List<String> fields = new ArrayList<>(FIELD_COUNT);
+        StringBuilder field = new StringBuilder();
+        // Keys of the names met in the file. Bounded by the number of distinct names.
+        Map<String, Long> treatmentKeys = new HashMap<>();
+        SQLiteStatement insert =
+                db.compileStatement(TreatmentsContract.TreatmentsHistory.SQL_INSERT);
+        SQLiteStatement selectKey =
+                db.compileStatement(TreatmentsContract.Treatments.SQL_SELECT_KEY);
+        SQLiteStatement insertName =
+                db.compileStatement(TreatmentsContract.Treatments.SQL_INSERT);
+        int rows = 0;
+        int skipped = 0;
+        try {
+            boolean more = readRow(reader, fields, field);
+            // Header row is optional.
+            if (more && TIME_FIELD.equals(fields.get(0))) {
+                more = readRow(reader, fields, field);
+            }
+            while (more && !cancelled) {
+                int chunkSize = 0;
+                db.beginTransaction();
+                try {
+                    while (more && chunkSize < CHUNK_SIZE) {
+                        if (bindRow(insert, fields, profileId, treatmentKeys, selectKey,
+                                insertName)) {
+                            insert.executeInsert();
+                            chunkSize++;
+                        }
+                        // Blank lines aren't counted as skipped rows.
+                        else if (fields.size() > 1 || !fields.get(0).isEmpty()) {
+                            skipped++;
+                        }
+                        more = readRow(reader, fields, field);
+                    }
+                    db.setTransactionSuccessful();
+                }
+                finally {
+                    db.endTransaction();
+                }
+                rows += chunkSize;
+                reportProgress(rows);
+            }
+        }
+        finally {
+            insert.close();
+            selectKey.close();
+            insertName.close();
+        }
+        if (skipped > 0) {
+            Log.w(TAG, "importHistory(): " + skipped + " invalid rows skipped.");
+        }
+        return rows;
+    }
+
+    // Binds parsed fields of the row to the history insert. Returns false if the row is invalid.
+    private static boolean bindRow(SQLiteStatement insert, List<String> fields, long profileId,
+                                   Map<String, Long> treatmentKeys, SQLiteStatement selectKey,
+                                   SQLiteStatement insertName) {
+        if (fields.size() != FIELD_COUNT) {
+            return false;
+        }
+        String name = fields.get(1).trim();
+        String amountField = fields.get(2).trim();
+        String unit = fields.get(3).trim();
+        long usageTime;
+        double amount;
+        try {
+            usageTime = TreatmentsDBHelper.toUsageTime(LocalDateTime.parse(fields.get(0).trim()));
+            amount = amountField.isEmpty() ? 0 : Double.parseDouble(amountField);
+        }
+        catch (DateTimeParseException | NumberFormatException e) {
+            return false;
+        }
+        if (name.isEmpty() || !(amount >= 0) || Double.isInfinite(amount)) {
+            return false;
+        }
+        Long treatmentKey = treatmentKeys.get(name);
+        if (treatmentKey == null) {
+            treatmentKey = findOrInsertName(name, selectKey, insertName);
+            treatmentKeys.put(name, treatmentKey);
+        }
+        insert.bindLong(1, usageTime);
+        insert.bindLong(2, treatmentKey);
+        insert.bindDouble(3, amount);
+        if (unit.isEmpty()) {
+            insert.bindNull(4);
+        }
+        else {
+            insert.bindString(4, unit);
+        }
+        insert.bindLong(5, profileId);
+        return true;
+    }
+
+    // Returns key of the name in the treatments dictionary, adds the name if needed.
+    private static long findOrInsertName(String name, SQLiteStatement selectKey,
+                                         SQLiteStatement insertName) {
+        selectKey.bindString(1, name);
+        try {
+            return selectKey.simpleQueryForLong();
+        }
+        catch (SQLiteDoneException e) {
+            insertName.bindString(1, name);
+            return insertName.executeInsert();
+        }
+    }
+
+    // Writes history row of the cursor with the pager columns as a CSV record.
+    private static void writeRow(Writer writer, Cursor cursor) throws IOException {
+        writer.write(TreatmentsDBHelper.fromUsageTime(
+                cursor.getLong(HistoryPager.USAGE_TIME_COLUMN_INDEX)).toString());
+        writer.write(',');
+        writeField(writer, cursor.getString(HistoryPager.NAME_COLUMN_INDEX));
+        writer.write(',');
+        double amount = cursor.getDouble(HistoryPager.DOSE_AMOUNT_COLUMN_INDEX);
+        if (amount > 0) {
+            writer.write(Double.toString(amount));
+        }
+        writer.write(',');
+        if (!cursor.isNull(HistoryPager.DOSE_UNIT_COLUMN_INDEX)) {
+            writeField(writer, cursor.getString(HistoryPager.DOSE_UNIT_COLUMN_INDEX));
+        }
+        writer.write('\n');
+    }
+
+    // Writes text field, quoted if it contains separators or quotes.
+    private static void writeField(Writer writer, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    // Reads the next CSV record into the fields. Quoted fields can contain separators, line
+    // breaks and doubled quotes. Returns false if the end of the file was reached.
+    private static boolean readRow(Reader reader, List<String> fields, StringBuilder field)
+            throws IOException {
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        int c = reader.read();
+        if (c == -1) {
+            return false;
+        }
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    c = reader.read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            }
+            else if (c == '"') {
+                quoted = true;
+            }
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else if (c == '\n') {
+                break;
+            }
+            else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return true;
+    }
+
+    // Reports progress if a receiver was provided.
+    private void reportProgress(int rows) {
+        if (progress != null) {
+            progress.onComplete(rows);
+        }
+    }
+}
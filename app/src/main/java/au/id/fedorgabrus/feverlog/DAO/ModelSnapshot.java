@@ -0,0 +1,255 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+
+/**
+ * Binary snapshot of the newest history of a profile, read on cold start before the DB is open.
+ *
+ * <p>Snapshot holds the same rows as the recent history loaded into the data model: all
+ * treatments of the past 24 hours, but not less than a page. It's rewritten from the DB on the
+ * writer thread after every commit and read through a memory-mapped file. File has a header with
+ * the format version, profile id, counts and CRC32 of the body, then a table of distinct names
+ * and units and fixed-width records that reference it. Snapshot that doesn't pass the checks is
+ * ignored and the history is loaded from the DB.</p>
+ *
+ * <p>File is replaced atomically, so a reader sees either the old or the new snapshot. Snapshot
+ * is stale while the write journal has writes that weren't committed, as they are replayed into
+ * the DB on start, see {@link WriteBehindQueue}. Writes that bypass the journal delete the
+ * snapshot before they start.</p>
+ */
+final class ModelSnapshot {
+    private static final String TAG = "ModelSnapshot";
+    private static final String FILE_NAME_PREFIX = "model_snapshot_";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    // "FVLS" in ASCII.
+    private static final int MAGIC = 0x46564C53;
+    // Should be changed with every change of the format.
+    private static final int FORMAT_VERSION = 1;
+    // Magic, version, profile id, number of records, number of names, body length and checksum.
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4 + 8;
+    // Id, usage time, name key, dose amount and unit key.
+    private static final int RECORD_SIZE = 4 + 8 + 4 + 8 + 4;
+    // Key of a dose without a unit.
+    private static final int NO_UNIT = -1;
+    // Snapshots larger than this are ignored, the recent history is much smaller.
+    private static final int MAX_FILE_SIZE = 4 * 1024 * 1024;
+    // Length of the recent history in hours.
+    private static final int RECENT_HOURS = 24;
+
+    private final File directory;
+
+    /**
+     * Constructor.
+     *
+     * @param directory directory to keep the snapshots in.
+     */
+    ModelSnapshot(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads snapshot of the profile.
+     *
+     * @param profileId id of the profile.
+     * @return treatments in descending time order, or null if there is no valid snapshot.
+     */
+    List<FeverTreatment> read(long profileId) {
+        File file = getFile(profileId);
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > MAX_FILE_SIZE) {
+                Log.w(TAG, "read(): Snapshot has invalid size " + size);
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return decode(buffer, profileId);
+        }
+        catch (IOException e) {
+            Log.e(TAG, "read(): Snapshot can't be read.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes snapshot of the profile from the committed history. Called on the writer thread.
+     *
+     * @param db database to read the history from.
+     * @param dbHelper helper that queries the DB.
+     * @param profileId id of the profile.
+     */
+    void write(SQLiteDatabase db, TreatmentsDBHelper dbHelper, long profileId) {
+        List<FeverTreatment> treatments = dbHelper.loadNewestHistory(db, profileId,
+                LocalDateTime.now().minusHours(RECENT_HOURS), HistoryPager.PAGE_SIZE);
+        File file = getFile(profileId);
+        File tempFile = new File(directory, file.getName() + TEMP_FILE_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = encode(treatments, profileId);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        catch (IOException e) {
+            Log.e(TAG, "write(): Snapshot can't be written.", e);
+            // Previous snapshot doesn't have the committed changes.
+            delete(profileId);
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            Log.e(TAG, "write(): Snapshot can't be replaced.", e);
+            delete(profileId);
+        }
+    }
+
+    /**
+     * Deletes snapshot of the profile, the history is loaded from the DB until the next write.
+     *
+     * @param profileId id of the profile.
+     */
+    void delete(long profileId) {
+        File file = getFile(profileId);
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "delete(): Snapshot can't be deleted.");
+        }
+    }
+
+    // Returns snapshot file of the profile.
+    private File getFile(long profileId) {
+        return new File(directory, FILE_NAME_PREFIX + profileId);
+    }
+
+    // Encodes treatments into a buffer ready to be written.
+    private static ByteBuffer encode(List<FeverTreatment> treatments, long profileId) {
+        // Names and units share one table.
+        Map<String, Integer> keys = new LinkedHashMap<>();
+        List<byte[]> encodedNames = new ArrayList<>();
+        for (FeverTreatment treatment : treatments) {
+            addName(treatment.getTreatmentName(), keys, encodedNames);
+            if (treatment.getDoseUnit() != null) {
+                addName(treatment.getDoseUnit(), keys, encodedNames);
+            }
+        }
+        int namesSize = 0;
+        for (byte[] bytes : encodedNames) {
+            namesSize += 4 + bytes.length;
+        }
+        int bodySize = namesSize + treatments.size() * RECORD_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+        buffer.position(HEADER_SIZE);
+        for (byte[] bytes : encodedNames) {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+        for (FeverTreatment treatment : treatments) {
+            buffer.putInt(treatment.getId());
+            buffer.putLong(TreatmentsDBHelper.toUsageTime(treatment.getTreatmentTime()));
+            buffer.putInt(keys.get(treatment.getTreatmentName()));
+            buffer.putDouble(treatment.getDoseAmount());
+            buffer.putInt(treatment.getDoseUnit() == null
+                    ? NO_UNIT : keys.get(treatment.getDoseUnit()));
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), HEADER_SIZE, bodySize);
+        buffer.position(0);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putLong(profileId);
+        buffer.putInt(treatments.size());
+        buffer.putInt(encodedNames.size());
+        buffer.putInt(bodySize);
+        buffer.putLong(checksum.getValue());
+        buffer.position(0);
+        return buffer;
+    }
+
+    // Adds name to the table if it's not there yet.
+    private static void addName(String name, Map<String, Integer> keys,
+                                List<byte[]> encodedNames) {
+        if (!keys.containsKey(name)) {
+            keys.put(name, keys.size());
+            encodedNames.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Decodes and checks snapshot. Returns null if it's invalid.
+    private static List<FeverTreatment> decode(ByteBuffer buffer, long profileId) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                    || buffer.getLong() != profileId) {
+                Log.w(TAG, "decode(): Snapshot has another version or profile.");
+                return null;
+            }
+            int recordCount = buffer.getInt();
+            int nameCount = buffer.getInt();
+            int bodySize = buffer.getInt();
+            long expectedChecksum = buffer.getLong();
+            if (recordCount < 0 || nameCount < 0 || bodySize != buffer.remaining()) {
+                Log.w(TAG, "decode(): Snapshot is truncated.");
+                return null;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.duplicate());
+            if (checksum.getValue() != expectedChecksum) {
+                Log.w(TAG, "decode(): Snapshot checksum doesn't match.");
+                return null;
+            }
+            String[] names = new String[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (buffer.remaining() != (long) recordCount * RECORD_SIZE) {
+                Log.w(TAG, "decode(): Snapshot has invalid records.");
+                return null;
+            }
+            List<FeverTreatment> treatments = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                int id = buffer.getInt();
+                long usageTime = buffer.getLong();
+                String name = names[buffer.getInt()];
+                double doseAmount = buffer.getDouble();
+                int unitKey = buffer.getInt();
+                FeverTreatment treatment = new FeverTreatment(id,
+                        TreatmentsDBHelper.fromUsageTime(usageTime), name, doseAmount,
+                        unitKey == NO_UNIT ? null : names[unitKey]);
+                treatment.setProfileId(profileId);
+                treatments.add(treatment);
+            }
+            return treatments;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException
+                | NegativeArraySizeException e) {
+            Log.w(TAG, "decode(): Snapshot is corrupted.", e);
+            return null;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package au.id.fedorgabrus.feverlog.DAO;
 
 import android.provider.BaseColumns;
 
+import au.id.fedorgabrus.feverlog.models.Profile;
+
 /**
  * Defines structure of the treatments.db.
  */
@@ -14,21 +16,400 @@ final class TreatmentsContract {
      */
     static class TreatmentsHistory implements BaseColumns {
         static final String TABLE_NAME = "history";
-        static final String COLUMN_NAME_USAGE_DATE = "usage_date";
-        static final String COLUMN_NAME_TREATMENT_NAME = "treatment_name";
+        /**
+         * Local date and time of the usage in milliseconds from the epoch at UTC offset.
+         */
+        static final String COLUMN_NAME_USAGE_TIME = "usage_time";
+        /**
+         * Key of the treatment name in the treatments table.
+         */
+        static final String COLUMN_NAME_TREATMENT_ID = "treatment_id";
+        /**
+         * Amount of the dose, 0 if not recorded.
+         */
+        static final String COLUMN_NAME_DOSE_AMOUNT = "dose_amount";
+        /**
+         * Unit of the dose amount, NULL if not recorded.
+         */
+        static final String COLUMN_NAME_DOSE_UNIT = "dose_unit";
+        /**
+         * Key of the profile in the profiles table.
+         */
+        static final String COLUMN_NAME_PROFILE_ID = "profile_id";
+        static final String INDEX_NAME_PROFILE_USAGE = "idx_profile_usage";
+        static final String INDEX_NAME_PROFILE_TREATMENT_USAGE = "idx_profile_treatment_usage";
+
+        static final String SQL_CREATE_HISTORY_TABLE =
+                "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_NAME_USAGE_TIME + " INTEGER NOT NULL, "
+                + COLUMN_NAME_TREATMENT_ID + " INTEGER NOT NULL REFERENCES "
+                + Treatments.TABLE_NAME + " (" + Treatments._ID + "), "
+                + COLUMN_NAME_DOSE_AMOUNT + " REAL NOT NULL DEFAULT 0, "
+                + COLUMN_NAME_DOSE_UNIT + " TEXT, "
+                + COLUMN_NAME_PROFILE_ID + " INTEGER NOT NULL DEFAULT " + Profiles.DEFAULT_ID
+                + " REFERENCES " + Profiles.TABLE_NAME + " (" + Profiles._ID + "))";
+
+        static final String SQL_ADD_DOSE_AMOUNT_COLUMN =
+                "ALTER TABLE " + TABLE_NAME + " ADD COLUMN "
+                        + COLUMN_NAME_DOSE_AMOUNT + " REAL NOT NULL DEFAULT 0";
+
+        static final String SQL_ADD_DOSE_UNIT_COLUMN =
+                "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NAME_DOSE_UNIT + " TEXT";
+
+        // SQLite can't add a column that references another table and has a non-NULL default
+        // while the foreign keys are enforced, the migrated column has no reference.
+        static final String SQL_ADD_PROFILE_COLUMN =
+                "ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NAME_PROFILE_ID
+                        + " INTEGER NOT NULL DEFAULT " + Profiles.DEFAULT_ID;
+
+        static final String SQL_CREATE_INDEX_ON_PROFILE_USAGE =
+                "CREATE INDEX IF NOT EXISTS " + INDEX_NAME_PROFILE_USAGE
+                        + " ON " + TABLE_NAME + " (" + COLUMN_NAME_PROFILE_ID + ", "
+                        + COLUMN_NAME_USAGE_TIME + " DESC)";
+
+        static final String SQL_CREATE_INDEX_ON_PROFILE_TREATMENT_USAGE =
+                "CREATE INDEX IF NOT EXISTS " + INDEX_NAME_PROFILE_TREATMENT_USAGE
+                        + " ON " + TABLE_NAME + " (" + COLUMN_NAME_PROFILE_ID + ", "
+                        + COLUMN_NAME_TREATMENT_ID + ", " + COLUMN_NAME_USAGE_TIME + " DESC)";
+
+        /**
+         * History joined with treatment names, columns should be qualified.
+         */
+        static final String TABLE_WITH_NAMES =
+                TABLE_NAME + " INNER JOIN " + Treatments.TABLE_NAME + " ON "
+                        + TABLE_NAME + "." + COLUMN_NAME_TREATMENT_ID + " = "
+                        + Treatments.TABLE_NAME + "." + Treatments._ID;
+
+        /**
+         * History joined with treatment names, read through the profile and usage time index.
+         * For queries with a time range that the planner would otherwise serve with the
+         * treatment index, scanning the whole history of the profile.
+         */
+        static final String TABLE_BY_USAGE_TIME_WITH_NAMES =
+                TABLE_NAME + " INDEXED BY " + INDEX_NAME_PROFILE_USAGE + " INNER JOIN "
+                        + Treatments.TABLE_NAME + " ON "
+                        + TABLE_NAME + "." + COLUMN_NAME_TREATMENT_ID + " = "
+                        + Treatments.TABLE_NAME + "." + Treatments._ID;
+
+        static final String QUALIFIED_ID = TABLE_NAME + "." + _ID;
+        static final String QUALIFIED_USAGE_TIME = TABLE_NAME + "." + COLUMN_NAME_USAGE_TIME;
+        static final String QUALIFIED_TREATMENT_ID = TABLE_NAME + "." + COLUMN_NAME_TREATMENT_ID;
+        static final String QUALIFIED_DOSE_AMOUNT = TABLE_NAME + "." + COLUMN_NAME_DOSE_AMOUNT;
+        static final String QUALIFIED_DOSE_UNIT = TABLE_NAME + "." + COLUMN_NAME_DOSE_UNIT;
+        static final String QUALIFIED_PROFILE_ID = TABLE_NAME + "." + COLUMN_NAME_PROFILE_ID;
+
+        static final String SQL_INSERT =
+                "INSERT INTO " + TABLE_NAME + " (" + COLUMN_NAME_USAGE_TIME + ", "
+                        + COLUMN_NAME_TREATMENT_ID + ", " + COLUMN_NAME_DOSE_AMOUNT + ", "
+                        + COLUMN_NAME_DOSE_UNIT + ", " + COLUMN_NAME_PROFILE_ID
+                        + ") VALUES (?, ?, ?, ?, ?)";
+
+        static final String SQL_COUNT_SINCE =
+                "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE " + COLUMN_NAME_PROFILE_ID
+                        + " = ? AND " + COLUMN_NAME_USAGE_TIME + " >= ?";
+
+        static final String SQL_COUNT_BEFORE =
+                "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE " + COLUMN_NAME_PROFILE_ID
+                        + " = ? AND " + COLUMN_NAME_USAGE_TIME + " >= ? AND ("
+                        + COLUMN_NAME_USAGE_TIME + " > ? OR " + _ID + " < ?)";
+
+        static final String SQL_UPDATE =
+                "UPDATE " + TABLE_NAME + " SET " + COLUMN_NAME_USAGE_TIME + " = ?, "
+                        + COLUMN_NAME_TREATMENT_ID + " = ?, " + COLUMN_NAME_DOSE_AMOUNT + " = ?, "
+                        + COLUMN_NAME_DOSE_UNIT + " = ? WHERE " + _ID + " = ?";
+
+        static final String SQL_DELETE = "DELETE FROM " + TABLE_NAME + " WHERE " + _ID + " = ?";
+
+        static final String SQL_DELETE_PROFILE =
+                "DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_NAME_PROFILE_ID + " = ?";
+
+        static final String SQL_COPY_FROM_VERSION_3 =
+                "INSERT INTO " + TABLE_NAME + " (" + _ID + ", " + COLUMN_NAME_USAGE_TIME + ", "
+                        + COLUMN_NAME_TREATMENT_ID + ") SELECT h." + TreatmentsHistoryV3._ID
+                        + ", h." + TreatmentsHistoryV3.COLUMN_NAME_USAGE_TIME + ", t." + Treatments._ID
+                        + " FROM " + TreatmentsHistoryV3.TABLE_NAME + " h INNER JOIN "
+                        + Treatments.TABLE_NAME + " t ON t." + Treatments.COLUMN_NAME_NAME
+                        + " = h." + TreatmentsHistoryV3.COLUMN_NAME_TREATMENT_NAME;
+    }
+
+    /**
+     * Structure of the profiles table. Every profile has its own history and settings.
+     */
+    static class Profiles implements BaseColumns {
+        static final String TABLE_NAME = "profiles";
+        static final String COLUMN_NAME_NAME = "name";
+        /**
+         * Id of the profile that owns the history recorded before profiles were added.
+         */
+        static final long DEFAULT_ID = Profile.DEFAULT_ID;
+        static final String DEFAULT_NAME = "Default";
+
+        static final String SQL_CREATE_PROFILES_TABLE =
+                "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_NAME_NAME + " TEXT NOT NULL UNIQUE)";
+
+        static final String SQL_INSERT_DEFAULT_PROFILE =
+                "INSERT OR IGNORE INTO " + TABLE_NAME + " (" + _ID + ", " + COLUMN_NAME_NAME
+                        + ") VALUES (" + DEFAULT_ID + ", '" + DEFAULT_NAME + "')";
+    }
+
+    /**
+     * Structure of the treatments dictionary. Each distinct treatment name is stored once.
+     */
+    static class Treatments implements BaseColumns {
+        static final String TABLE_NAME = "treatments";
+        static final String COLUMN_NAME_NAME = "name";
+
+        static final String QUALIFIED_NAME = TABLE_NAME + "." + COLUMN_NAME_NAME;
+
+        static final String SQL_CREATE_TREATMENTS_TABLE =
+                "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_NAME_NAME + " TEXT NOT NULL UNIQUE)";
+
+        static final String SQL_SELECT_KEY =
+                "SELECT " + _ID + " FROM " + TABLE_NAME + " WHERE " + COLUMN_NAME_NAME + " = ?";
+
+        static final String SQL_INSERT =
+                "INSERT INTO " + TABLE_NAME + " (" + COLUMN_NAME_NAME + ") VALUES (?)";
+
+        static final String SQL_FILL_FROM_VERSION_3 =
+                "INSERT OR IGNORE INTO " + TABLE_NAME + " (" + COLUMN_NAME_NAME + ") SELECT DISTINCT "
+                        + TreatmentsHistoryV3.COLUMN_NAME_TREATMENT_NAME + " FROM "
+                        + TreatmentsHistoryV3.TABLE_NAME;
+    }
+
+    /**
+     * Structure of the daily aggregate of the history. Has a row per profile, day and treatment,
+     * kept up to date by the triggers on the history table.
+     */
+    static class DailyUsage {
+        static final String TABLE_NAME = "daily_usage";
+        /**
+         * Key of the profile in the profiles table.
+         */
+        static final String COLUMN_NAME_PROFILE_ID = "profile_id";
+        /**
+         * Local date as days from the epoch.
+         */
+        static final String COLUMN_NAME_DAY = "day";
+        /**
+         * Key of the treatment name in the treatments table.
+         */
+        static final String COLUMN_NAME_TREATMENT_ID = "treatment_id";
+        static final String COLUMN_NAME_USAGE_COUNT = "usage_count";
+        /**
+         * Usage time of the first usage during the day, same units as in the history.
+         */
+        static final String COLUMN_NAME_FIRST_USAGE_TIME = "first_usage_time";
+        /**
+         * Usage time of the last usage during the day, same units as in the history.
+         */
+        static final String COLUMN_NAME_LAST_USAGE_TIME = "last_usage_time";
+        /**
+         * Length of a day in the units of the usage time.
+         */
+        static final long MILLIS_PER_DAY = 86_400_000L;
+
+        static final String SQL_CREATE_DAILY_USAGE_TABLE =
+                "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + COLUMN_NAME_PROFILE_ID + " INTEGER NOT NULL, "
+                + COLUMN_NAME_DAY + " INTEGER NOT NULL, "
+                + COLUMN_NAME_TREATMENT_ID + " INTEGER NOT NULL REFERENCES "
+                + Treatments.TABLE_NAME + " (" + Treatments._ID + "), "
+                + COLUMN_NAME_USAGE_COUNT + " INTEGER NOT NULL, "
+                + COLUMN_NAME_FIRST_USAGE_TIME + " INTEGER NOT NULL, "
+                + COLUMN_NAME_LAST_USAGE_TIME + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_NAME_PROFILE_ID + ", " + COLUMN_NAME_DAY + ", "
+                + COLUMN_NAME_TREATMENT_ID + ")) WITHOUT ROWID";
+
+        static final String SQL_FILL_FROM_HISTORY =
+                "INSERT INTO " + TABLE_NAME + " SELECT "
+                + TreatmentsHistory.COLUMN_NAME_PROFILE_ID + ", "
+                + dayOf(TreatmentsHistory.COLUMN_NAME_USAGE_TIME) + ", "
+                + TreatmentsHistory.COLUMN_NAME_TREATMENT_ID + ", COUNT(*), MIN("
+                + TreatmentsHistory.COLUMN_NAME_USAGE_TIME + "), MAX("
+                + TreatmentsHistory.COLUMN_NAME_USAGE_TIME + ") FROM "
+                + TreatmentsHistory.TABLE_NAME + " GROUP BY 1, 2, 3";
+
+        static final String SQL_DROP_DAILY_USAGE_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME;
+
+        // Adds usage of the row to the aggregate. Written without UPSERT, which isn't available
+        // in SQLite of the older supported Android versions.
+        private static String addUsage(String row) {
+            String usageTime = row + "." + TreatmentsHistory.COLUMN_NAME_USAGE_TIME;
+            return "INSERT OR IGNORE INTO " + TABLE_NAME + " VALUES ("
+                    + row + "." + TreatmentsHistory.COLUMN_NAME_PROFILE_ID + ", "
+                    + dayOf(usageTime) + ", " + row + "." + TreatmentsHistory.COLUMN_NAME_TREATMENT_ID + ", 0, "
+                    + usageTime + ", " + usageTime + "); "
+                    + "UPDATE " + TABLE_NAME + " SET "
+                    + COLUMN_NAME_USAGE_COUNT + " = " + COLUMN_NAME_USAGE_COUNT + " + 1, "
+                    + COLUMN_NAME_FIRST_USAGE_TIME + " = MIN(" + COLUMN_NAME_FIRST_USAGE_TIME
+                    + ", " + usageTime + "), "
+                    + COLUMN_NAME_LAST_USAGE_TIME + " = MAX(" + COLUMN_NAME_LAST_USAGE_TIME
+                    + ", " + usageTime + ") WHERE " + matchesRow(row) + "; ";
+        }
+
+        // Removes usage of the row from the aggregate. First and last usage times are looked up
+        // in the history through the profile, treatment and usage time index.
+        private static String removeUsage(String row) {
+            String usageTime = row + "." + TreatmentsHistory.COLUMN_NAME_USAGE_TIME;
+            String dayStart = dayOf(usageTime) + " * " + MILLIS_PER_DAY;
+            String usagesOfDay = " FROM " + TreatmentsHistory.TABLE_NAME + " WHERE "
+                    + TreatmentsHistory.COLUMN_NAME_PROFILE_ID + " = "
+                    + row + "." + TreatmentsHistory.COLUMN_NAME_PROFILE_ID + " AND "
+                    + TreatmentsHistory.COLUMN_NAME_TREATMENT_ID + " = "
+                    + row + "." + TreatmentsHistory.COLUMN_NAME_TREATMENT_ID + " AND "
+                    + TreatmentsHistory.COLUMN_NAME_USAGE_TIME + " >= " + dayStart + " AND "
+                    + TreatmentsHistory.COLUMN_NAME_USAGE_TIME + " < " + dayStart + " + "
+                    + MILLIS_PER_DAY;
+            return "UPDATE " + TABLE_NAME + " SET "
+                    + COLUMN_NAME_USAGE_COUNT + " = " + COLUMN_NAME_USAGE_COUNT + " - 1, "
+                    + COLUMN_NAME_FIRST_USAGE_TIME + " = IFNULL((SELECT MIN("
+                    + TreatmentsHistory.COLUMN_NAME_USAGE_TIME + ")" + usagesOfDay + "), 0), "
+                    + COLUMN_NAME_LAST_USAGE_TIME + " = IFNULL((SELECT MAX("
+                    + TreatmentsHistory.COLUMN_NAME_USAGE_TIME + ")" + usagesOfDay + "), 0)"
+                    + " WHERE " + matchesRow(row) + "; "
+                    + "DELETE FROM " + TABLE_NAME + " WHERE " + matchesRow(row) + " AND "
+                    + COLUMN_NAME_USAGE_COUNT + " <= 0; ";
+        }
+
+        // Selects aggregate row of the history row.
+        private static String matchesRow(String row) {
+            return COLUMN_NAME_PROFILE_ID + " = "
+                    + row + "." + TreatmentsHistory.COLUMN_NAME_PROFILE_ID + " AND "
+                    + COLUMN_NAME_DAY + " = "
+                    + dayOf(row + "." + TreatmentsHistory.COLUMN_NAME_USAGE_TIME) + " AND "
+                    + COLUMN_NAME_TREATMENT_ID + " = "
+                    + row + "." + TreatmentsHistory.COLUMN_NAME_TREATMENT_ID;
+        }
+
+        // Day of the usage time. Usage times are never negative.
+        private static String dayOf(String usageTime) {
+            return "(" + usageTime + " / " + MILLIS_PER_DAY + ")";
+        }
+
+        static final String TRIGGER_NAME_INSERT = "trg_daily_usage_insert";
+        static final String TRIGGER_NAME_DELETE = "trg_daily_usage_delete";
+        static final String TRIGGER_NAME_UPDATE = "trg_daily_usage_update";
+
+        static final String SQL_CREATE_INSERT_TRIGGER =
+                "CREATE TRIGGER IF NOT EXISTS " + TRIGGER_NAME_INSERT + " AFTER INSERT ON "
+                + TreatmentsHistory.TABLE_NAME + " BEGIN " + addUsage("NEW") + "END";
+
+        static final String SQL_CREATE_DELETE_TRIGGER =
+                "CREATE TRIGGER IF NOT EXISTS " + TRIGGER_NAME_DELETE + " AFTER DELETE ON "
+                + TreatmentsHistory.TABLE_NAME + " BEGIN " + removeUsage("OLD") + "END";
+
+        static final String SQL_CREATE_UPDATE_TRIGGER =
+                "CREATE TRIGGER IF NOT EXISTS " + TRIGGER_NAME_UPDATE + " AFTER UPDATE OF "
+                + TreatmentsHistory.COLUMN_NAME_USAGE_TIME + ", "
+                + TreatmentsHistory.COLUMN_NAME_TREATMENT_ID + ", "
+                + TreatmentsHistory.COLUMN_NAME_PROFILE_ID + " ON "
+                + TreatmentsHistory.TABLE_NAME + " BEGIN " + removeUsage("OLD")
+                + addUsage("NEW") + "END";
+
+        static final String SQL_DROP_INSERT_TRIGGER =
+                "DROP TRIGGER IF EXISTS " + TRIGGER_NAME_INSERT;
+        static final String SQL_DROP_DELETE_TRIGGER =
+                "DROP TRIGGER IF EXISTS " + TRIGGER_NAME_DELETE;
+        static final String SQL_DROP_UPDATE_TRIGGER =
+                "DROP TRIGGER IF EXISTS " + TRIGGER_NAME_UPDATE;
+    }
+
+    /**
+     * Structure of the table that keeps state of the write journal. Has a single row.
+     */
+    static class JournalState implements BaseColumns {
+        static final String TABLE_NAME = "journal_state";
+        /**
+         * Sequence number of the last journaled write applied to the DB.
+         */
+        static final String COLUMN_NAME_LAST_APPLIED_SEQUENCE = "last_applied_sequence";
+        /**
+         * Id of the only row.
+         */
+        static final long STATE_ROW_ID = 1;
+
+        static final String SQL_CREATE_JOURNAL_STATE_TABLE =
+                "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + _ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_NAME_LAST_APPLIED_SEQUENCE + " INTEGER NOT NULL)";
+    }
+
+    /**
+     * Indexes of the history table in the versions 2 to 6 of the DB, before the history was
+     * partitioned by profiles. Used by the migrations only.
+     */
+    static class TreatmentsHistoryV6 {
         static final String INDEX_NAME_USAGE_DATE = "idx_usage_date";
+        static final String INDEX_NAME_TREATMENT_USAGE = "idx_treatment_usage";
+
+        static final String SQL_CREATE_INDEX_ON_USAGE_DATE =
+                "CREATE INDEX IF NOT EXISTS " + INDEX_NAME_USAGE_DATE
+                        + " ON " + TreatmentsHistory.TABLE_NAME + " ("
+                        + TreatmentsHistory.COLUMN_NAME_USAGE_TIME + " DESC)";
+
+        static final String SQL_DROP_INDEX_ON_USAGE_DATE =
+                "DROP INDEX IF EXISTS " + INDEX_NAME_USAGE_DATE;
+
+        static final String SQL_DROP_INDEX_ON_TREATMENT_USAGE =
+                "DROP INDEX IF EXISTS " + INDEX_NAME_TREATMENT_USAGE;
+    }
+
+    /**
+     * Structure of the history table in the versions 2 and 3 of the DB. Used by the migrations
+     * only.
+     */
+    static class TreatmentsHistoryV3 implements BaseColumns {
+        /**
+         * Name of the version 3 table while its data is being migrated.
+         */
+        static final String TABLE_NAME = "history_v3";
+        /**
+         * Local date and time of the usage in milliseconds from the epoch at UTC offset.
+         */
+        static final String COLUMN_NAME_USAGE_TIME = "usage_time";
+        static final String COLUMN_NAME_TREATMENT_NAME = "treatment_name";
 
         static final String SQL_CREATE_HISTORY_TABLE =
                 "CREATE TABLE IF NOT EXISTS " + TreatmentsHistory.TABLE_NAME + " ("
-                + TreatmentsHistory._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + TreatmentsHistory.COLUMN_NAME_USAGE_DATE + " DATETIME NOT NULL, "
-                + TreatmentsHistory.COLUMN_NAME_TREATMENT_NAME + " TEXT NOT NULL)";
+                + _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_NAME_USAGE_TIME + " INTEGER NOT NULL, "
+                + COLUMN_NAME_TREATMENT_NAME + " TEXT NOT NULL)";
+
+        static final String SQL_INSERT_WITH_ID =
+                "INSERT INTO " + TreatmentsHistory.TABLE_NAME + " (" + _ID + ", "
+                        + COLUMN_NAME_USAGE_TIME + ", " + COLUMN_NAME_TREATMENT_NAME
+                        + ") VALUES (?, ?, ?)";
+
+        static final String SQL_RENAME_HISTORY_TABLE =
+                "ALTER TABLE " + TreatmentsHistory.TABLE_NAME + " RENAME TO " + TABLE_NAME;
 
         static final String SQL_DROP_HISTORY_TABLE =
-                "DROP TABLE IF EXISTS " + TreatmentsHistory.TABLE_NAME;
+                "DROP TABLE IF EXISTS " + TABLE_NAME;
+    }
 
-        static final String SQL_CREATE_INDEX_ON_USAGE_DATE =
-                "CREATE INDEX IF NOT EXISTS " + INDEX_NAME_USAGE_DATE
-                        + " ON " + TABLE_NAME + " (" + COLUMN_NAME_USAGE_DATE + " DESC)";
+    /**
+     * Structure of the history table in the version 1 of the DB. Used by the migration only.
+     */
+    static class TreatmentsHistoryV1 implements BaseColumns {
+        /**
+         * Name of the version 1 table while its data is being migrated.
+         */
+        static final String TABLE_NAME = "history_v1";
+        /**
+         * Local date and time of the usage as ISO text.
+         */
+        static final String COLUMN_NAME_USAGE_DATE = "usage_date";
+        static final String COLUMN_NAME_TREATMENT_NAME = "treatment_name";
+
+        static final String SQL_RENAME_HISTORY_TABLE =
+                "ALTER TABLE " + TreatmentsHistory.TABLE_NAME + " RENAME TO " + TABLE_NAME;
+
+        static final String SQL_DROP_HISTORY_TABLE =
+                "DROP TABLE IF EXISTS " + TABLE_NAME;
     }
 }
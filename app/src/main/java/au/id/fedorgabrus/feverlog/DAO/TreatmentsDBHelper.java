@@ -3,90 +3,386 @@ package au.id.fedorgabrus.feverlog.DAO;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
+import au.id.fedorgabrus.feverlog.models.DailyUsage;
 import au.id.fedorgabrus.feverlog.models.FeverTreatment;
-import au.id.fedorgabrus.feverlog.models.TreatmentData;
+import au.id.fedorgabrus.feverlog.models.Profile;
 
-public class TreatmentsDBHelper extends SQLiteOpenHelper {
+/**
+ * Opens and migrates the treatments DB and runs its queries.
+ *
+ * <p>Methods that take a database run on the connection of the caller. Methods of the
+ * {@link TreatmentStore} open the writable database themselves and write directly, bypassing the
+ * write journal, so the app writes through the {@link TreatmentsRepository} instead. Like other
+ * writes that bypass the journal, they delete the snapshot of the profile before writing.</p>
+ */
+public class TreatmentsDBHelper extends SQLiteOpenHelper implements TreatmentStore {
     private static final String TAG = "TreatmentsDBHelper";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 7;
     private static final String DATABASE_NAME = "treatments.db";
+    // Number of rows read by one query during the migration, bounds memory of the cursor.
+    private static final int MIGRATION_BATCH_SIZE = 500;
+    // History columns with names resolved through the treatments dictionary.
+    private static final String[] HISTORY_COLUMNS = new String[] {
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_ID,
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME,
+            TreatmentsContract.Treatments.QUALIFIED_NAME,
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_DOSE_AMOUNT,
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_DOSE_UNIT
+    };
+    // Selects history of one profile. Every history index leads with the profile.
+    private static final String SELECTION_PROFILE =
+            TreatmentsContract.TreatmentsHistory.QUALIFIED_PROFILE_ID + " = ?";
+
+    // Snapshots deleted by the writes of the store.
+    private final ModelSnapshot snapshots;
 
     public TreatmentsDBHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        snapshots = new ModelSnapshot(context.getApplicationContext().getFilesDir());
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // History rows reference the treatments dictionary.
+        db.setForeignKeyConstraintsEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        createProfiles(db);
+        db.execSQL(TreatmentsContract.Treatments.SQL_CREATE_TREATMENTS_TABLE);
         db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_CREATE_HISTORY_TABLE);
-        db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_CREATE_INDEX_ON_USAGE_DATE);
+        createHistoryIndexes(db);
+        db.execSQL(TreatmentsContract.JournalState.SQL_CREATE_JOURNAL_STATE_TABLE);
+        createDailyUsage(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Drops all old data.
-        db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_DROP_HISTORY_TABLE);
-        onCreate(db);
+        // History created by the later steps references the default profile.
+        if (oldVersion < 7) {
+            createProfiles(db);
+        }
+        // Upgrades step by step, keeping all data.
+        if (oldVersion < 2) {
+            migrateToVersion2(db);
+        }
+        if (oldVersion < 3) {
+            db.execSQL(TreatmentsContract.JournalState.SQL_CREATE_JOURNAL_STATE_TABLE);
+        }
+        if (oldVersion < 4) {
+            migrateToVersion4(db);
+        }
+        // History created by the version 4 migration already has the dose and profile columns.
+        if (oldVersion >= 4 && oldVersion < 6) {
+            db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_ADD_DOSE_AMOUNT_COLUMN);
+            db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_ADD_DOSE_UNIT_COLUMN);
+        }
+        if (oldVersion >= 4 && oldVersion < 7) {
+            migrateToVersion7(db);
+        }
+        // Daily aggregate added in the version 5 is partitioned by profiles since the version 7.
+        if (oldVersion < 7) {
+            rebuildDailyUsage(db);
+        }
+    }
+
+    /**
+     * Converts local date and time into the value stored in the usage time column.
+     *
+     * @param dateTime local date and time.
+     * @return milliseconds from the epoch at UTC offset.
+     */
+    static long toUsageTime(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Converts value of the usage time column into local date and time.
+     *
+     * @param usageTime milliseconds from the epoch at UTC offset.
+     * @return local date and time.
+     */
+    static LocalDateTime fromUsageTime(long usageTime) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(usageTime, 1000),
+                (int) Math.floorMod(usageTime, 1000) * 1_000_000, ZoneOffset.UTC);
     }
 
     /**
-     * Loads treatment history from DB.
+     * Migrates version 1 history table with ISO text dates into the version 2 table with
+     * INTEGER usage times. Rows are read in batches, which only bounds memory of the cursor:
+     * all batches are written in the transaction of onUpgrade, so nothing is committed until
+     * the whole upgrade succeeds and the whole migration is rolled back if interrupted.
+     *
+     * @param db database to migrate.
+     */
+    private void migrateToVersion2(SQLiteDatabase db) {
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV6.SQL_DROP_INDEX_ON_USAGE_DATE);
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV1.SQL_RENAME_HISTORY_TABLE);
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV3.SQL_CREATE_HISTORY_TABLE);
+
+        String[] columns = new String[] {
+                TreatmentsContract.TreatmentsHistoryV1._ID,
+                TreatmentsContract.TreatmentsHistoryV1.COLUMN_NAME_USAGE_DATE,
+                TreatmentsContract.TreatmentsHistoryV1.COLUMN_NAME_TREATMENT_NAME
+        };
+        String selection = TreatmentsContract.TreatmentsHistoryV1._ID + " > ?";
+        SQLiteStatement insert =
+                db.compileStatement(TreatmentsContract.TreatmentsHistoryV3.SQL_INSERT_WITH_ID);
+        long lastId = 0;
+        int batchSize;
+        do {
+            batchSize = 0;
+            Cursor cursor = db.query(
+                    TreatmentsContract.TreatmentsHistoryV1.TABLE_NAME,
+                    columns,
+                    selection,
+                    new String[] {String.valueOf(lastId)},
+                    null,
+                    null,
+                    TreatmentsContract.TreatmentsHistoryV1._ID + " ASC",
+                    String.valueOf(MIGRATION_BATCH_SIZE)
+            );
+            try {
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    insert.bindLong(1, lastId);
+                    insert.bindLong(2, toUsageTime(LocalDateTime.parse(cursor.getString(1))));
+                    insert.bindString(3, cursor.getString(2));
+                    insert.executeInsert();
+                    batchSize++;
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        } while (batchSize == MIGRATION_BATCH_SIZE);
+        insert.close();
+
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV1.SQL_DROP_HISTORY_TABLE);
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV6.SQL_CREATE_INDEX_ON_USAGE_DATE);
+        Log.i(TAG, "History migrated to version 2.");
+    }
+
+    /**
+     * Moves treatment names of the version 3 history table into the treatments dictionary and
+     * replaces them with the dictionary keys. Ids and usage times are kept.
+     *
+     * @param db database to migrate.
+     */
+    private void migrateToVersion4(SQLiteDatabase db) {
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV6.SQL_DROP_INDEX_ON_USAGE_DATE);
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV3.SQL_RENAME_HISTORY_TABLE);
+        db.execSQL(TreatmentsContract.Treatments.SQL_CREATE_TREATMENTS_TABLE);
+        db.execSQL(TreatmentsContract.Treatments.SQL_FILL_FROM_VERSION_3);
+        db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_CREATE_HISTORY_TABLE);
+        db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_COPY_FROM_VERSION_3);
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV3.SQL_DROP_HISTORY_TABLE);
+        // Table is created with the current structure, already partitioned by profiles.
+        createHistoryIndexes(db);
+        Log.i(TAG, "History migrated to version 4.");
+    }
+
+    /**
+     * Assigns existing history to the default profile and replaces indexes with the ones that
+     * lead with the profile.
+     *
+     * @param db database to migrate.
+     */
+    private void migrateToVersion7(SQLiteDatabase db) {
+        db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_ADD_PROFILE_COLUMN);
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV6.SQL_DROP_INDEX_ON_USAGE_DATE);
+        db.execSQL(TreatmentsContract.TreatmentsHistoryV6.SQL_DROP_INDEX_ON_TREATMENT_USAGE);
+        createHistoryIndexes(db);
+        Log.i(TAG, "History migrated to version 7.");
+    }
+
+    /**
+     * Replaces the daily aggregate, if there is one, with a new one filled from the history.
+     *
+     * @param db database to update.
+     */
+    private void rebuildDailyUsage(SQLiteDatabase db) {
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_DROP_INSERT_TRIGGER);
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_DROP_DELETE_TRIGGER);
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_DROP_UPDATE_TRIGGER);
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_DROP_DAILY_USAGE_TABLE);
+        createDailyUsage(db);
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_FILL_FROM_HISTORY);
+    }
+
+    /**
+     * Creates the profiles table with the default profile.
+     *
+     * @param db database to update.
+     */
+    private void createProfiles(SQLiteDatabase db) {
+        db.execSQL(TreatmentsContract.Profiles.SQL_CREATE_PROFILES_TABLE);
+        db.execSQL(TreatmentsContract.Profiles.SQL_INSERT_DEFAULT_PROFILE);
+    }
+
+    /**
+     * Creates indexes of the history table. Both lead with the profile, so every query of a
+     * profile reads only its own part of the index.
+     *
+     * @param db database to update.
+     */
+    private void createHistoryIndexes(SQLiteDatabase db) {
+        db.execSQL(TreatmentsContract.TreatmentsHistory.SQL_CREATE_INDEX_ON_PROFILE_USAGE);
+        db.execSQL(
+                TreatmentsContract.TreatmentsHistory.SQL_CREATE_INDEX_ON_PROFILE_TREATMENT_USAGE);
+    }
+
+    /**
+     * Creates the daily aggregate table and triggers that maintain it. The table is filled
+     * separately when created for existing history.
+     *
+     * @param db database to update.
+     */
+    private void createDailyUsage(SQLiteDatabase db) {
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_CREATE_DAILY_USAGE_TABLE);
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_CREATE_INSERT_TRIGGER);
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_CREATE_DELETE_TRIGGER);
+        db.execSQL(TreatmentsContract.DailyUsage.SQL_CREATE_UPDATE_TRIGGER);
+    }
+
+    /**
+     * Loads treatment history of the profile from DB.
      *
      * @param db database to query.
+     * @param profileId id of the profile.
      * @return List of treatments. If no treatments in db, returns an empty list.
      */
-    public List<FeverTreatment> loadHistoryFromDB(SQLiteDatabase db) {
+    public List<FeverTreatment> loadHistoryFromDB(SQLiteDatabase db, long profileId) {
         // Queries DB to get treatment history in descending order by usage date.
-        String[] columns = new String[] {
-                TreatmentsContract.TreatmentsHistory._ID,
-                TreatmentsContract.TreatmentsHistory.COLUMN_NAME_USAGE_DATE,
-                TreatmentsContract.TreatmentsHistory.COLUMN_NAME_TREATMENT_NAME
-        };
-        String orderBy = TreatmentsContract.TreatmentsHistory.COLUMN_NAME_USAGE_DATE + " DESC";
+        String orderBy = TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " DESC";
         Cursor cursor = db.query(
-                TreatmentsContract.TreatmentsHistory.TABLE_NAME,
-                columns,
+                TreatmentsContract.TreatmentsHistory.TABLE_WITH_NAMES,
+                HISTORY_COLUMNS,
+                SELECTION_PROFILE,
+                new String[] {String.valueOf(profileId)},
                 null,
                 null,
+                orderBy
+        );
+        return readTreatments(cursor);
+    }
+
+    /**
+     * Loads the newest treatments of the profile: all treatments since the provided time, but
+     * not less than the provided number of rows.
+     *
+     * @param db database to query.
+     * @param profileId id of the profile.
+     * @param since local date and time, treatments since it are loaded.
+     * @param minRows minimum number of rows to load if the history has them.
+     * @return treatments in descending time order.
+     */
+    List<FeverTreatment> loadNewestHistory(SQLiteDatabase db, long profileId,
+                                           LocalDateTime since, int minRows) {
+        String profile = String.valueOf(profileId);
+        // Both queries are range scans of the profile and usage time index.
+        long recentRows = DatabaseUtils.longForQuery(db,
+                TreatmentsContract.TreatmentsHistory.SQL_COUNT_SINCE,
+                new String[] {profile, String.valueOf(toUsageTime(since))});
+        Cursor cursor = db.query(
+                TreatmentsContract.TreatmentsHistory.TABLE_WITH_NAMES,
+                HISTORY_COLUMNS,
+                SELECTION_PROFILE,
+                new String[] {profile},
                 null,
                 null,
-                orderBy
+                TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " DESC, "
+                        + TreatmentsContract.TreatmentsHistory.QUALIFIED_ID + " ASC",
+                String.valueOf(Math.max(recentRows, minRows))
         );
-        // Retrieves data from the cursor.
-        List<FeverTreatment> queryResult = new LinkedList<>();
-
-        if (cursor.moveToFirst()) {
-            int idColumnIndex = cursor.getColumnIndexOrThrow(
-                    TreatmentsContract.TreatmentsHistory._ID);
-            int usageDateColumnIndex = cursor.getColumnIndexOrThrow(
-                    TreatmentsContract.TreatmentsHistory.COLUMN_NAME_USAGE_DATE);
-            int nameColumnIndex = cursor.getColumnIndexOrThrow(
-                    TreatmentsContract.TreatmentsHistory.COLUMN_NAME_TREATMENT_NAME);
-
-            while(!cursor.isAfterLast()) {
-                queryResult.add(new FeverTreatment(
-                        cursor.getInt(idColumnIndex),
-                        LocalDateTime.parse(cursor.getString(usageDateColumnIndex)),
-                        cursor.getString(nameColumnIndex)
-                ));
-                cursor.moveToNext();
-            }
+        return readTreatments(cursor);
+    }
+
+    /**
+     * Loads history of one treatment of the profile, resolving the name through the treatments
+     * dictionary.
+     *
+     * @param db database to query.
+     * @param profileId id of the profile.
+     * @param treatmentName name of the treatment.
+     * @param limit maximum number of rows to load.
+     * @return treatments in descending time order, empty list if the treatment was never used.
+     */
+    public List<FeverTreatment> loadHistoryOfTreatment(SQLiteDatabase db, long profileId,
+                                                       String treatmentName, int limit) {
+        long treatmentKey = findTreatmentKey(db, treatmentName);
+        if (treatmentKey == -1) {
+            return new LinkedList<>();
         }
-        // Closes cursor.
-        cursor.close();
+        // Served by the profile, treatment and usage time index.
+        Cursor cursor = db.query(
+                TreatmentsContract.TreatmentsHistory.TABLE_WITH_NAMES,
+                HISTORY_COLUMNS,
+                SELECTION_PROFILE + " AND "
+                        + TreatmentsContract.TreatmentsHistory.QUALIFIED_TREATMENT_ID + " = ?",
+                new String[] {String.valueOf(profileId), String.valueOf(treatmentKey)},
+                null,
+                null,
+                TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " DESC",
+                String.valueOf(limit)
+        );
+        return readTreatments(cursor);
+    }
 
-        return queryResult;
+    /**
+     * Counts usages of every treatment of the profile since the provided time. Rows are grouped
+     * by the dictionary key.
+     *
+     * @param db database to query.
+     * @param profileId id of the profile.
+     * @param since local date and time to count from, inclusive.
+     * @return numbers of usages by treatment names, the most used first.
+     */
+    public Map<String, Integer> countUsagesByTreatment(SQLiteDatabase db, long profileId,
+                                                       LocalDateTime since) {
+        String count = "COUNT(*)";
+        // Range scan of the profile and usage time index, the rows are grouped afterwards.
+        Cursor cursor = db.query(
+                TreatmentsContract.TreatmentsHistory.TABLE_BY_USAGE_TIME_WITH_NAMES,
+                new String[] {TreatmentsContract.Treatments.QUALIFIED_NAME, count},
+                SELECTION_PROFILE + " AND "
+                        + TreatmentsContract.TreatmentsHistory.QUALIFIED_USAGE_TIME + " >= ?",
+                new String[] {String.valueOf(profileId), String.valueOf(toUsageTime(since))},
+                TreatmentsContract.TreatmentsHistory.QUALIFIED_TREATMENT_ID,
+                null,
+                count + " DESC"
+        );
+        Map<String, Integer> usages = new LinkedHashMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                usages.put(cursor.getString(0), cursor.getInt(1));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return usages;
     }
 
     /**
-     * Inserts treatment into a data base.
+     * Inserts treatment into a data base, into the history of its profile.
      *
      * @param treatment treatment to save.
      * @param db database to save into.
@@ -96,28 +392,41 @@ public class TreatmentsDBHelper extends SQLiteOpenHelper {
         if (treatment == null || db == null) {
             return -1;
         }
+        long treatmentKey = getOrCreateTreatmentKey(db, treatment.getTreatmentName());
+        if (treatmentKey == -1) {
+            return -1;
+        }
         ContentValues values = new ContentValues();
-        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_USAGE_DATE,
-                treatment.getTreatmentTime().toString());
-        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_TREATMENT_NAME,
-                treatment.getTreatmentName());
+        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_USAGE_TIME,
+                toUsageTime(treatment.getTreatmentTime()));
+        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_TREATMENT_ID, treatmentKey);
+        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_PROFILE_ID,
+                treatment.getProfileId());
+        putDose(values, treatment);
         return (int) db.insert(TreatmentsContract.TreatmentsHistory.TABLE_NAME, null, values);
     }
 
     /**
-     * Deletes data from history table in provided DB, clears data in the data model.
+     * Deletes history of the profile from provided DB. Doesn't change the data model.
      *
      * @param db db to query.
+     * @param profileId id of the profile.
      */
-    public void clearHistoryDB(SQLiteDatabase db) {
+    public void clearHistoryDB(SQLiteDatabase db, long profileId) {
         if (db == null) {
             Log.w(TAG, "clearHistoryDB was called with a null db");
             return;
         }
-        // Deletes all rows from the history table.
-        db.delete(TreatmentsContract.TreatmentsHistory.TABLE_NAME, null, null);
-        // Clears data model.
-        TreatmentData.getInstance().clearHistory();
+        // Deletes all rows of the profile from the history table.
+        SQLiteStatement delete = db.compileStatement(
+                TreatmentsContract.TreatmentsHistory.SQL_DELETE_PROFILE);
+        try {
+            delete.bindLong(1, profileId);
+            delete.executeUpdateDelete();
+        }
+        finally {
+            delete.close();
+        }
     }
 
     /**
@@ -133,20 +442,28 @@ public class TreatmentsDBHelper extends SQLiteOpenHelper {
             return 0;
         }
 
-        ContentValues values = new ContentValues();
-        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_TREATMENT_NAME,
-                treatment.getTreatmentName());
-        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_USAGE_DATE,
-                treatment.getTreatmentTime().toString());
-        String whereClause = TreatmentsContract.TreatmentsHistory._ID + " = ?";
-        String[] whereArgs = new String[] {String.valueOf(treatment.getId())};
-
-        return db.update(
-                TreatmentsContract.TreatmentsHistory.TABLE_NAME,
-                values,
-                whereClause,
-                whereArgs
-        );
+        long treatmentKey = getOrCreateTreatmentKey(db, treatment.getTreatmentName());
+        if (treatmentKey == -1) {
+            return 0;
+        }
+        SQLiteStatement update =
+                db.compileStatement(TreatmentsContract.TreatmentsHistory.SQL_UPDATE);
+        try {
+            update.bindLong(1, toUsageTime(treatment.getTreatmentTime()));
+            update.bindLong(2, treatmentKey);
+            update.bindDouble(3, treatment.getDoseAmount());
+            if (treatment.getDoseUnit() == null) {
+                update.bindNull(4);
+            }
+            else {
+                update.bindString(4, treatment.getDoseUnit());
+            }
+            update.bindLong(5, treatment.getId());
+            return update.executeUpdateDelete();
+        }
+        finally {
+            update.close();
+        }
     }
 
     /**
@@ -162,13 +479,297 @@ public class TreatmentsDBHelper extends SQLiteOpenHelper {
             return 0;
         }
 
-        String whereClause = TreatmentsContract.TreatmentsHistory._ID + " = ?";
-        String[] whereArgs = new String[] {String.valueOf(treatment.getId())};
+        SQLiteStatement delete =
+                db.compileStatement(TreatmentsContract.TreatmentsHistory.SQL_DELETE);
+        try {
+            delete.bindLong(1, treatment.getId());
+            return delete.executeUpdateDelete();
+        }
+        finally {
+            delete.close();
+        }
+    }
 
-        return db.delete(
-                TreatmentsContract.TreatmentsHistory.TABLE_NAME,
-                whereClause,
-                whereArgs
+    /**
+     * Loads daily summaries of the usages of the profile from the aggregate table. Cost depends
+     * on the number of days, not on the number of usages.
+     *
+     * @param db database to query.
+     * @param profileId id of the profile.
+     * @param from first day of the period.
+     * @param to last day of the period, inclusive.
+     * @return summaries by day in descending order, by treatment name within a day.
+     */
+    public List<DailyUsage> loadDailyUsage(SQLiteDatabase db, long profileId, LocalDate from,
+                                           LocalDate to) {
+        String table = TreatmentsContract.DailyUsage.TABLE_NAME;
+        String[] columns = new String[] {
+                table + "." + TreatmentsContract.DailyUsage.COLUMN_NAME_DAY,
+                TreatmentsContract.Treatments.QUALIFIED_NAME,
+                table + "." + TreatmentsContract.DailyUsage.COLUMN_NAME_USAGE_COUNT,
+                table + "." + TreatmentsContract.DailyUsage.COLUMN_NAME_FIRST_USAGE_TIME,
+                table + "." + TreatmentsContract.DailyUsage.COLUMN_NAME_LAST_USAGE_TIME
+        };
+        Cursor cursor = db.query(
+                table + " INNER JOIN " + TreatmentsContract.Treatments.TABLE_NAME + " ON "
+                        + table + "." + TreatmentsContract.DailyUsage.COLUMN_NAME_TREATMENT_ID
+                        + " = " + TreatmentsContract.Treatments.TABLE_NAME + "."
+                        + TreatmentsContract.Treatments._ID,
+                columns,
+                table + "." + TreatmentsContract.DailyUsage.COLUMN_NAME_PROFILE_ID + " = ? AND "
+                        + table + "." + TreatmentsContract.DailyUsage.COLUMN_NAME_DAY
+                        + " BETWEEN ? AND ?",
+                new String[] {String.valueOf(profileId), String.valueOf(from.toEpochDay()),
+                        String.valueOf(to.toEpochDay())},
+                null,
+                null,
+                table + "." + TreatmentsContract.DailyUsage.COLUMN_NAME_DAY + " DESC, "
+                        + TreatmentsContract.Treatments.QUALIFIED_NAME + " ASC"
+        );
+        List<DailyUsage> usages = new LinkedList<>();
+        try {
+            while (cursor.moveToNext()) {
+                usages.add(new DailyUsage(
+                        LocalDate.ofEpochDay(cursor.getLong(0)),
+                        cursor.getString(1),
+                        cursor.getInt(2),
+                        fromUsageTime(cursor.getLong(3)),
+                        fromUsageTime(cursor.getLong(4))
+                ));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return usages;
+    }
+
+    /**
+     * Loads all profiles.
+     *
+     * @param db database to query.
+     * @return profiles ordered by name, the default profile is always present.
+     */
+    public List<Profile> loadProfiles(SQLiteDatabase db) {
+        Cursor cursor = db.query(
+                TreatmentsContract.Profiles.TABLE_NAME,
+                new String[] {
+                        TreatmentsContract.Profiles._ID,
+                        TreatmentsContract.Profiles.COLUMN_NAME_NAME
+                },
+                null,
+                null,
+                null,
+                null,
+                TreatmentsContract.Profiles.COLUMN_NAME_NAME + " ASC"
+        );
+        List<Profile> profiles = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                profiles.add(new Profile(cursor.getLong(0), cursor.getString(1)));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return profiles;
+    }
+
+    /**
+     * Inserts new profile.
+     *
+     * @param db database to update.
+     * @param name name of the profile.
+     * @return id of the new profile, or -1 if an error occurred, e.g. the name is taken.
+     */
+    public long createProfile(SQLiteDatabase db, String name) {
+        ContentValues values = new ContentValues();
+        values.put(TreatmentsContract.Profiles.COLUMN_NAME_NAME, name);
+        return db.insert(TreatmentsContract.Profiles.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Finds key of the treatment name in the treatments dictionary.
+     *
+     * @param db database to query.
+     * @param treatmentName name of the treatment.
+     * @return key of the name, or -1 if the name isn't in the dictionary.
+     */
+    long findTreatmentKey(SQLiteDatabase db, String treatmentName) {
+        Cursor cursor = db.query(
+                TreatmentsContract.Treatments.TABLE_NAME,
+                new String[] {TreatmentsContract.Treatments._ID},
+                TreatmentsContract.Treatments.COLUMN_NAME_NAME + " = ?",
+                new String[] {treatmentName},
+                null,
+                null,
+                null
+        );
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // Returns key of the treatment name, adds the name to the dictionary if needed.
+    // Returns -1 if an error occurred.
+    private long getOrCreateTreatmentKey(SQLiteDatabase db, String treatmentName) {
+        long treatmentKey = findTreatmentKey(db, treatmentName);
+        if (treatmentKey != -1) {
+            return treatmentKey;
+        }
+        ContentValues values = new ContentValues();
+        values.put(TreatmentsContract.Treatments.COLUMN_NAME_NAME, treatmentName);
+        return db.insert(TreatmentsContract.Treatments.TABLE_NAME, null, values);
+    }
+
+    // Puts dose amount and unit of the treatment into the values.
+    private static void putDose(ContentValues values, FeverTreatment treatment) {
+        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_DOSE_AMOUNT,
+                treatment.getDoseAmount());
+        values.put(TreatmentsContract.TreatmentsHistory.COLUMN_NAME_DOSE_UNIT,
+                treatment.getDoseUnit());
+    }
+
+    /**
+     * Reads treatment from the current row of a cursor over the history columns.
+     *
+     * @param cursor cursor with id, usage time, name, dose amount and dose unit columns.
+     * @return new treatment object.
+     */
+    static FeverTreatment readTreatment(Cursor cursor) {
+        return new FeverTreatment(
+                cursor.getInt(0),
+                fromUsageTime(cursor.getLong(1)),
+                cursor.getString(2),
+                cursor.getDouble(3),
+                cursor.isNull(4) ? null : cursor.getString(4)
+        );
+    }
+
+    // Reads history columns and closes the cursor.
+    private static List<FeverTreatment> readTreatments(Cursor cursor) {
+        List<FeverTreatment> treatments = new LinkedList<>();
+        try {
+            while (cursor.moveToNext()) {
+                treatments.add(readTreatment(cursor));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return treatments;
+    }
+
+    /**
+     * Returns sequence number of the last journaled write applied to the DB.
+     *
+     * @param db db to query.
+     * @return sequence number, 0 if no journaled writes were applied.
+     */
+    long getLastAppliedSequence(SQLiteDatabase db) {
+        Cursor cursor = db.query(
+                TreatmentsContract.JournalState.TABLE_NAME,
+                new String[] {TreatmentsContract.JournalState.COLUMN_NAME_LAST_APPLIED_SEQUENCE},
+                TreatmentsContract.JournalState._ID + " = ?",
+                new String[] {String.valueOf(TreatmentsContract.JournalState.STATE_ROW_ID)},
+                null,
+                null,
+                null
         );
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Stores sequence number of the last journaled write applied to the DB. Should be called in
+     * the same transaction as the writes.
+     *
+     * @param db db to update.
+     * @param sequence sequence number.
+     */
+    void setLastAppliedSequence(SQLiteDatabase db, long sequence) {
+        ContentValues values = new ContentValues();
+        values.put(TreatmentsContract.JournalState._ID,
+                TreatmentsContract.JournalState.STATE_ROW_ID);
+        values.put(TreatmentsContract.JournalState.COLUMN_NAME_LAST_APPLIED_SEQUENCE, sequence);
+        db.insertWithOnConflict(TreatmentsContract.JournalState.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    @Override
+    public List<Profile> loadProfiles() {
+        return loadProfiles(getWritableDatabase());
+    }
+
+    @Override
+    public long createProfile(String name) {
+        return createProfile(getWritableDatabase(), name);
+    }
+
+    @Override
+    public List<FeverTreatment> loadHistory(long profileId) {
+        return loadHistoryFromDB(getWritableDatabase(), profileId);
+    }
+
+    @Override
+    public List<FeverTreatment> loadNewestHistory(long profileId, LocalDateTime since,
+                                                  int minRows) {
+        return loadNewestHistory(getWritableDatabase(), profileId, since, minRows);
+    }
+
+    @Override
+    public List<FeverTreatment> loadHistoryOfTreatment(long profileId, String treatmentName,
+                                                       int limit) {
+        return loadHistoryOfTreatment(getWritableDatabase(), profileId, treatmentName, limit);
+    }
+
+    @Override
+    public Map<String, Integer> countUsagesByTreatment(long profileId, LocalDateTime since) {
+        return countUsagesByTreatment(getWritableDatabase(), profileId, since);
+    }
+
+    @Override
+    public List<DailyUsage> loadDailyUsage(long profileId, LocalDate from, LocalDate to) {
+        return loadDailyUsage(getWritableDatabase(), profileId, from, to);
+    }
+
+    @Override
+    public int saveTreatment(FeverTreatment treatment) {
+        deleteSnapshot(treatment);
+        return saveTreatmentIntoDB(treatment, getWritableDatabase());
+    }
+
+    @Override
+    public int updateTreatment(FeverTreatment treatment) {
+        deleteSnapshot(treatment);
+        return updateTreatment(getWritableDatabase(), treatment);
+    }
+
+    @Override
+    public int deleteTreatment(FeverTreatment treatment) {
+        deleteSnapshot(treatment);
+        return deleteTreatment(getWritableDatabase(), treatment);
+    }
+
+    @Override
+    public void clearHistory(long profileId) {
+        // Write bypasses the journal, snapshot would show the cleared history on the next start.
+        snapshots.delete(profileId);
+        clearHistoryDB(getWritableDatabase(), profileId);
+    }
+
+    // Deletes snapshot of the profile of the treatment before it's written, the snapshot is
+    // written again by the next write through the repository.
+    private void deleteSnapshot(FeverTreatment treatment) {
+        if (treatment != null) {
+            snapshots.delete(treatment.getProfileId());
+        }
     }
 }
@@ -0,0 +1,572 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import au.id.fedorgabrus.feverlog.metrics.LatencyHistogram;
+import au.id.fedorgabrus.feverlog.metrics.Metrics;
+import au.id.fedorgabrus.feverlog.models.DailyUsage;
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+import au.id.fedorgabrus.feverlog.models.Profile;
+
+/**
+ * Runs all DB work off the main thread.
+ *
+ * <p>Reads are executed on a small pool of threads, writes on a single writer thread, so they
+ * are applied in the order they were requested. Treatment writes go through the
+ * {@link WriteBehindQueue} and are committed in batches. Reads are started by the writer thread
+ * after the writes requested before them are committed, so they always see them. Results are
+ * delivered to the main thread through callbacks, an operation that fails delivers the failure
+ * result documented by its method. Realized as a singleton shared by all screens, each screen
+ * acquires it when created and releases it when destroyed.</p>
+ */
+public class TreatmentsRepository {
+    private static final String TAG = "TreatmentsRepository";
+    // Number of threads that execute reads.
+    private static final int READER_THREADS = 2;
+    // Latencies of the DB operations, measured on the background threads.
+    private static final LatencyHistogram LOAD_PROFILES_LATENCY =
+            Metrics.histogram("db.loadProfiles");
+    private static final LatencyHistogram CREATE_PROFILE_LATENCY =
+            Metrics.histogram("db.createProfile");
+    private static final LatencyHistogram LOAD_SNAPSHOT_LATENCY =
+            Metrics.histogram("db.loadSnapshot");
+    private static final LatencyHistogram LOAD_RECENT_HISTORY_LATENCY =
+            Metrics.histogram("db.loadRecentHistory");
+    private static final LatencyHistogram LOAD_NEXT_HISTORY_PAGE_LATENCY =
+            Metrics.histogram("db.loadNextHistoryPage");
+    private static final LatencyHistogram LOAD_HISTORY_PAGE_AFTER_LATENCY =
+            Metrics.histogram("db.loadHistoryPageAfter");
+    private static final LatencyHistogram LOAD_HISTORY_PAGE_BEFORE_LATENCY =
+            Metrics.histogram("db.loadHistoryPageBefore");
+    private static final LatencyHistogram LOAD_HISTORY_RANGE_LATENCY =
+            Metrics.histogram("db.loadHistoryRange");
+    private static final LatencyHistogram LOAD_HISTORY_OF_TREATMENT_LATENCY =
+            Metrics.histogram("db.loadHistoryOfTreatment");
+    private static final LatencyHistogram COUNT_USAGES_BY_TREATMENT_LATENCY =
+            Metrics.histogram("db.countUsagesByTreatment");
+    private static final LatencyHistogram LOAD_DAILY_USAGE_LATENCY =
+            Metrics.histogram("db.loadDailyUsage");
+    private static final LatencyHistogram CLEAR_HISTORY_LATENCY =
+            Metrics.histogram("db.clearHistory");
+    private static final LatencyHistogram EXPORT_HISTORY_LATENCY =
+            Metrics.histogram("db.exportHistory");
+    private static final LatencyHistogram IMPORT_HISTORY_LATENCY =
+            Metrics.histogram("db.importHistory");
+    // Latency of the callbacks on the main thread, covers the model updates with the results.
+    private static final LatencyHistogram CALLBACK_LATENCY = Metrics.histogram("main.dbCallback");
+
+    private static TreatmentsRepository instance = null;
+
+    /**
+     * Receives result of a DB operation on the main thread.
+     *
+     * @param <T> type of the result.
+     */
+    public interface Callback<T> {
+        /**
+         * Called on the main thread when operation completes.
+         *
+         * @param result result of the operation.
+         */
+        void onComplete(T result);
+    }
+
+    private final DatabaseManager databaseManager;
+    private final ExecutorService readExecutor = Executors.newFixedThreadPool(READER_THREADS);
+    private final ScheduledExecutorService writeExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final WriteBehindQueue writeQueue;
+    private final ModelSnapshot snapshots;
+
+    // Private constructor.
+    private TreatmentsRepository(Context context) {
+        databaseManager = DatabaseManager.getInstance(context);
+        File filesDir = context.getApplicationContext().getFilesDir();
+        snapshots = new ModelSnapshot(filesDir);
+        writeQueue = new WriteBehindQueue(databaseManager, writeExecutor, mainHandler, filesDir,
+                snapshots);
+        // Runs before any other operation, writes left in the journal are applied first.
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeQueue.recover();
+            }
+        });
+    }
+
+    /**
+     * Getter for the repository instance. Acquires the DB, every call should be paired with
+     * {@link #release()}.
+     *
+     * @param context any context, application context is retained.
+     * @return repository.
+     */
+    public static synchronized TreatmentsRepository acquire(Context context) {
+        if (instance == null) {
+            instance = new TreatmentsRepository(context);
+        }
+        instance.databaseManager.acquire();
+        return instance;
+    }
+
+    /**
+     * Releases the DB. It is closed after pending writes when the last screen releases it.
+     */
+    public void release() {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeQueue.flush();
+                databaseManager.release();
+            }
+        });
+    }
+
+    /**
+     * Loads all profiles.
+     *
+     * @param callback receives profiles ordered by name, or null if an error occurred.
+     */
+    public void loadProfiles(Callback<List<Profile>> callback) {
+        read(LOAD_PROFILES_LATENCY, new Callable<List<Profile>>() {
+            @Override
+            public List<Profile> call() {
+                return databaseManager.getHelper().loadProfiles(getDatabase());
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Creates new profile.
+     *
+     * @param name name of the profile.
+     * @param callback receives id of the new profile, or -1 if the name is taken or an error
+     *                 occurred.
+     */
+    public void createProfile(final String name, Callback<Long> callback) {
+        write(CREATE_PROFILE_LATENCY, new Callable<Long>() {
+            @Override
+            public Long call() {
+                return databaseManager.getHelper().createProfile(getDatabase(), name);
+            }
+        }, -1L, callback);
+    }
+
+    /**
+     * Loads snapshot of the recent history of the profile without opening the DB, so it can be
+     * shown before the history is loaded. Doesn't wait for the journal recovery.
+     *
+     * @param profileId id of the profile.
+     * @param callback receives treatments in descending time order, or null if there is no
+     *                 snapshot or it's stale.
+     */
+    public void loadSnapshot(final long profileId, Callback<List<FeverTreatment>> callback) {
+        Callable<List<FeverTreatment>> read = new Callable<List<FeverTreatment>>() {
+            @Override
+            public List<FeverTreatment> call() {
+                // Journaled writes are replayed into the DB on start, snapshot doesn't have them.
+                if (writeQueue.hasJournaledWrites()) {
+                    return null;
+                }
+                return snapshots.read(profileId);
+            }
+        };
+        readExecutor.execute(new Operation<>(LOAD_SNAPSHOT_LATENCY, read, null, callback));
+    }
+
+    /**
+     * Loads treatments of the profile for the past 24 hours, starting paging from the newest
+     * treatment.
+     *
+     * @param profileId id of the profile.
+     * @param callback receives treatments in descending time order, or null if an error
+     *                 occurred.
+     */
+    public void loadRecentHistory(final long profileId,
+                                  Callback<List<FeverTreatment>> callback) {
+        read(LOAD_RECENT_HISTORY_LATENCY, new Callable<List<FeverTreatment>>() {
+            @Override
+            public List<FeverTreatment> call() {
+                return HistoryPager.getInstance(profileId).loadRecentHistory(getDatabase());
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Loads the next page of older treatments of the profile.
+     *
+     * @param profileId id of the profile.
+     * @param callback receives treatments in descending time order, or null if an error
+     *                 occurred.
+     */
+    public void loadNextHistoryPage(long profileId, Callback<List<FeverTreatment>> callback) {
+        loadNextHistoryPage(HistoryPager.getInstance(profileId), callback);
+    }
+
+    /**
+     * Loads the next page of older treatments with the provided pager.
+     *
+     * @param pager pager that walks the history.
+     * @param callback receives treatments in descending time order, or null if an error
+     *                 occurred.
+     */
+    public void loadNextHistoryPage(final HistoryPager pager,
+                                    Callback<List<FeverTreatment>> callback) {
+        read(LOAD_NEXT_HISTORY_PAGE_LATENCY, new Callable<List<FeverTreatment>>() {
+            @Override
+            public List<FeverTreatment> call() {
+                return pager.loadNextPage(getDatabase());
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Loads the page of older treatments that follows the provided treatment.
+     *
+     * @param profileId id of the profile.
+     * @param last last loaded treatment, null to start from the newest treatment.
+     * @param callback receives treatments in descending time order, or null if an error
+     *                 occurred.
+     */
+    public void loadHistoryPageAfter(final long profileId, final FeverTreatment last,
+                                     Callback<List<FeverTreatment>> callback) {
+        read(LOAD_HISTORY_PAGE_AFTER_LATENCY, new Callable<List<FeverTreatment>>() {
+            @Override
+            public List<FeverTreatment> call() {
+                return HistoryPager.loadPageAfter(getDatabase(), profileId, last);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Loads the page of newer treatments that precedes the provided treatment.
+     *
+     * @param profileId id of the profile.
+     * @param first first loaded treatment.
+     * @param callback receives treatments in descending time order, or null if an error
+     *                 occurred.
+     */
+    public void loadHistoryPageBefore(final long profileId, final FeverTreatment first,
+                                      Callback<List<FeverTreatment>> callback) {
+        read(LOAD_HISTORY_PAGE_BEFORE_LATENCY, new Callable<List<FeverTreatment>>() {
+            @Override
+            public List<FeverTreatment> call() {
+                return HistoryPager.loadPageBefore(getDatabase(), profileId, first);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Loads the treatments between the provided ones again and counts the newer treatments.
+     * Only the loaded rows are read from the table, newer treatments are counted in the index.
+     *
+     * @param profileId id of the profile.
+     * @param first first treatment of the range, null to start from the newest treatment.
+     * @param last last treatment of the range, null to continue to the oldest treatment.
+     * @param limit maximum number of treatments to load.
+     * @param callback receives the loaded range, or null if an error occurred.
+     */
+    public void loadHistoryRange(final long profileId, final FeverTreatment first,
+                                 final FeverTreatment last, final int limit,
+                                 Callback<HistoryRange> callback) {
+        read(LOAD_HISTORY_RANGE_LATENCY, new Callable<HistoryRange>() {
+            @Override
+            public HistoryRange call() {
+                return HistoryPager.loadRange(getDatabase(), profileId, first, last, limit);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Loads the newest usages of one treatment of the profile.
+     *
+     * @param profileId id of the profile.
+     * @param treatmentName name of the treatment.
+     * @param limit maximum number of treatments to load.
+     * @param callback receives treatments in descending time order, or null if an error
+     *                 occurred.
+     */
+    public void loadHistoryOfTreatment(final long profileId, final String treatmentName,
+                                       final int limit, Callback<List<FeverTreatment>> callback) {
+        read(LOAD_HISTORY_OF_TREATMENT_LATENCY, new Callable<List<FeverTreatment>>() {
+            @Override
+            public List<FeverTreatment> call() {
+                return databaseManager.getHelper()
+                        .loadHistoryOfTreatment(getDatabase(), profileId, treatmentName, limit);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Counts usages of every treatment of the profile since the provided time.
+     *
+     * @param profileId id of the profile.
+     * @param since local date and time to count from, inclusive.
+     * @param callback receives numbers of usages by treatment names, the most used first, or null
+     *                 if an error occurred.
+     */
+    public void countUsagesByTreatment(final long profileId, final LocalDateTime since,
+                                       Callback<Map<String, Integer>> callback) {
+        read(COUNT_USAGES_BY_TREATMENT_LATENCY, new Callable<Map<String, Integer>>() {
+            @Override
+            public Map<String, Integer> call() {
+                return databaseManager.getHelper()
+                        .countUsagesByTreatment(getDatabase(), profileId, since);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Loads daily summaries of the usages of the profile for the period.
+     *
+     * @param profileId id of the profile.
+     * @param from first day of the period.
+     * @param to last day of the period, inclusive.
+     * @param callback receives summaries by day in descending order, or null if an error
+     *                 occurred.
+     */
+    public void loadDailyUsage(final long profileId, final LocalDate from, final LocalDate to,
+                               Callback<List<DailyUsage>> callback) {
+        read(LOAD_DAILY_USAGE_LATENCY, new Callable<List<DailyUsage>>() {
+            @Override
+            public List<DailyUsage> call() {
+                return databaseManager.getHelper()
+                        .loadDailyUsage(getDatabase(), profileId, from, to);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Queues insert of the treatment into the history of its profile. Treatment gets a temporary
+     * id at once, it should be given to the treatment in the data model, so it can be updated or
+     * deleted before it's saved.
+     *
+     * @param treatment treatment to save.
+     * @param callback receives id of the new row, -1 if an error occurred, or the temporary id if
+     *                 the treatment was deleted before it was saved.
+     * @return temporary id of the treatment.
+     */
+    public int saveTreatment(FeverTreatment treatment, Callback<Integer> callback) {
+        return writeQueue.insert(treatment, callback);
+    }
+
+    /**
+     * Queues update of the treatment record.
+     *
+     * @param treatment new data, with the id of the row or the temporary id.
+     * @param callback receives number of rows affected (1 if successful).
+     */
+    public void updateTreatment(FeverTreatment treatment, Callback<Integer> callback) {
+        writeQueue.update(treatment, callback);
+    }
+
+    /**
+     * Queues deletion of the treatment record.
+     *
+     * @param treatment treatment to delete, with the id of the row or the temporary id.
+     * @param callback receives number of rows affected (1 if successful).
+     */
+    public void deleteTreatment(FeverTreatment treatment, Callback<Integer> callback) {
+        writeQueue.delete(treatment, callback);
+    }
+
+    /**
+     * Deletes all treatments of the profile from the DB.
+     *
+     * @param profileId id of the profile.
+     * @param callback receives true when rows are deleted, or false if an error occurred.
+     */
+    public void clearHistory(final long profileId, Callback<Boolean> callback) {
+        write(CLEAR_HISTORY_LATENCY, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                // Queued writes were requested before clearing.
+                writeQueue.flush();
+                // Write bypasses the journal, snapshot is deleted in case the process dies.
+                snapshots.delete(profileId);
+                databaseManager.getHelper().clearHistoryDB(getDatabase(), profileId);
+                snapshots.write(getDatabase(), databaseManager.getHelper(), profileId);
+                return true;
+            }
+        }, false, callback);
+    }
+
+    /**
+     * Exports history of the profile into the file as CSV, rows are written while they are read.
+     * Queued writes are flushed before the export starts, as before every read, so all
+     * treatments saved before the call are exported.
+     *
+     * @param profileId id of the profile.
+     * @param file file to write into, closed when the export completes.
+     * @param progress receives number of exported rows after every chunk, can be null.
+     * @param callback receives number of exported rows, or -1 if an error occurred.
+     * @return transfer that can be cancelled.
+     */
+    public HistoryTransfer exportHistory(final long profileId, final ParcelFileDescriptor file,
+                                         Callback<Integer> progress, Callback<Integer> callback) {
+        final HistoryTransfer transfer = new HistoryTransfer(postToMainThread(progress));
+        read(EXPORT_HISTORY_LATENCY, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                try (FileChannel channel =
+                             new ParcelFileDescriptor.AutoCloseOutputStream(file).getChannel()) {
+                    return transfer.exportHistory(getDatabase(), profileId, channel);
+                }
+                // Callback is still called, so the caller doesn't wait for a failed transfer.
+                catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "History export failed.", e);
+                    return -1;
+                }
+            }
+        }, -1, callback);
+        return transfer;
+    }
+
+    /**
+     * Imports CSV file into the history of the profile. Rows are inserted in chunks, each chunk
+     * in its own transaction, other writes wait until the import completes. Loaded data models
+     * aren't changed, the history should be loaded again after the import.
+     *
+     * @param profileId id of the profile.
+     * @param file file to read from, closed when the import completes.
+     * @param progress receives number of imported rows after every chunk, can be null.
+     * @param callback receives number of imported rows, or -1 if an error occurred.
+     *                 Rows of the committed chunks are kept even if the import failed.
+     * @return transfer that can be cancelled.
+     */
+    public HistoryTransfer importHistory(final long profileId, final ParcelFileDescriptor file,
+                                         Callback<Integer> progress, Callback<Integer> callback) {
+        final HistoryTransfer transfer = new HistoryTransfer(postToMainThread(progress));
+        write(IMPORT_HISTORY_LATENCY, new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                // Queued writes were requested before the import.
+                writeQueue.flush();
+                // Import bypasses the journal, snapshot is deleted in case the process dies.
+                snapshots.delete(profileId);
+                try (FileChannel channel =
+                             new ParcelFileDescriptor.AutoCloseInputStream(file).getChannel()) {
+                    return transfer.importHistory(getDatabase(), profileId, channel);
+                }
+                // Callback is still called, so the caller doesn't wait for a failed transfer.
+                catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "History import failed.", e);
+                    return -1;
+                }
+                finally {
+                    // Committed chunks are kept even if the import failed.
+                    snapshots.write(getDatabase(), databaseManager.getHelper(), profileId);
+                }
+            }
+        }, -1, callback);
+        return transfer;
+    }
+
+    // Wraps callback to be called on the main thread. Returns null if callback is null.
+    private Callback<Integer> postToMainThread(final Callback<Integer> callback) {
+        if (callback == null) {
+            return null;
+        }
+        return new Callback<Integer>() {
+            @Override
+            public void onComplete(final Integer result) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onComplete(result);
+                    }
+                });
+            }
+        };
+    }
+
+    // Opens DB if needed. Called on the background threads only.
+    private SQLiteDatabase getDatabase() {
+        return databaseManager.getDatabase();
+    }
+
+    // Executes read operation on the reader pool after the writes requested before it, including
+    // the ones waiting in the queue and the recovered ones, are committed.
+    private <T> void read(LatencyHistogram latency, Callable<T> operation, T failureResult,
+                          Callback<T> callback) {
+        final Operation<T> read = new Operation<>(latency, operation, failureResult, callback);
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeQueue.flush();
+                readExecutor.execute(read);
+            }
+        });
+    }
+
+    // Executes write operation on the writer thread.
+    private <T> void write(LatencyHistogram latency, Callable<T> operation, T failureResult,
+                           Callback<T> callback) {
+        writeExecutor.execute(new Operation<>(latency, operation, failureResult, callback));
+    }
+
+    /**
+     * Runs DB operation and posts its result to the main thread. Failure result is posted if the
+     * operation throws, so the caller never waits for a failed operation. Latency of the
+     * operation is recorded into its histogram, latency of the callback into a shared one.
+     *
+     * @param <T> type of the result.
+     */
+    private class Operation<T> implements Runnable {
+        private final LatencyHistogram latency;
+        private final Callable<T> operation;
+        private final T failureResult;
+        private final Callback<T> callback;
+
+        Operation(LatencyHistogram latency, Callable<T> operation, T failureResult,
+                  Callback<T> callback) {
+            this.latency = latency;
+            this.operation = operation;
+            this.failureResult = failureResult;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            T operationResult;
+            long start = System.nanoTime();
+            try {
+                operationResult = operation.call();
+            }
+            catch (Exception e) {
+                Log.e(TAG, "DB operation failed.", e);
+                operationResult = failureResult;
+            }
+            latency.recordSince(start);
+            final T result = operationResult;
+            if (callback != null) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        long start = System.nanoTime();
+                        callback.onComplete(result);
+                        CALLBACK_LATENCY.recordSince(start);
+                    }
+                });
+            }
+        }
+    }
+}
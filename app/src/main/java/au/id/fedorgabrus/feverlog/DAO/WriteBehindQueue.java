@@ -0,0 +1,632 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import au.id.fedorgabrus.feverlog.metrics.LatencyHistogram;
+import au.id.fedorgabrus.feverlog.metrics.Metrics;
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+import au.id.fedorgabrus.feverlog.models.Profile;
+
+/**
+ * Collects treatment inserts, updates and deletes and commits them to the DB in batches.
+ *
+ * <p>Writes are committed after a short delay or when the batch is full, all writes of a batch in
+ * one transaction. Writes of the same row that are waiting in the queue are coalesced into one
+ * write with the last state of the row. Inserted treatment gets a temporary id at once, so it can
+ * be updated or deleted before it's saved: an update is folded into the queued insert, a delete
+ * cancels it, and writes that come after the insert was committed are applied to the saved row.
+ * Real id is delivered to the insert callback.</p>
+ *
+ * <p>Each write is appended to the journal file before it's committed, coalesced writes are
+ * journaled with the whole state of the row. Sequence number of the last applied write is stored
+ * in the same transaction as the writes, so writes that weren't committed before the process died
+ * are replayed on the next start exactly once. If a batch fails, its writes are committed one by
+ * one, so a failing write doesn't take the others with it. Write that keeps failing while the DB
+ * accepts other commits is dropped after a few attempts, other failed writes stay queued and
+ * journaled and are retried later. Snapshots of the profiles changed by the committed writes are
+ * rewritten before the journal is truncated, it's truncated only when the queue is empty.</p>
+ *
+ * <p>Writes should be requested on the main thread, where their results are delivered. All other
+ * methods have to be called on the writer thread.</p>
+ */
+final class WriteBehindQueue {
+    private static final String TAG = "WriteBehindQueue";
+    // Time writes wait in the queue for other writes to join the batch, in milliseconds.
+    private static final long FLUSH_DELAY_MS = 50;
+    // Number of writes that are committed without waiting for the delay.
+    private static final int MAX_BATCH_SIZE = 100;
+    // Time failed writes wait before they are committed again, in milliseconds.
+    private static final long RETRY_DELAY_MS = 1000;
+    // Number of failed commits after which a write is dropped if the DB accepts other commits.
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String JOURNAL_FILE_NAME = "write_journal";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    // Latency of committing the queued writes, empty flushes aren't recorded.
+    private static final LatencyHistogram FLUSH_LATENCY = Metrics.histogram("db.flush");
+
+    // Types of writes.
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+    // Set in the journaled type of the writes that are followed by the dose. Journals written
+    // before doses were recorded don't have it.
+    private static final byte DOSE_FLAG = 0x10;
+    // Set in the journaled type of the writes that are followed by the profile id. Writes
+    // journaled before profiles were added belong to the default profile.
+    private static final byte PROFILE_FLAG = 0x20;
+
+    private final DatabaseManager databaseManager;
+    private final ScheduledExecutorService writeExecutor;
+    private final Handler mainHandler;
+    private final File journalFile;
+    private final ModelSnapshot snapshots;
+    // Writes waiting to be committed in the order of their sequence numbers.
+    private final List<PendingWrite> pending = new ArrayList<>();
+    // Last temporary id given to an inserted treatment. Temporary ids are below the default id.
+    private final AtomicInteger lastTemporaryId = new AtomicInteger(FeverTreatment.DEFAULT_ID);
+    // Ids of the saved rows by temporary ids, kept until the insert callbacks have run.
+    private final Map<Integer, Integer> savedIds = new HashMap<>();
+    // Opened on the first write, null while the journal is empty.
+    private DataOutputStream journal = null;
+    // Sequence number of the next write.
+    private long nextSequence = 1;
+    // Delayed flush, null if not scheduled.
+    private ScheduledFuture<?> scheduledFlush = null;
+
+    /**
+     * Constructor.
+     *
+     * @param databaseManager DB to write into.
+     * @param writeExecutor writer thread.
+     * @param mainHandler handler that delivers results to the main thread.
+     * @param filesDir directory to keep the journal in.
+     * @param snapshots snapshots to rewrite after commits.
+     */
+    WriteBehindQueue(DatabaseManager databaseManager, ScheduledExecutorService writeExecutor,
+                     Handler mainHandler, File filesDir, ModelSnapshot snapshots) {
+        this.databaseManager = databaseManager;
+        this.writeExecutor = writeExecutor;
+        this.mainHandler = mainHandler;
+        this.journalFile = new File(filesDir, JOURNAL_FILE_NAME);
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Queues insert of the treatment. Treatment can be updated and deleted through the returned
+     * temporary id until the callback delivers the real one.
+     *
+     * @param treatment treatment to save.
+     * @param callback receives id of the new row, -1 if an error occurred, or the temporary id if
+     *                 the treatment was deleted before it was saved. May be null.
+     * @return temporary id of the treatment, unique in the process.
+     */
+    int insert(FeverTreatment treatment, TreatmentsRepository.Callback<Integer> callback) {
+        int temporaryId = lastTemporaryId.decrementAndGet();
+        enqueue(INSERT, temporaryId, treatment, callback);
+        return temporaryId;
+    }
+
+    /**
+     * Queues update of the treatment record.
+     *
+     * @param treatment new data, with the real or temporary id.
+     * @param callback receives number of rows affected (1 if successful). May be null.
+     */
+    void update(FeverTreatment treatment, TreatmentsRepository.Callback<Integer> callback) {
+        enqueue(UPDATE, treatment.getId(), treatment, callback);
+    }
+
+    /**
+     * Queues deletion of the treatment record.
+     *
+     * @param treatment treatment to delete, with the real or temporary id.
+     * @param callback receives number of rows affected (1 if successful). May be null.
+     */
+    void delete(FeverTreatment treatment, TreatmentsRepository.Callback<Integer> callback) {
+        enqueue(DELETE, treatment.getId(), treatment, callback);
+    }
+
+    /**
+     * Checks if the journal has writes that may be not committed yet. Can be called on any
+     * thread.
+     *
+     * @return true if the journal isn't empty.
+     */
+    boolean hasJournaledWrites() {
+        return journalFile.length() > 0;
+    }
+
+    /**
+     * Applies writes that were journaled, but not committed before the process died. Should be
+     * called before any other write.
+     */
+    void recover() {
+        long lastApplied = databaseManager.getHelper()
+                .getLastAppliedSequence(databaseManager.getDatabase());
+        nextSequence = lastApplied + 1;
+        if (!journalFile.exists()) {
+            return;
+        }
+        // Temporary ids of the previous process are replaced, so they don't meet the new ones.
+        Map<Integer, Integer> temporaryIds = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                PendingWrite write = PendingWrite.readFrom(in);
+                if (write.sequence > lastApplied) {
+                    write.id = replaceTemporaryId(write, temporaryIds);
+                    add(write);
+                }
+                nextSequence = Math.max(nextSequence, write.sequence + 1);
+            }
+        }
+        catch (EOFException e) {
+            // End of the journal, a write that was cut short is never acknowledged.
+        }
+        catch (IOException e) {
+            Log.e(TAG, "recover(): Journal can't be read.", e);
+        }
+        Log.i(TAG, "Recovered " + pending.size() + " writes from the journal.");
+        flush();
+        // Writes that are still queued are journaled again with their new temporary ids.
+        if (!pending.isEmpty()) {
+            rewriteJournal();
+        }
+    }
+
+    /**
+     * Commits all queued writes and delivers their results. Writes that fail stay queued and
+     * journaled, they are committed again after a delay.
+     */
+    void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            // Journal can only have the writes that cancelled each other.
+            truncateJournal();
+            return;
+        }
+        long start = System.nanoTime();
+        Set<Long> changedProfiles = new LinkedHashSet<>();
+        if (!commit(pending.size(), changedProfiles)) {
+            // One failing write shouldn't fail the others, they are committed one by one.
+            while (!pending.isEmpty()) {
+                if (!commit(1, changedProfiles) && !dropIfFailing(pending.get(0))) {
+                    break;
+                }
+            }
+        }
+        // Journal is kept until the snapshots have the committed writes, so they are stale if
+        // the process dies before that.
+        for (long profileId : changedProfiles) {
+            writeSnapshot(profileId);
+        }
+        if (pending.isEmpty()) {
+            truncateJournal();
+        }
+        else {
+            Log.w(TAG, "flush(): " + pending.size() + " writes are kept for retry.");
+            scheduleFlush(RETRY_DELAY_MS);
+        }
+        FLUSH_LATENCY.recordSince(start);
+    }
+
+    // Journals the write and adds it to the queue on the writer thread.
+    private void enqueue(byte type, final int id, FeverTreatment treatment,
+                         final TreatmentsRepository.Callback<Integer> callback) {
+        // Copies data, so the treatment can be changed while the write is waiting.
+        final long usageTime = TreatmentsDBHelper.toUsageTime(treatment.getTreatmentTime());
+        final String name = treatment.getTreatmentName();
+        final double doseAmount = treatment.getDoseAmount();
+        final String doseUnit = treatment.getDoseUnit();
+        final long profileId = treatment.getProfileId();
+        final byte writeType = type;
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Insert could be committed before its callback gave the real id to the caller.
+                Integer savedId = savedIds.get(id);
+                PendingWrite write = new PendingWrite(nextSequence++, writeType,
+                        savedId != null ? savedId : id, usageTime, name, doseAmount, doseUnit,
+                        profileId);
+                write.addCallback(callback);
+                appendToJournal(add(write));
+                if (pending.size() >= MAX_BATCH_SIZE) {
+                    flush();
+                }
+                else {
+                    scheduleFlush(FLUSH_DELAY_MS);
+                }
+            }
+        });
+    }
+
+    // Adds write to the queue, coalescing it with the queued write of the same row. Returns the
+    // write to journal, it has the whole state of the row, so it replaces the queued one on replay.
+    private PendingWrite add(PendingWrite write) {
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            PendingWrite queued = pending.get(i);
+            if (queued.id != write.id) {
+                continue;
+            }
+            pending.remove(i);
+            // Row isn't saved yet, later writes change the queued insert.
+            boolean inserted = queued.type == INSERT;
+            PendingWrite coalesced = new PendingWrite(write.sequence,
+                    inserted ? INSERT : write.type, write.id, write.usageTime, write.name,
+                    write.doseAmount, write.doseUnit,
+                    inserted ? queued.profileId : write.profileId);
+            coalesced.takeCallbacks(queued);
+            coalesced.takeCallbacks(write);
+            if (inserted && write.type == DELETE) {
+                // Nothing is written, the delete is journaled to cancel the insert on replay.
+                post(coalesced, write.id, 1);
+                return write;
+            }
+            write = coalesced;
+            break;
+        }
+        // Later sequence keeps the queue in the journal order.
+        pending.add(write);
+        return write;
+    }
+
+    // Commits the first writes of the queue in one transaction, delivers their results and
+    // removes them from the queue. Returns false if the transaction failed, writes stay queued.
+    private boolean commit(int count, Set<Long> changedProfiles) {
+        List<PendingWrite> writes = pending.subList(0, count);
+        int[] results = new int[count];
+        try {
+            SQLiteDatabase db = databaseManager.getDatabase();
+            TreatmentsDBHelper dbHelper = databaseManager.getHelper();
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < count; i++) {
+                    results[i] = writes.get(i).apply(dbHelper, db);
+                }
+                dbHelper.setLastAppliedSequence(db, writes.get(count - 1).sequence);
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        }
+        catch (RuntimeException e) {
+            Log.e(TAG, "commit(): " + count + " writes failed.", e);
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            PendingWrite write = writes.get(i);
+            deliver(write, results[i]);
+            changedProfiles.add(write.profileId);
+        }
+        writes.clear();
+        return true;
+    }
+
+    // Counts failed commit of the first write of the queue. Write that failed too many times is
+    // dropped if the DB accepts other commits, so it doesn't hold the writes after it. Returns
+    // true if the write was dropped.
+    private boolean dropIfFailing(PendingWrite write) {
+        if (++write.attempts < MAX_ATTEMPTS) {
+            return false;
+        }
+        try {
+            SQLiteDatabase db = databaseManager.getDatabase();
+            db.beginTransaction();
+            try {
+                // Write isn't replayed on the next start.
+                databaseManager.getHelper().setLastAppliedSequence(db, write.sequence);
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        }
+        catch (RuntimeException e) {
+            Log.e(TAG, "dropIfFailing(): DB doesn't accept commits, write is kept.", e);
+            return false;
+        }
+        Log.e(TAG, "dropIfFailing(): Write " + write.sequence + " dropped after " + write.attempts
+                + " attempts.");
+        pending.remove(0);
+        deliver(write, write.failureResult());
+        return true;
+    }
+
+    // Rewrites snapshot of the profile, deletes it if it can't be rewritten.
+    private void writeSnapshot(long profileId) {
+        try {
+            snapshots.write(databaseManager.getDatabase(), databaseManager.getHelper(),
+                    profileId);
+        }
+        catch (RuntimeException e) {
+            Log.e(TAG, "writeSnapshot(): Snapshot can't be rewritten.", e);
+            snapshots.delete(profileId);
+        }
+    }
+
+    // Commits the queue after a delay, unless a flush is already scheduled.
+    private void scheduleFlush(long delayMs) {
+        if (scheduledFlush == null) {
+            scheduledFlush = writeExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    scheduledFlush = null;
+                    flush();
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Delivers result of the applied write: id of the new row for inserts, number of affected
+    // rows otherwise. Writes folded into an insert report one affected row if it was saved.
+    private void deliver(PendingWrite write, int result) {
+        if (write.type != INSERT) {
+            post(write, FeverTreatment.DEFAULT_ID, result);
+            return;
+        }
+        if (result != -1 && write.id < FeverTreatment.DEFAULT_ID) {
+            savedIds.put(write.id, result);
+        }
+        post(write, result, result == -1 ? 0 : 1);
+    }
+
+    // Posts results of the write to its callbacks on the main thread.
+    private void post(final PendingWrite write, final int savedId, final int affectedRows) {
+        final boolean hasSavedId = savedIds.containsKey(write.id);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (TreatmentsRepository.Callback<Integer> callback : write.insertCallbacks) {
+                    if (callback != null) {
+                        callback.onComplete(savedId);
+                    }
+                }
+                for (TreatmentsRepository.Callback<Integer> callback : write.changeCallbacks) {
+                    if (callback != null) {
+                        callback.onComplete(affectedRows);
+                    }
+                }
+                if (!hasSavedId) {
+                    return;
+                }
+                // Callers have the real id now, writes they request later carry it.
+                writeExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        savedIds.remove(write.id);
+                    }
+                });
+            }
+        });
+    }
+
+    // Returns id of the recovered write with the temporary id replaced by a new one. Writes of
+    // the same row get the same id.
+    private int replaceTemporaryId(PendingWrite write, Map<Integer, Integer> temporaryIds) {
+        // Inserts journaled before temporary ids were given have the default id.
+        if (write.type == INSERT && write.id == FeverTreatment.DEFAULT_ID) {
+            return lastTemporaryId.decrementAndGet();
+        }
+        if (write.id >= FeverTreatment.DEFAULT_ID) {
+            return write.id;
+        }
+        Integer id = temporaryIds.get(write.id);
+        if (id == null) {
+            id = lastTemporaryId.decrementAndGet();
+            temporaryIds.put(write.id, id);
+        }
+        return id;
+    }
+
+    // Appends write to the journal. Data reaches the OS before the write is committed, so it
+    // survives death of the process.
+    private void appendToJournal(PendingWrite write) {
+        try {
+            if (journal == null) {
+                journal = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(journalFile, true)));
+            }
+            write.writeTo(journal);
+            journal.flush();
+        }
+        catch (IOException e) {
+            Log.e(TAG, "appendToJournal(): Write isn't journaled.", e);
+        }
+    }
+
+    // Replaces the journal with the queued writes. File is replaced atomically, so either the
+    // old or the new journal survives death of the process.
+    private void rewriteJournal() {
+        closeJournal();
+        File tempFile = new File(journalFile.getPath() + TEMP_FILE_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tempFile)))) {
+            for (PendingWrite write : pending) {
+                write.writeTo(out);
+            }
+        }
+        catch (IOException e) {
+            Log.e(TAG, "rewriteJournal(): Journal can't be written.", e);
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            Log.e(TAG, "rewriteJournal(): Journal can't be replaced.", e);
+        }
+    }
+
+    // Empties the journal when all journaled writes are committed.
+    private void truncateJournal() {
+        if (journal == null && !hasJournaledWrites()) {
+            return;
+        }
+        closeJournal();
+        try {
+            new FileOutputStream(journalFile).close();
+        }
+        catch (FileNotFoundException e) {
+            Log.e(TAG, "truncateJournal(): Journal can't be opened.", e);
+        }
+        catch (IOException e) {
+            Log.e(TAG, "truncateJournal(): Journal can't be closed.", e);
+        }
+    }
+
+    // Closes the journal, the next write opens it again.
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        }
+        catch (IOException e) {
+            Log.e(TAG, "closeJournal(): Journal can't be closed.", e);
+        }
+        journal = null;
+    }
+
+    /**
+     * Write waiting in the queue.
+     */
+    private static class PendingWrite {
+        final long sequence;
+        final byte type;
+        // Id of the row, temporary id if the row isn't saved yet.
+        int id;
+        // Usage time as stored in the DB.
+        final long usageTime;
+        final String name;
+        final double doseAmount;
+        // Null if not recorded.
+        final String doseUnit;
+        // Profile of the inserted treatment, updates and deletes find the row by its id.
+        final long profileId;
+        // Number of failed commits of this write alone.
+        int attempts = 0;
+        // Callbacks of the inserts coalesced into this write, receive the new id.
+        final List<TreatmentsRepository.Callback<Integer>> insertCallbacks = new ArrayList<>(1);
+        // Callbacks of the updates and deletes coalesced into this write, receive the number of
+        // affected rows.
+        final List<TreatmentsRepository.Callback<Integer>> changeCallbacks = new ArrayList<>(1);
+
+        PendingWrite(long sequence, byte type, int id, long usageTime, String name,
+                     double doseAmount, String doseUnit, long profileId) {
+            this.sequence = sequence;
+            this.type = type;
+            this.id = id;
+            this.usageTime = usageTime;
+            this.name = name;
+            this.doseAmount = doseAmount;
+            this.doseUnit = doseUnit;
+            this.profileId = profileId;
+        }
+
+        // Adds callback of the requested write.
+        void addCallback(TreatmentsRepository.Callback<Integer> callback) {
+            if (type == INSERT) {
+                insertCallbacks.add(callback);
+            }
+            else {
+                changeCallbacks.add(callback);
+            }
+        }
+
+        // Adds callbacks of the write coalesced into this one.
+        void takeCallbacks(PendingWrite write) {
+            insertCallbacks.addAll(write.insertCallbacks);
+            changeCallbacks.addAll(write.changeCallbacks);
+        }
+
+        // Reads write from the journal.
+        static PendingWrite readFrom(DataInputStream in) throws IOException {
+            long sequence = in.readLong();
+            byte type = in.readByte();
+            int id = in.readInt();
+            long usageTime = in.readLong();
+            String name = in.readUTF();
+            double doseAmount = FeverTreatment.NO_DOSE_AMOUNT;
+            String doseUnit = null;
+            if ((type & DOSE_FLAG) != 0) {
+                doseAmount = in.readDouble();
+                doseUnit = in.readBoolean() ? in.readUTF() : null;
+            }
+            long profileId = Profile.DEFAULT_ID;
+            if ((type & PROFILE_FLAG) != 0) {
+                profileId = in.readLong();
+            }
+            return new PendingWrite(sequence, (byte) (type & ~(DOSE_FLAG | PROFILE_FLAG)), id,
+                    usageTime, name, doseAmount, doseUnit, profileId);
+        }
+
+        // Writes write into the journal.
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(sequence);
+            out.writeByte(type | DOSE_FLAG | PROFILE_FLAG);
+            out.writeInt(id);
+            out.writeLong(usageTime);
+            out.writeUTF(name);
+            out.writeDouble(doseAmount);
+            out.writeBoolean(doseUnit != null);
+            if (doseUnit != null) {
+                out.writeUTF(doseUnit);
+            }
+            out.writeLong(profileId);
+        }
+
+        // Executes write, returns new row id for inserts, number of affected rows otherwise.
+        int apply(TreatmentsDBHelper dbHelper, SQLiteDatabase db) {
+            FeverTreatment treatment = new FeverTreatment(id,
+                    TreatmentsDBHelper.fromUsageTime(usageTime), name, doseAmount, doseUnit);
+            treatment.setProfileId(profileId);
+            switch (type) {
+                case INSERT:
+                    return dbHelper.saveTreatmentIntoDB(treatment, db);
+                case UPDATE:
+                    return dbHelper.updateTreatment(db, treatment);
+                case DELETE:
+                    return dbHelper.deleteTreatment(db, treatment);
+                default:
+                    Log.e(TAG, "apply(): Unknown write type " + type);
+                    return failureResult();
+            }
+        }
+
+        // Result reported when the write isn't committed.
+        int failureResult() {
+            return type == INSERT ? -1 : 0;
+        }
+    }
+}
@@ -12,14 +12,10 @@ import androidx.recyclerview.widget.RecyclerView;
 import android.annotation.SuppressLint;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -31,9 +27,14 @@ import android.widget.Toast;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.snackbar.Snackbar;
 
-import java.util.Objects;
+import java.io.FileNotFoundException;
+import java.util.List;
 
-import au.id.fedorgabrus.feverlog.DAO.TreatmentsDBHelper;
+import au.id.fedorgabrus.feverlog.DAO.HistoryPager;
+import au.id.fedorgabrus.feverlog.DAO.HistoryRange;
+import au.id.fedorgabrus.feverlog.DAO.HistoryTransfer;
+import au.id.fedorgabrus.feverlog.DAO.TreatmentsRepository;
+import au.id.fedorgabrus.feverlog.models.AppSettings;
 import au.id.fedorgabrus.feverlog.models.FeverTreatment;
 import au.id.fedorgabrus.feverlog.models.HistoryRecyclerViewAdapter;
 import au.id.fedorgabrus.feverlog.models.TreatmentData;
@@ -44,13 +45,30 @@ public class HistoryActivity extends AppCompatActivity {
     private static final int ADD_CUSTOM_TREATMENT_REQUEST = 1;
     // Request code to edit treatment.
     private static final int EDIT_TREATMENT_REQUEST = 2;
-
-    private TreatmentsDBHelper dbHelper = null;
-    private static SQLiteDatabase db = null;
+    // Request code to pick the file to export into.
+    private static final int EXPORT_HISTORY_REQUEST = 3;
+    // Request code to pick the file to import.
+    private static final int IMPORT_HISTORY_REQUEST = 4;
+    private static final String CSV_MIME_TYPE = "text/csv";
+    // Next page is loaded when a visible row is this close to an end of the loaded rows.
+    private static final int PREFETCH_DISTANCE = 20;
+    // Maximum number of the loaded rows. Rows farthest from the visible ones are dropped and
+    // loaded again when they are scrolled back to.
+    private static final int MAX_LOADED_ROWS = 5 * HistoryPager.PAGE_SIZE;
+
+    private TreatmentsRepository repository = null;
     private TextView noHistoryTextView;
     private RecyclerView allHistoryRecyclerView;
+    private HistoryRecyclerViewAdapter historyAdapter;
     private MenuItem clearHistoryMenuItem;
+    private MenuItem exportHistoryMenuItem;
     private FloatingActionButton clearFloatingActionButton;
+    // Number of the latest history query. Results of older queries are dropped.
+    private int queryGeneration = 0;
+    // False if the loaded rows reach the oldest treatment.
+    private boolean hasOlderRows = true;
+    // True while a page of the history is loaded or the loaded rows are replaced.
+    private boolean pageLoading = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -58,24 +76,35 @@ public class HistoryActivity extends AppCompatActivity {
         setContentView(R.layout.activity_history);
 
         // Connects to the DB.
-        dbHelper = new TreatmentsDBHelper(this);
-        new ConnectToDB().execute(dbHelper);
+        repository = TreatmentsRepository.acquire(this);
 
         noHistoryTextView = findViewById(R.id.noHistoryTextView);
         allHistoryRecyclerView = findViewById(R.id.allHistoryRecyclerView);
         clearFloatingActionButton = findViewById(R.id.clearFloatingActionButton);
-        updateUI();
 
-        // Sets up recycler view.
-        allHistoryRecyclerView.setLayoutManager(new LinearLayoutManager(this));
-        allHistoryRecyclerView.setAdapter(new HistoryRecyclerViewAdapter(
-                TreatmentData.getInstance().getTreatmentHistory(),
-                true
-        ));
+        // Sets up recycler view. Pages of the history are loaded while scrolling.
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        allHistoryRecyclerView.setLayoutManager(layoutManager);
+        historyAdapter = new HistoryRecyclerViewAdapter(this);
+        allHistoryRecyclerView.setAdapter(historyAdapter);
         allHistoryRecyclerView.addItemDecoration(new DividerItemDecoration(
                 allHistoryRecyclerView.getContext(),
                 DividerItemDecoration.VERTICAL
         ));
+        allHistoryRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition()
+                        >= historyAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadOlderPage();
+                }
+                else if (layoutManager.findFirstVisibleItemPosition() < PREFETCH_DISTANCE) {
+                    loadNewerPage();
+                }
+            }
+        });
+        updateUI();
+        requeryHistory();
 
         // Handles floating clear button click.
         clearFloatingActionButton.setOnClickListener(new View.OnClickListener() {
@@ -92,21 +121,18 @@ public class HistoryActivity extends AppCompatActivity {
 
     @Override
     protected void onDestroy() {
-        // Closes DB.
-        if (dbHelper != null) {
-            dbHelper.close();
+        // Releases the shared DB, it is closed after pending writes if no screen uses it.
+        if (repository != null) {
+            repository.release();
         }
         super.onDestroy();
     }
 
     @Override
-    protected void onPause() {
-        // Saves deletion if transaction isn't finalized.
-        if (db.inTransaction()) {
-            db.setTransactionSuccessful();
-            db.endTransaction();
-        }
-        super.onPause();
+    protected void onResume() {
+        super.onResume();
+        // Clock format could be changed while the activity wasn't visible.
+        historyAdapter.refresh();
     }
 
     @Override
@@ -114,6 +140,7 @@ public class HistoryActivity extends AppCompatActivity {
         MenuInflater menuInflater = getMenuInflater();
         menuInflater.inflate(R.menu.history_menu, menu);
         clearHistoryMenuItem = menu.findItem(R.id.clearHistoryMenuItem);
+        exportHistoryMenuItem = menu.findItem(R.id.exportHistoryMenuItem);
         return super.onCreateOptionsMenu(menu);
     }
 
@@ -128,14 +155,23 @@ public class HistoryActivity extends AppCompatActivity {
             case R.id.addTreatmentHistoryMenuItem:
                 addCustomTreatment();
                 break;
+            // Case export history.
+            case R.id.exportHistoryMenuItem:
+                pickExportFile();
+                break;
+            // Case import history.
+            case R.id.importHistoryMenuItem:
+                pickImportFile();
+                break;
         }
         return super.onOptionsItemSelected(item);
     }
 
     @Override
     public boolean onMenuOpened(int featureId, Menu menu) {
-        // Disables clear history menu item if no data in the model.
-        clearHistoryMenuItem.setEnabled(TreatmentData.getInstance().getDataSize() > 0);
+        // Disables clear and export menu items if no history is shown.
+        clearHistoryMenuItem.setEnabled(historyAdapter.getItemCount() > 0);
+        exportHistoryMenuItem.setEnabled(historyAdapter.getItemCount() > 0);
         return super.onMenuOpened(featureId, menu);
     }
 
@@ -151,19 +187,25 @@ public class HistoryActivity extends AppCompatActivity {
                             .getSerializableExtra(CustomTreatmentActivity.TREATMENT_INTENT_EXTRA_HEADER);
                     // Saves new treatment into the model and DB.
                     try {
-                        int treatmentID = dbHelper.saveTreatmentIntoDB(
-                                TreatmentData.getInstance().addCustomTreatment(newTreatment),
-                                db
-                        );
-                        // Updates treatment's ID.
-                        if (treatmentID == -1) {
-                            Log.e(TAG, "New treatment wasn't saved to the DB.");
-                        }
-                        newTreatment.setId(treatmentID);
+                        final FeverTreatment treatment =
+                                TreatmentData.getInstance().addCustomTreatment(newTreatment);
+                        int temporaryId = repository.saveTreatment(treatment,
+                                new TreatmentsRepository.Callback<Integer>() {
+                            @Override
+                            public void onComplete(Integer treatmentID) {
+                                // Updates treatment's ID.
+                                if (treatmentID == -1) {
+                                    Log.e(TAG, "New treatment wasn't saved to the DB.");
+                                }
+                                TreatmentData.getInstance(treatment.getProfileId())
+                                        .updateTreatmentId(treatment, treatmentID);
+                                requeryHistory();
+                            }
+                        });
+                        // Treatment can be edited or deleted before it's saved.
+                        TreatmentData.getInstance(treatment.getProfileId())
+                                .updateTreatmentId(treatment, temporaryId);
 
-                        Objects.requireNonNull(allHistoryRecyclerView.getAdapter())
-                                .notifyDataSetChanged();
-                        updateUI();
                         Toast.makeText(this, R.string.new_treatment_created, Toast.LENGTH_SHORT)
                                 .show();
                     }
@@ -180,25 +222,199 @@ public class HistoryActivity extends AppCompatActivity {
                         Log.e(TAG, "onActivityResult EDIT_TREATMENT_REQUEST has no attached data");
                         return;
                     }
-                    int treatmentIndex = data.getIntExtra(CustomTreatmentActivity.TREATMENT_INDEX_EXTRA_HEADER, -1);
-                    if (treatmentIndex < 0 || treatmentIndex >= TreatmentData.getInstance().getDataSize()) {
-                        Log.e(TAG, "onActivityResult EDIT_TREATMENT_REQUEST: Returned index is out of boundaries");
+                    FeverTreatment originalTreatment = (FeverTreatment) data.getSerializableExtra(
+                            CustomTreatmentActivity.ORIGINAL_TREATMENT_INTENT_EXTRA_HEADER);
+                    FeverTreatment treatment = (FeverTreatment) data
+                            .getSerializableExtra(CustomTreatmentActivity.TREATMENT_INTENT_EXTRA_HEADER);
+                    if (originalTreatment == null || treatment == null) {
+                        Log.e(TAG, "onActivityResult EDIT_TREATMENT_REQUEST: No edited treatment in the result");
                         return;
                     }
-                    // Updates DB.
-                    FeverTreatment treatment = TreatmentData.getInstance().getTreatment(treatmentIndex);
                     if (treatment.getId() == FeverTreatment.DEFAULT_ID) {
                         Log.e(TAG, "onActivityResult EDIT_TREATMENT_REQUEST: Treatment object has no ID. Can't update DB");
                         return;
                     }
-                    if (dbHelper.updateTreatment(db, treatment) != 1) {
-                        Log.e(TAG, "onActivityResult EDIT_TREATMENT_REQUEST: Update DB - error");
+                    // Moves edited treatment to its new place in the data model, or removes it if it
+                    // moved to the part of the history that isn't loaded.
+                    TreatmentData.getInstance().replaceTreatment(originalTreatment, treatment);
+                    // Updates DB and UI.
+                    repository.updateTreatment(treatment, new TreatmentsRepository.Callback<Integer>() {
+                        @Override
+                        public void onComplete(Integer rowsUpdated) {
+                            if (rowsUpdated != 1) {
+                                Log.e(TAG, "onActivityResult EDIT_TREATMENT_REQUEST: Update DB - error");
+                            }
+                            requeryHistory();
+                        }
+                    });
+                }
+                break;
+
+            // Case file to export into was picked.
+            case EXPORT_HISTORY_REQUEST:
+                if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                    exportHistory(data.getData());
+                }
+                break;
+
+            // Case file to import was picked.
+            case IMPORT_HISTORY_REQUEST:
+                if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                    importHistory(data.getData());
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reloads the loaded rows from the DB and replaces the shown rows when it's ready. Should be
+     * called after every write, the loaded rows don't see later changes. Only the rows between the
+     * first and the last loaded treatment are read again, however far the history was scrolled.
+     */
+    private void requeryHistory() {
+        int count = historyAdapter.getItemCount();
+        if (count == 0) {
+            queryHistory(null, null, HistoryPager.PAGE_SIZE);
+            return;
+        }
+        // Rows at an end of the history also show treatments added beyond it.
+        queryHistory(historyAdapter.getRowOffset() > 0 ? historyAdapter.getTreatment(0) : null,
+                hasOlderRows ? historyAdapter.getTreatment(count - 1) : null, MAX_LOADED_ROWS);
+    }
+
+    /**
+     * Loads treatments between the provided ones and replaces the shown rows with them.
+     *
+     * @param first first treatment to load, null to start from the newest treatment.
+     * @param last last treatment to load, null to continue to the oldest treatment.
+     * @param limit maximum number of treatments to load.
+     */
+    private void queryHistory(final FeverTreatment first, FeverTreatment last, int limit) {
+        final int generation = ++queryGeneration;
+        final long profileId = AppSettings.getActiveProfileId();
+        pageLoading = true;
+        repository.loadHistoryRange(profileId, first, last, limit,
+                new TreatmentsRepository.Callback<HistoryRange>() {
+            @Override
+            public void onComplete(final HistoryRange range) {
+                // Result of a newer query will be shown instead.
+                if (generation != queryGeneration || isDestroyed()) {
+                    return;
+                }
+                if (range == null) {
+                    pageLoading = false;
+                    Log.e(TAG, "queryHistory(): History wasn't loaded. DB error");
+                    return;
+                }
+                // All loaded treatments were deleted, starts from the newest treatment again.
+                if (range.getTreatments().isEmpty() && first != null) {
+                    queryHistory(null, null, HistoryPager.PAGE_SIZE);
+                    return;
+                }
+                historyAdapter.swapRows(profileId, range.getOffset(), range.getTreatments(),
+                        new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != queryGeneration || isDestroyed()) {
+                            return;
+                        }
+                        pageLoading = false;
+                        hasOlderRows = range.hasOlder();
+                        updateUI();
                     }
-                    // Updates UI.
-                    TreatmentData.getInstance().sortHistoryByDate();
-                    Objects.requireNonNull(allHistoryRecyclerView.getAdapter()).notifyDataSetChanged();
+                });
+            }
+        });
+    }
+
+    /**
+     * Loads the page of the history after the loaded rows and adds it to the shown rows, unless a
+     * page is already being loaded or the oldest treatment is loaded. Drops the first rows if too
+     * many rows are loaded.
+     */
+    private void loadOlderPage() {
+        if (pageLoading || !hasOlderRows) {
+            return;
+        }
+        pageLoading = true;
+        final int generation = queryGeneration;
+        int count = historyAdapter.getItemCount();
+        repository.loadHistoryPageAfter(AppSettings.getActiveProfileId(),
+                count > 0 ? historyAdapter.getTreatment(count - 1) : null,
+                new TreatmentsRepository.Callback<List<FeverTreatment>>() {
+            @Override
+            public void onComplete(final List<FeverTreatment> page) {
+                // Newer query replaces the shown rows.
+                if (generation != queryGeneration || isDestroyed()) {
+                    return;
+                }
+                if (page == null) {
+                    pageLoading = false;
+                    Log.e(TAG, "loadOlderPage(): Page wasn't loaded. DB error");
+                    return;
                 }
+                historyAdapter.appendRows(page, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != queryGeneration || isDestroyed()) {
+                            return;
+                        }
+                        pageLoading = false;
+                        hasOlderRows = page.size() == HistoryPager.PAGE_SIZE;
+                        int extraRows = historyAdapter.getItemCount() - MAX_LOADED_ROWS;
+                        if (extraRows > 0) {
+                            historyAdapter.dropFirstRows(extraRows);
+                        }
+                        updateUI();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Loads the page of the history before the loaded rows, if the first rows were dropped, and
+     * adds it to the shown rows. Drops the last rows if too many rows are loaded.
+     */
+    private void loadNewerPage() {
+        if (pageLoading || historyAdapter.getRowOffset() == 0
+                || historyAdapter.getItemCount() == 0) {
+            return;
         }
+        pageLoading = true;
+        final int generation = queryGeneration;
+        repository.loadHistoryPageBefore(AppSettings.getActiveProfileId(),
+                historyAdapter.getTreatment(0),
+                new TreatmentsRepository.Callback<List<FeverTreatment>>() {
+            @Override
+            public void onComplete(List<FeverTreatment> page) {
+                if (generation != queryGeneration || isDestroyed()) {
+                    return;
+                }
+                if (page == null) {
+                    pageLoading = false;
+                    Log.e(TAG, "loadNewerPage(): Page wasn't loaded. DB error");
+                    return;
+                }
+                // Short page reaches the newest treatment.
+                int offset = page.size() < HistoryPager.PAGE_SIZE
+                        ? 0 : Math.max(0, historyAdapter.getRowOffset() - page.size());
+                historyAdapter.prependRows(page, offset, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != queryGeneration || isDestroyed()) {
+                            return;
+                        }
+                        pageLoading = false;
+                        int extraRows = historyAdapter.getItemCount() - MAX_LOADED_ROWS;
+                        if (extraRows > 0) {
+                            historyAdapter.dropLastRows(extraRows);
+                            hasOlderRows = true;
+                        }
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -223,9 +439,17 @@ public class HistoryActivity extends AppCompatActivity {
                         new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        dbHelper.clearHistoryDB(db);
-                        Objects.requireNonNull(allHistoryRecyclerView.getAdapter()).notifyDataSetChanged();
-                        updateUI();
+                        TreatmentData.getInstance().clearHistory();
+                        repository.clearHistory(AppSettings.getActiveProfileId(),
+                                new TreatmentsRepository.Callback<Boolean>() {
+                            @Override
+                            public void onComplete(Boolean cleared) {
+                                if (!cleared) {
+                                    Log.e(TAG, "clearHistory(): History wasn't cleared. DB error");
+                                }
+                                requeryHistory();
+                            }
+                        });
                     }
                 })
                 .setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
@@ -239,11 +463,124 @@ public class HistoryActivity extends AppCompatActivity {
     }
 
     /**
-     * Updates UI by hiding elements if no data in the data model and vise versa.
+     * Asks user for the file to export the history into.
+     */
+    private void pickExportFile() {
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(CSV_MIME_TYPE);
+        intent.putExtra(Intent.EXTRA_TITLE, getString(R.string.export_file_name));
+        startActivityForResult(intent, EXPORT_HISTORY_REQUEST);
+    }
+
+    /**
+     * Asks user for the file to import the history from.
+     */
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        // Some providers report CSV files as plain text.
+        intent.setType("text/*");
+        startActivityForResult(intent, IMPORT_HISTORY_REQUEST);
+    }
+
+    /**
+     * Exports history of the active profile into the file and shows progress until it completes.
+     *
+     * @param uri file picked by user.
+     */
+    private void exportHistory(Uri uri) {
+        // Truncates the file if user picked an existing one.
+        ParcelFileDescriptor file = openFile(uri, "wt");
+        if (file == null) {
+            return;
+        }
+        final TransferProgress transferProgress =
+                new TransferProgress(R.string.export_dialog_title);
+        transferProgress.start(repository.exportHistory(AppSettings.getActiveProfileId(), file,
+                transferProgress, new TreatmentsRepository.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer rows) {
+                transferProgress.finish(rows, R.string.export_completed);
+            }
+        }));
+    }
+
+    /**
+     * Imports history from the file into the active profile and shows progress until it
+     * completes. The data model is loaded again once at the end.
+     *
+     * @param uri file picked by user.
+     */
+    private void importHistory(Uri uri) {
+        ParcelFileDescriptor file = openFile(uri, "r");
+        if (file == null) {
+            return;
+        }
+        final long profileId = AppSettings.getActiveProfileId();
+        final TransferProgress transferProgress =
+                new TransferProgress(R.string.import_dialog_title);
+        transferProgress.start(repository.importHistory(profileId, file, transferProgress,
+                new TreatmentsRepository.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer rows) {
+                transferProgress.finish(rows, R.string.import_completed);
+                reloadHistory(profileId);
+            }
+        }));
+    }
+
+    /**
+     * Loads recent history of the profile into its data model again and requeries the shown
+     * history.
+     *
+     * @param profileId id of the profile.
+     */
+    private void reloadHistory(final long profileId) {
+        repository.loadRecentHistory(profileId,
+                new TreatmentsRepository.Callback<List<FeverTreatment>>() {
+            @Override
+            public void onComplete(List<FeverTreatment> history) {
+                if (history == null) {
+                    Log.e(TAG, "reloadHistory(): History wasn't loaded. DB error");
+                    return;
+                }
+                TreatmentData model = TreatmentData.getInstance(profileId);
+                model.loadFromHistory(history);
+                model.setHasOlderHistory(HistoryPager.getInstance(profileId).hasMorePages());
+            }
+        });
+        requeryHistory();
+    }
+
+    /**
+     * Opens file picked by user.
+     *
+     * @param uri file picked by user.
+     * @param mode file access mode.
+     * @return file descriptor, or null if the file can't be opened.
+     */
+    @Nullable
+    private ParcelFileDescriptor openFile(Uri uri, String mode) {
+        try {
+            ParcelFileDescriptor file = getContentResolver().openFileDescriptor(uri, mode);
+            if (file != null) {
+                return file;
+            }
+        }
+        catch (FileNotFoundException e) {
+            Log.e(TAG, "openFile(): File can't be opened.", e);
+        }
+        Toast.makeText(this, R.string.transfer_failed, Toast.LENGTH_SHORT).show();
+        return null;
+    }
+
+    /**
+     * Updates UI by hiding elements if no history is shown and vise versa.
      */
     @SuppressLint("RestrictedApi")
     private void updateUI() {
-        if (TreatmentData.getInstance().getDataSize() > 0) {
+        if (historyAdapter.getItemCount() > 0) {
             noHistoryTextView.setVisibility(View.GONE);
             allHistoryRecyclerView.setVisibility(View.VISIBLE);
             clearFloatingActionButton.setEnabled(true);
@@ -257,98 +594,140 @@ public class HistoryActivity extends AppCompatActivity {
         }
     }
 
-    /**
-     * Connects to the database.
-     */
-    private static class ConnectToDB extends AsyncTask<SQLiteOpenHelper, Void, SQLiteDatabase> {
-
-        @Override
-        protected SQLiteDatabase doInBackground(SQLiteOpenHelper... sqLiteOpenHelpers) {
-            if ((sqLiteOpenHelpers.length == 0) || (sqLiteOpenHelpers[0] == null)) {
-                return null;
-            }
-            return sqLiteOpenHelpers[0].getWritableDatabase();
-        }
-
-        @Override
-        protected void onPostExecute(SQLiteDatabase sqLiteDatabase) {
-            db = sqLiteDatabase;
-            super.onPostExecute(sqLiteDatabase);
-        }
-    }
-
     /**
      * Starts a new activity to edit selected treatment.
      *
-     * @param treatmentIndex index of the treatment in the data model.
-     * @throws IllegalArgumentException if index value is less than 0.
+     * @param position position of the treatment in the list.
+     * @throws IllegalArgumentException if position is out of boundaries.
      */
-    private void editTreatment(int treatmentIndex) throws IllegalArgumentException {
-        if (treatmentIndex < 0) {
+    private void editTreatment(int position) throws IllegalArgumentException {
+        if (position < 0 || position >= historyAdapter.getItemCount()) {
             throw new IllegalArgumentException();
         }
         Intent intent = new Intent(this, CustomTreatmentActivity.class);
         // Flags new activity for editing purpose.
         intent.putExtra(CustomTreatmentActivity.PURPOSE_INTENT_EXTRA_HEADER, CustomTreatmentActivity.EDIT);
-        intent.putExtra(CustomTreatmentActivity.TREATMENT_INDEX_EXTRA_HEADER, treatmentIndex);
+        intent.putExtra(CustomTreatmentActivity.TREATMENT_INTENT_EXTRA_HEADER,
+                historyAdapter.getTreatment(position));
         startActivityForResult(intent, EDIT_TREATMENT_REQUEST);
     }
 
     /**
      * Deletes specified treatment from the data model and DB.
-     * <p>Shows snackbar that allows to undo deletion</p>
+     * <p>Shows snackbar that allows to undo deletion, undone treatment is saved again.</p>
      *
-     * @param treatmentIndex index of the treatment in the data model to delete.
-     * @throws IllegalArgumentException if index value is out of boundaries.
+     * @param position position of the treatment in the list.
+     * @throws IllegalArgumentException if position is out of boundaries.
      */
-    private void deleteTreatment(int treatmentIndex) throws IllegalArgumentException {
-        if (treatmentIndex < 0 || treatmentIndex >= TreatmentData.getInstance().getDataSize()) {
+    private void deleteTreatment(int position) throws IllegalArgumentException {
+        if (position < 0 || position >= historyAdapter.getItemCount()) {
             throw new IllegalArgumentException();
         }
-        final FeverTreatment treatment = TreatmentData.getInstance().getTreatment(treatmentIndex);
+        final FeverTreatment treatment = historyAdapter.getTreatment(position);
         if (treatment.getId() == FeverTreatment.DEFAULT_ID) {
             Log.e(TAG, "deleteTreatment(): Treatment has no ID, can't delete from the DB");
+            // Removes swipe decorations.
+            historyAdapter.notifyItemChanged(position);
+            return;
         }
-        // Deletes data from the data model.
+        // Deletes data from the data model and DB. Writes are batched, so undo only saves the
+        // treatment again.
         TreatmentData.getInstance().deleteTreatment(treatment);
-        // Deletes data from the DB.
-        db.beginTransaction();
-        if (dbHelper.deleteTreatment(db, treatment) != 1) {
-            Log.e(TAG, "deleteTreatment(): Deletion failed. DB error");
-        }
-        allHistoryRecyclerView.getAdapter().notifyDataSetChanged();
+        // Row is hidden until the history is loaded again after the deletion.
+        historyAdapter.removeRow(position);
+        updateUI();
+        repository.deleteTreatment(treatment, new TreatmentsRepository.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer rowsDeleted) {
+                if (rowsDeleted != 1) {
+                    Log.e(TAG, "deleteTreatment(): Deletion failed. DB error");
+                }
+                requeryHistory();
+            }
+        });
 
-        // Transaction finishes when snackbar disappears.
         // Snackbar.
         final Snackbar snackbar = Snackbar.make(allHistoryRecyclerView, R.string.deleted, Snackbar.LENGTH_LONG);
         // Undo deletion.
         snackbar.setAction(R.string.undo, new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (db.inTransaction()) {
-                    db.endTransaction();
-                }
-                else {
-                    Log.e(TAG, "deleteTreatment() Snackbar onClick: Current thread should" +
-                            " have pending transaction, but it have not.");
-                }
-                TreatmentData.getInstance().addCustomTreatment(treatment);
-                allHistoryRecyclerView.getAdapter().notifyDataSetChanged();
+                final FeverTreatment restored = TreatmentData.getInstance().addCustomTreatment(
+                        new FeverTreatment(FeverTreatment.DEFAULT_ID, treatment.getTreatmentTime(),
+                                treatment.getTreatmentName(), treatment.getDoseAmount(),
+                                treatment.getDoseUnit()));
+                int temporaryId = repository.saveTreatment(restored,
+                        new TreatmentsRepository.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer treatmentID) {
+                        if (treatmentID == -1) {
+                            Log.e(TAG, "deleteTreatment() Snackbar onClick: Treatment wasn't restored.");
+                        }
+                        TreatmentData.getInstance(restored.getProfileId())
+                                .updateTreatmentId(restored, treatmentID);
+                        requeryHistory();
+                    }
+                });
+                TreatmentData.getInstance(restored.getProfileId())
+                        .updateTreatmentId(restored, temporaryId);
             }
         });
-        snackbar.addCallback(new Snackbar.Callback() {
+        snackbar.show();
+    }
 
-            @Override
-            public void onDismissed(Snackbar transientBottomBar, int event) {
-                super.onDismissed(transientBottomBar, event);
-                // Commits changes if they weren't cancelled.
-                if (db.inTransaction()) {
-                    db.setTransactionSuccessful();
-                    db.endTransaction();
-                }
+    /**
+     * Shows number of transferred rows in a dialog that allows to cancel the transfer.
+     */
+    private class TransferProgress implements TreatmentsRepository.Callback<Integer> {
+        private final AlertDialog dialog;
+        private HistoryTransfer transfer = null;
+
+        TransferProgress(int titleId) {
+            dialog = new AlertDialog.Builder(HistoryActivity.this)
+                    .setTitle(titleId)
+                    .setMessage(getString(R.string.transfer_progress, 0))
+                    .setCancelable(false)
+                    .setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            transfer.cancel();
+                        }
+                    })
+                    .create();
+        }
+
+        // Shows the dialog for the started transfer.
+        void start(HistoryTransfer transfer) {
+            this.transfer = transfer;
+            dialog.show();
+        }
+
+        // Receives number of rows transferred so far.
+        @Override
+        public void onComplete(Integer rows) {
+            if (!isDestroyed()) {
+                dialog.setMessage(getString(R.string.transfer_progress, rows));
             }
-        });
-        snackbar.show();
+        }
+
+        // Hides the dialog and shows result of the transfer.
+        void finish(int rows, int completedMessageId) {
+            if (isDestroyed()) {
+                return;
+            }
+            dialog.dismiss();
+            String message;
+            if (rows == -1) {
+                message = getString(R.string.transfer_failed);
+            }
+            else if (transfer.isCancelled()) {
+                message = getString(R.string.transfer_cancelled, rows);
+            }
+            else {
+                message = getString(completedMessageId, rows);
+            }
+            Toast.makeText(HistoryActivity.this, message, Toast.LENGTH_SHORT).show();
+        }
     }
 
     /**
@@ -361,8 +740,9 @@ public class HistoryActivity extends AppCompatActivity {
             super(0, ItemTouchHelper.LEFT | ItemTouchHelper.RIGHT);
         }
 
-        // Paint object to decorate swipe actions.
-        private final Paint paint = new Paint();
+        // Draws decorations of the swipe actions.
+        private final SwipeDecorationRenderer renderer =
+                new SwipeDecorationRenderer(HistoryActivity.this);
 
         @Override
         public boolean onMove(@NonNull RecyclerView recyclerView,
@@ -380,67 +760,7 @@ public class HistoryActivity extends AppCompatActivity {
 
             // Draws background, icon and text under the swiped items.
             if (actionState == ItemTouchHelper.ACTION_STATE_SWIPE) {
-                final View v = viewHolder.itemView;
-                final int textSize = 42;
-                final int xPadding = 32;
-                final int xMargin = 16;
-
-                // On swipe to right (EDIT).
-                if (dX > 0) {
-                    // Sets background.
-                    paint.setColor(Color.argb(250, 255, 140, 0));
-                    c.drawRect(v.getLeft(), v.getTop(), v.getRight(), v.getBottom(), paint);
-
-                    // Sets Icon.
-                    Drawable drawable = getDrawable(R.drawable.ic_edit_white_24dp);
-                    assert drawable != null;
-                    int drawableLeft = v.getLeft() + xPadding;
-                    int drawableRight = drawableLeft + drawable.getIntrinsicWidth();
-                    int drawableBottom = v.getBottom() - v.getHeight() / 2 + drawable.getIntrinsicHeight() / 2;
-                    int drawableTop = drawableBottom - drawable.getIntrinsicHeight();
-                    drawable.setBounds(drawableLeft, drawableTop, drawableRight, drawableBottom);
-                    drawable.draw(c);
-
-                    // Sets text.
-                    paint.setStyle(Paint.Style.FILL);
-                    paint.setColor(Color.WHITE);
-                    paint.setTextSize(textSize);
-                    c.drawText(
-                            getString(R.string.edit),
-                            xPadding + drawable.getIntrinsicWidth() + xMargin,
-                            v.getBottom() - v.getHeight() / 2f + textSize / 2f,
-                            paint
-                    );
-                }
-                // On swipe to left (DELETE).
-                else {
-                    // Sets background.
-                    paint.setColor(Color.argb(250, 235, 64, 52));
-                    c.drawRect(v.getLeft(), v.getTop(), v.getRight(), v.getBottom(), paint);
-
-                    // Sets Icon.
-                    Drawable drawable = getDrawable(R.drawable.ic_delete_white_24dp);
-                    assert drawable != null;
-                    int drawableRight = v.getRight() - xPadding;
-                    int drawableLeft = drawableRight - drawable.getIntrinsicWidth();
-                    int drawableBottom = v.getBottom() - v.getHeight() / 2 + drawable.getIntrinsicHeight() / 2;
-                    int drawableTop = drawableBottom - drawable.getIntrinsicHeight();
-                    drawable.setBounds(drawableLeft, drawableTop, drawableRight, drawableBottom);
-                    drawable.draw(c);
-
-                    // Sets text.
-                    paint.setStyle(Paint.Style.FILL);
-                    paint.setColor(Color.WHITE);
-                    paint.setTextSize(textSize);
-
-                    c.drawText(
-                            getString(R.string.delete),
-                            (v.getRight() - xPadding - drawable.getIntrinsicWidth() - xMargin
-                                    - paint.measureText(getString(R.string.delete))),
-                            v.getBottom() - v.getHeight() / 2f + textSize / 2f,
-                            paint
-                    );
-                }
+                renderer.draw(c, viewHolder.itemView, dX);
             }
         }
 
@@ -452,6 +772,8 @@ public class HistoryActivity extends AppCompatActivity {
                 // Edition.
                 case ItemTouchHelper.RIGHT:
                     editTreatment(rowIndex);
+                    // Removes swipe decorations.
+                    historyAdapter.notifyItemChanged(rowIndex);
                     break;
 
                 // Deletion.
@@ -459,8 +781,6 @@ public class HistoryActivity extends AppCompatActivity {
                     deleteTreatment(rowIndex);
                     break;
             }
-            // Removes swipe decorations.
-            Objects.requireNonNull(allHistoryRecyclerView.getAdapter()).notifyItemChanged(rowIndex);
         }
     }
 }
@@ -4,6 +4,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -12,10 +13,8 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
-import android.os.CountDownTimer;
+import android.os.Handler;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.Menu;
@@ -23,6 +22,7 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -30,12 +30,21 @@ import android.widget.Toast;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Objects;
 
-import au.id.fedorgabrus.feverlog.DAO.TreatmentsDBHelper;
+import au.id.fedorgabrus.feverlog.DAO.HistoryPager;
+import au.id.fedorgabrus.feverlog.DAO.TreatmentsRepository;
+import au.id.fedorgabrus.feverlog.metrics.LatencyHistogram;
+import au.id.fedorgabrus.feverlog.metrics.Metrics;
 import au.id.fedorgabrus.feverlog.models.AppSettings;
 import au.id.fedorgabrus.feverlog.models.FeverTreatment;
 import au.id.fedorgabrus.feverlog.models.HistoryRecyclerViewAdapter;
+import au.id.fedorgabrus.feverlog.models.MedicationRule;
+import au.id.fedorgabrus.feverlog.models.Profile;
+import au.id.fedorgabrus.feverlog.models.SettingsStore;
+import au.id.fedorgabrus.feverlog.models.SharedPreferencesStore;
 import au.id.fedorgabrus.feverlog.models.TreatmentData;
 
 public class MainActivity extends AppCompatActivity {
@@ -44,37 +53,76 @@ public class MainActivity extends AppCompatActivity {
     private static final int SET_SETTINGS_REQUEST = 1;
     // Request code for add custom treatment activity.
     private static final int ADD_CUSTOM_TREATMENT_REQUEST = 2;
-
-    private TreatmentsDBHelper dbHelper = null;
-    private SQLiteDatabase db = null;
-    private NextTreatmentTimer timer = null;
+    // Startup phases, see Metrics.
+    private static final LatencyHistogram CONTENT_VIEW_LATENCY =
+            Metrics.histogram("startup.setContentView");
+    private static final LatencyHistogram ACQUIRE_REPOSITORY_LATENCY =
+            Metrics.histogram("startup.acquireRepository");
+    private static final LatencyHistogram LOAD_SETTINGS_LATENCY =
+            Metrics.histogram("startup.loadSettings");
+    private static final LatencyHistogram SET_UP_VIEWS_LATENCY =
+            Metrics.histogram("startup.setUpViews");
+    private static final LatencyHistogram ON_CREATE_LATENCY =
+            Metrics.histogram("startup.onCreate");
+    private static final LatencyHistogram SNAPSHOT_SHOWN_LATENCY =
+            Metrics.histogram("startup.snapshotShown");
+    private static final LatencyHistogram HISTORY_LOADED_LATENCY =
+            Metrics.histogram("startup.historyLoaded");
+
+    private TreatmentsRepository repository = null;
+    // False until the history is loaded from the DB.
+    private boolean historyLoaded = false;
+    // Time onCreate() started at, 0 once the history of the first start is shown.
+    private long startupNanos = 0;
+    // Shows countdown till the next treatment.
+    private CountdownRenderer countdown;
+    // Updates UI when the oldest treatment leaves the past 24 hours.
+    private final Handler dailyUsageHandler = new Handler();
+    private final Runnable dailyUsageUpdater = new Runnable() {
+        @Override
+        public void run() {
+            updateDailyUsageTitle();
+            updateHistoryCardUI();
+            historyAdapter.refresh();
+            scheduleDailyUsageUpdate();
+        }
+    };
     private TextView thisDayLimitTextView;
     private ProgressBar progressBar;
     private TextView progressTextView;
     private RecyclerView thisDayTreatmentsRecyclerView;
+    private HistoryRecyclerViewAdapter historyAdapter;
     private Button viewHistoryButton;
     private TextView noDataTextView;
     private MenuItem historyMenuItem;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        startupNanos = System.nanoTime();
         super.onCreate(savedInstanceState);
+        long phaseStart = System.nanoTime();
         setContentView(R.layout.activity_main);
+        CONTENT_VIEW_LATENCY.recordSince(phaseStart);
 
-        // Configures DB connection.
-        dbHelper = new TreatmentsDBHelper(this);
-        db = dbHelper.getWritableDatabase();
-        TreatmentData.getInstance().loadFromHistory(dbHelper.loadHistoryFromDB(db));
+        phaseStart = System.nanoTime();
+        repository = TreatmentsRepository.acquire(this);
+        ACQUIRE_REPOSITORY_LATENCY.recordSince(phaseStart);
 
-        // Gets settings from the shared preferences.
-        SharedPreferences treatmentSettings = this.getSharedPreferences(
+        phaseStart = System.nanoTime();
+        // Gets active profile and its settings from the shared preferences.
+        AppSettings.loadActiveProfile(new SharedPreferencesStore(this.getSharedPreferences(
                 AppSettings.SETTINGS_FILE_KEY, Context.MODE_PRIVATE
-        );
+        )));
+        SettingsStore treatmentSettings = new SharedPreferencesStore(this.getSharedPreferences(
+                AppSettings.getSettingsFileKey(), Context.MODE_PRIVATE
+        ));
         // Opens settings activity if no settings in the treatmentSettings.
         if (!AppSettings.loadSettings(treatmentSettings)) {
             openSettingsActivity();
         }
+        LOAD_SETTINGS_LATENCY.recordSince(phaseStart);
 
+        phaseStart = System.nanoTime();
         // Gets UI.
         progressBar = findViewById(R.id.progressBar);
         progressTextView = findViewById(R.id.progressTextView);
@@ -86,14 +134,25 @@ public class MainActivity extends AppCompatActivity {
         final FloatingActionButton addNewFloatingActionButton =
                 findViewById(R.id.addNewfloatingActionButton);
         setUpProgressBar();
+        countdown = new CountdownRenderer(progressBar, progressTextView, new Runnable() {
+            @Override
+            public void run() {
+                // Update UI.
+                progressBar.setProgress(0);
+                progressTextView.setText(getString(R.string.progress_text_view));
+                updateDailyUsageTitle();
+            }
+        });
         // Sets up recycler view.
-        thisDayTreatmentsRecyclerView.setAdapter(new HistoryRecyclerViewAdapter(
-                TreatmentData.getInstance().getTreatmentHistory(), false));
+        historyAdapter = new HistoryRecyclerViewAdapter(this, false);
+        thisDayTreatmentsRecyclerView.setAdapter(historyAdapter);
         thisDayTreatmentsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         DividerItemDecoration dividerItemDecoration = new DividerItemDecoration(
                 thisDayTreatmentsRecyclerView.getContext(), DividerItemDecoration.VERTICAL
         );
         thisDayTreatmentsRecyclerView.addItemDecoration(dividerItemDecoration);
+        loadActiveHistory();
+        showActiveProfileName();
         // Handler for view history button click.
         viewHistoryButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -115,29 +174,31 @@ public class MainActivity extends AppCompatActivity {
                 addTreatmentIfCan();
             }
         });
+        SET_UP_VIEWS_LATENCY.recordSince(phaseStart);
+        ON_CREATE_LATENCY.recordSince(startupNanos);
     }
 
     @Override
     protected void onResume() {
-        timer = startTimerIfNeeded();
+        // History could be changed by another activity.
+        historyAdapter.refresh();
+        startTimerIfNeeded();
         super.onResume();
     }
 
     @Override
     protected void onPause() {
-        // Stops timer from running in background.
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
-        }
+        // Stops countdown from running in background.
+        countdown.stop();
+        dailyUsageHandler.removeCallbacks(dailyUsageUpdater);
         super.onPause();
     }
 
     @Override
     protected void onDestroy() {
-        // Closes DB.
-        if (dbHelper != null) {
-            dbHelper.close();
+        // Releases the shared DB, it is closed after pending writes if no screen uses it.
+        if (repository != null) {
+            repository.release();
         }
         super.onDestroy();
     }
@@ -148,6 +209,8 @@ public class MainActivity extends AppCompatActivity {
         inflater.inflate(R.menu.main_menu, menu);
         // Saves reference to the history menu item.
         historyMenuItem = menu.findItem(R.id.historyMenuItem);
+        // Metrics are only looked at while developing.
+        menu.findItem(R.id.metricsMenuItem).setVisible(BuildConfig.DEBUG);
         return super.onCreateOptionsMenu(menu);
     }
 
@@ -166,6 +229,14 @@ public class MainActivity extends AppCompatActivity {
             case R.id.historyMenuItem:
                 openHistoryActivity();
                 break;
+            // Case Profiles.
+            case R.id.profilesMenuItem:
+                showProfilesDialog();
+                break;
+            // Case Metrics.
+            case R.id.metricsMenuItem:
+                openMetricsActivity();
+                break;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -194,6 +265,14 @@ public class MainActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
+    /**
+     * Starts new metrics activity.
+     */
+    private void openMetricsActivity() {
+        Intent intent = new Intent(this, MetricsActivity.class);
+        startActivity(intent);
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -208,6 +287,12 @@ public class MainActivity extends AppCompatActivity {
                                 data.getStringExtra(AppSettings.SETTINGS_TREATMENT_NAME_KEY),
                                 data.getIntExtra(AppSettings.SETTINGS_MIN_TREATMENT_INTERVAL_KEY, 0),
                                 data.getIntExtra(AppSettings.SETTINGS_MAX_DAILY_USAGE_KEY, 0));
+                        AppSettings.updateDoseSettings(
+                                data.getDoubleExtra(AppSettings.SETTINGS_DOSE_AMOUNT_KEY,
+                                        FeverTreatment.NO_DOSE_AMOUNT),
+                                data.getStringExtra(AppSettings.SETTINGS_DOSE_UNIT_KEY),
+                                data.getDoubleExtra(AppSettings.SETTINGS_MAX_DAILY_AMOUNT_KEY,
+                                        MedicationRule.NO_LIMIT));
                     }
                     catch (IllegalArgumentException e) {
                         Log.e(
@@ -218,9 +303,10 @@ public class MainActivity extends AppCompatActivity {
                         return;
                     }
                     setUpProgressBar();
-                    SharedPreferences treatmentSettings = this.getSharedPreferences(
-                            AppSettings.SETTINGS_FILE_KEY, Context.MODE_PRIVATE
-                    );
+                    SettingsStore treatmentSettings = new SharedPreferencesStore(
+                            this.getSharedPreferences(
+                                    AppSettings.getSettingsFileKey(), Context.MODE_PRIVATE
+                            ));
                     AppSettings.saveSettings(treatmentSettings);
                     Toast toast = Toast.makeText(getBaseContext(), R.string.toast_settings_updated, Toast.LENGTH_SHORT);
                     toast.setGravity(Gravity.BOTTOM, 0, 40);
@@ -236,18 +322,9 @@ public class MainActivity extends AppCompatActivity {
                             .getSerializableExtra(CustomTreatmentActivity.TREATMENT_INTENT_EXTRA_HEADER);
                     // Saves new treatment into the model and DB.
                     try {
-                        int treatmentID = dbHelper.saveTreatmentIntoDB(
-                                TreatmentData.getInstance().addCustomTreatment(newTreatment),
-                                db
-                        );
-                        // Updates treatment's ID.
-                        if (treatmentID == -1) {
-                            Log.e(TAG, "New treatment wasn't saved to the DB.");
-                        }
-                        newTreatment.setId(treatmentID);
+                        saveNewTreatment(TreatmentData.getInstance().addCustomTreatment(newTreatment));
 
-                        Objects.requireNonNull(thisDayTreatmentsRecyclerView.getAdapter())
-                                .notifyDataSetChanged();
+                        historyAdapter.refresh();
                         Toast.makeText(this, R.string.new_treatment_created, Toast.LENGTH_SHORT).show();
                     }
                     catch (IllegalArgumentException e) {
@@ -263,8 +340,12 @@ public class MainActivity extends AppCompatActivity {
      * if needed before adding new treatment.
      */
     private void addTreatmentIfCan() {
+        // Ignores clicks until the history is loaded.
+        if (!historyLoaded) {
+            return;
+        }
         // Adds treatment if no need to ask for user confirmation.
-        if ((timer == null)
+        if (!countdown.isRunning()
                 && (TreatmentData.getInstance().getTreatmentsNumber24h() < AppSettings.getMaxDailyUsage())) {
             addDefaultTreatment();
             return;
@@ -295,21 +376,243 @@ public class MainActivity extends AppCompatActivity {
      * Adds default treatment to the data model and saves it into the DB.
      */
     private void addDefaultTreatment() {
-        if (timer != null) {
-            timer.cancel();
-        }
         // Adds new treatment to the data model and saves it into the DB.
-        FeverTreatment treatment = TreatmentData.getInstance().addNewDefaultTreatment();
-        treatment.setId(dbHelper.saveTreatmentIntoDB(treatment, db));
-        if (treatment.getId() == -1) {
-            Log.e(TAG, "addDefaultTreatment(): Error saving to DB.");
-        }
-        timer = startTimerIfNeeded();
-        Objects.requireNonNull(thisDayTreatmentsRecyclerView.getAdapter())
-                .notifyDataSetChanged();
+        saveNewTreatment(TreatmentData.getInstance().addNewDefaultTreatment());
+        startTimerIfNeeded();
+        historyAdapter.refresh();
         Toast.makeText(this, R.string.new_treatment_created, Toast.LENGTH_SHORT).show();
     }
 
+    /**
+     * Saves new treatment into the DB in background and updates its ID in the data model.
+     *
+     * @param treatment treatment that was added to the data model.
+     */
+    private void saveNewTreatment(final FeverTreatment treatment) {
+        int temporaryId = repository.saveTreatment(treatment,
+                new TreatmentsRepository.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer treatmentID) {
+                if (treatmentID == -1) {
+                    Log.e(TAG, "saveNewTreatment(): Error saving to DB.");
+                }
+                // Profile could be switched while the treatment was saved.
+                TreatmentData.getInstance(treatment.getProfileId())
+                        .updateTreatmentId(treatment, treatmentID);
+                historyAdapter.refresh();
+            }
+        });
+        // Treatment can be edited or deleted before it's saved.
+        TreatmentData.getInstance(treatment.getProfileId())
+                .updateTreatmentId(treatment, temporaryId);
+    }
+
+    /**
+     * Loads history of the active profile into its data model, unless the model is already
+     * loaded, and updates UI when it's ready. Only the recent part of the history is loaded,
+     * older pages are loaded by the history screen. Valid snapshot of the recent history is shown
+     * while the DB is being opened, adding treatments waits for the DB.
+     */
+    private void loadActiveHistory() {
+        final TreatmentData model = TreatmentData.getInstance();
+        if (model.isLoaded()) {
+            historyLoaded = true;
+            onHistoryLoaded();
+            return;
+        }
+        historyLoaded = false;
+        final long profileId = model.getProfileId();
+        // Snapshot is read without opening the DB, it's shown until the history is loaded.
+        repository.loadSnapshot(profileId,
+                new TreatmentsRepository.Callback<List<FeverTreatment>>() {
+            @Override
+            public void onComplete(List<FeverTreatment> snapshot) {
+                TreatmentData snapshotModel = TreatmentData.getInstance(profileId);
+                if (snapshot == null || snapshotModel.isLoaded()) {
+                    return;
+                }
+                snapshotModel.loadFromSnapshot(snapshot);
+                if (profileId == AppSettings.getActiveProfileId()) {
+                    onHistoryLoaded();
+                    if (startupNanos != 0) {
+                        SNAPSHOT_SHOWN_LATENCY.recordSince(startupNanos);
+                    }
+                }
+            }
+        });
+        repository.loadRecentHistory(profileId,
+                new TreatmentsRepository.Callback<List<FeverTreatment>>() {
+            @Override
+            public void onComplete(List<FeverTreatment> history) {
+                if (history == null) {
+                    Log.e(TAG, "loadActiveHistory(): History wasn't loaded. DB error");
+                    // Adding stays disabled, doses can't be checked without the history.
+                    if (!isDestroyed() && profileId == AppSettings.getActiveProfileId()) {
+                        Toast.makeText(MainActivity.this, R.string.history_not_loaded,
+                                Toast.LENGTH_LONG).show();
+                    }
+                    return;
+                }
+                TreatmentData loadedModel = TreatmentData.getInstance(profileId);
+                loadedModel.loadFromHistory(history);
+                loadedModel.setHasOlderHistory(
+                        HistoryPager.getInstance(profileId).hasMorePages());
+                // Another profile was activated while the history was loading.
+                if (profileId != AppSettings.getActiveProfileId()) {
+                    return;
+                }
+                historyLoaded = true;
+                onHistoryLoaded();
+                if (startupNanos != 0) {
+                    HISTORY_LOADED_LATENCY.recordSince(startupNanos);
+                    startupNanos = 0;
+                }
+            }
+        });
+    }
+
+    /**
+     * Shows list of the profiles, switches to the selected one or creates a new one.
+     */
+    private void showProfilesDialog() {
+        repository.loadProfiles(new TreatmentsRepository.Callback<List<Profile>>() {
+            @Override
+            public void onComplete(final List<Profile> profiles) {
+                if (isDestroyed() || profiles == null) {
+                    return;
+                }
+                // Last item adds a new profile.
+                CharSequence[] items = new CharSequence[profiles.size() + 1];
+                for (int i = 0; i < profiles.size(); i++) {
+                    items[i] = profiles.get(i).getName();
+                }
+                items[profiles.size()] = getString(R.string.add_profile_dialog_item);
+                new AlertDialog.Builder(MainActivity.this)
+                        .setTitle(R.string.profiles_dialog_title)
+                        .setItems(items, new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                if (which < profiles.size()) {
+                                    switchProfile(profiles.get(which));
+                                }
+                                else {
+                                    showAddProfileDialog();
+                                }
+                            }
+                        })
+                        .setNegativeButton(R.string.cancel, null)
+                        .show();
+            }
+        });
+    }
+
+    /**
+     * Asks for the name of a new profile, creates it and switches to it.
+     */
+    private void showAddProfileDialog() {
+        final EditText nameEditText = new EditText(this);
+        nameEditText.setHint(R.string.profile_name_hint);
+        nameEditText.setSingleLine(true);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.add_profile_dialog_title)
+                .setView(nameEditText)
+                .setPositiveButton(R.string.create_profile_button,
+                        new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        final String name = nameEditText.getText().toString().trim();
+                        if (name.isEmpty()) {
+                            return;
+                        }
+                        repository.createProfile(name, new TreatmentsRepository.Callback<Long>() {
+                            @Override
+                            public void onComplete(Long profileId) {
+                                if (profileId == -1) {
+                                    Toast.makeText(MainActivity.this,
+                                            R.string.profile_not_created, Toast.LENGTH_SHORT)
+                                            .show();
+                                    return;
+                                }
+                                switchProfile(new Profile(profileId, name));
+                            }
+                        });
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * Makes the profile active and shows its data. Data model of a recently used profile is
+     * taken from the cache, otherwise it's loaded. Opens settings if the profile has none.
+     *
+     * @param profile profile to switch to.
+     */
+    private void switchProfile(Profile profile) {
+        if (isDestroyed() || profile.getId() == AppSettings.getActiveProfileId()) {
+            return;
+        }
+        AppSettings.saveActiveProfile(new SharedPreferencesStore(this.getSharedPreferences(
+                AppSettings.SETTINGS_FILE_KEY, Context.MODE_PRIVATE
+        )), profile.getId());
+        setProfileSubtitle(profile.getName());
+        SettingsStore treatmentSettings = new SharedPreferencesStore(this.getSharedPreferences(
+                AppSettings.getSettingsFileKey(), Context.MODE_PRIVATE
+        ));
+        if (!AppSettings.loadSettings(treatmentSettings)) {
+            openSettingsActivity();
+        }
+        setUpProgressBar();
+        // Shows the cached model at once, or an empty one until the history is loaded.
+        historyAdapter.refresh();
+        startTimerIfNeeded();
+        loadActiveHistory();
+    }
+
+    /**
+     * Shows name of the active profile in the action bar if there is more than one profile.
+     */
+    private void showActiveProfileName() {
+        repository.loadProfiles(new TreatmentsRepository.Callback<List<Profile>>() {
+            @Override
+            public void onComplete(List<Profile> profiles) {
+                if (isDestroyed() || profiles == null || profiles.size() < 2) {
+                    return;
+                }
+                for (Profile profile : profiles) {
+                    if (profile.getId() == AppSettings.getActiveProfileId()) {
+                        setProfileSubtitle(profile.getName());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Shows profile name in the action bar.
+     *
+     * @param name name of the profile.
+     */
+    private void setProfileSubtitle(String name) {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(name);
+        }
+    }
+
+    /**
+     * Updates UI after the history was loaded from the DB.
+     */
+    private void onHistoryLoaded() {
+        if (isDestroyed()) {
+            return;
+        }
+        historyAdapter.refresh();
+        // Restarts countdown if the activity is visible, otherwise it's started in onResume().
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+            startTimerIfNeeded();
+        }
+    }
+
     /**
      * Starts activity to create custom treatment.
      */
@@ -349,69 +652,57 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Updates text view that shows treatments number in last 24 hours.
+     * Updates text view that shows treatments number in last 24 hours, and the dose amount taken
+     * if the daily amount is limited in the settings.
      */
     @SuppressLint("DefaultLocale")
     private void updateDailyUsageTitle() {
         int currentUsage = TreatmentData.getInstance().getTreatmentsNumber24h();
-        thisDayLimitTextView.setText(String.format("%d of %d treatments",
-                currentUsage, AppSettings.getMaxDailyUsage()));
+        String title = String.format("%d of %d treatments",
+                currentUsage, AppSettings.getMaxDailyUsage());
+        if (AppSettings.getMaxDailyAmount() != MedicationRule.NO_LIMIT) {
+            String unit = AppSettings.getDefaultDoseUnit();
+            title += String.format(", %s of %s%s",
+                    formatAmount(TreatmentData.getInstance().getDoseAmount24h()),
+                    formatAmount(AppSettings.getMaxDailyAmount()),
+                    unit == null ? "" : " " + unit);
+        }
+        thisDayLimitTextView.setText(title);
+    }
+
+    // Formats dose amount without the trailing zeros.
+    private static String formatAmount(double amount) {
+        return BigDecimal.valueOf(amount).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Schedules UI update for the moment when number of treatments in the past 24 hours
+     * decreases. Replaces previously scheduled update.
+     */
+    private void scheduleDailyUsageUpdate() {
+        dailyUsageHandler.removeCallbacks(dailyUsageUpdater);
+        long expiryTime = TreatmentData.getInstance().getTreatmentsNumber24hExpiryTime();
+        if (expiryTime != Long.MAX_VALUE) {
+            dailyUsageHandler.postDelayed(dailyUsageUpdater,
+                    Math.max(0, expiryTime - System.currentTimeMillis()));
+        }
     }
 
     /**
      * Checks time till next treatment and if it is more than 1 second, starts countdown.
-     *
-     * @return timer if countdown started, null otherwise.
+     * Replaces the running countdown.
      */
-    public NextTreatmentTimer startTimerIfNeeded() {
+    public void startTimerIfNeeded() {
         updateDailyUsageTitle();
         updateHistoryCardUI();
+        scheduleDailyUsageUpdate();
         long millisInFuture = TreatmentData.getInstance().calculateTimeTillNextTreatmentAvailable();
         if ((millisInFuture / 1000) > 0) {
-            NextTreatmentTimer timer = new NextTreatmentTimer(millisInFuture);
-            timer.start();
-            return timer;
+            countdown.start(millisInFuture);
+            return;
         }
+        countdown.stop();
         progressBar.setProgress(0);
         progressTextView.setText(getString(R.string.progress_text_view));
-        return null;
-    }
-
-    /**
-     * Represents count down timer till the next treatment.
-     */
-    private class NextTreatmentTimer extends CountDownTimer {
-        // Default countdown interval = 1 second.
-        private static final long DEFAULT_COUNTDOWN_INTERVAL = 1000;
-
-        private NextTreatmentTimer(long timerDuration) {
-            super(timerDuration, DEFAULT_COUNTDOWN_INTERVAL);
-        }
-
-        /**
-         * Updates progress bar and timer text on each count down.
-         *
-         * @param millisUntilFinished time till the end of the current timer.
-         */
-        @SuppressLint("DefaultLocale")
-        @Override
-        public void onTick(long millisUntilFinished) {
-            // Progress for progress bar is an overall amount of seconds in millisUntilFinished.
-            int overallSeconds = (int) (millisUntilFinished / 1000);
-            progressBar.setProgress(overallSeconds, true);
-            int hours = overallSeconds / 60 / 60;
-            int minutes = overallSeconds / 60 - hours * 60;
-            int seconds = overallSeconds - minutes * 60 - hours * 60 * 60;
-            progressTextView.setText(String.format("%02dh %02dm %02ds", hours, minutes, seconds));
-        }
-
-        @Override
-        public void onFinish() {
-            // Update UI.
-            progressBar.setProgress(0);
-            progressTextView.setText(getString(R.string.progress_text_view));
-            updateDailyUsageTitle();
-            timer = null;
-        }
     }
 }
@@ -0,0 +1,98 @@
+package au.id.fedorgabrus.feverlog;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import au.id.fedorgabrus.feverlog.metrics.Metrics;
+
+/**
+ * Shows latency percentiles of the recorded operations, reachable from debug builds only.
+ *
+ * <p>Every time the report is shown it's also written into the metrics file in the app's files
+ * directory on a background thread, so it can be pulled from a device with adb.</p>
+ */
+public class MetricsActivity extends AppCompatActivity {
+    private static final String TAG = "MetricsActivity";
+    // Writes the metrics file, in the order the reports were shown.
+    private static final Executor fileExecutor = Executors.newSingleThreadExecutor();
+
+    private TextView metricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        metricsTextView = findViewById(R.id.metricsTextView);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showReport();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+        inflater.inflate(R.menu.metrics_menu, menu);
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        switch (item.getItemId()) {
+            // Case Refresh.
+            case R.id.refreshMetricsMenuItem:
+                showReport();
+                break;
+            // Case Reset.
+            case R.id.resetMetricsMenuItem:
+                Metrics.reset();
+                showReport();
+                break;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Shows current report and writes it into the metrics file on the background thread.
+     */
+    private void showReport() {
+        final String report = Metrics.report();
+        metricsTextView.setText(report);
+        final Context context = getApplicationContext();
+        final String fileName = getString(R.string.metrics_file_name);
+        fileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Files directory is created on the first access.
+                File file = new File(context.getFilesDir(), fileName);
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                        StandardCharsets.UTF_8)) {
+                    writer.write(report);
+                }
+                catch (IOException e) {
+                    Log.e(TAG, "showReport(): Metrics file can't be written.", e);
+                }
+            }
+        });
+    }
+}
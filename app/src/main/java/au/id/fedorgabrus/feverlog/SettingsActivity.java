@@ -15,12 +15,20 @@ import android.widget.EditText;
 import android.widget.Toast;
 
 import au.id.fedorgabrus.feverlog.R;
+import java.math.BigDecimal;
+import java.util.Objects;
+
 import au.id.fedorgabrus.feverlog.models.AppSettings;
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+import au.id.fedorgabrus.feverlog.models.MedicationRule;
 
 public class SettingsActivity extends AppCompatActivity {
     private EditText nameSettingsEditText;
     private EditText intervalSettingsEditText;
     private EditText maxDailySettingsEditText;
+    private EditText doseAmountSettingsEditText;
+    private EditText doseUnitSettingsEditText;
+    private EditText maxDailyAmountSettingsEditText;
 
     @SuppressLint("SetTextI18n")
     @Override
@@ -33,6 +41,9 @@ public class SettingsActivity extends AppCompatActivity {
         intervalSettingsEditText = findViewById(R.id.intervalSettingsEditText);
 
         maxDailySettingsEditText = findViewById(R.id.maxDailySettingsEditText);
+        doseAmountSettingsEditText = findViewById(R.id.doseAmountSettingsEditText);
+        doseUnitSettingsEditText = findViewById(R.id.doseUnitSettingsEditText);
+        maxDailyAmountSettingsEditText = findViewById(R.id.maxDailyAmountSettingsEditText);
         final Button saveSettingsButton = findViewById(R.id.saveSettingsButton);
         final Button cancelSettingsButton = findViewById(R.id.cancelSettingsButton);
 
@@ -49,6 +60,18 @@ public class SettingsActivity extends AppCompatActivity {
             nameSettingsEditText.setText(AppSettings.getDefaultName());
             intervalSettingsEditText.setText(Integer.toString(AppSettings.getMinTreatmentInterval()));
             maxDailySettingsEditText.setText(Integer.toString(AppSettings.getMaxDailyUsage()));
+            // Dose settings are optional, blank fields mean they aren't set.
+            if (AppSettings.getDefaultDoseAmount() != FeverTreatment.NO_DOSE_AMOUNT) {
+                doseAmountSettingsEditText.setText(
+                        formatAmount(AppSettings.getDefaultDoseAmount()));
+            }
+            if (AppSettings.getDefaultDoseUnit() != null) {
+                doseUnitSettingsEditText.setText(AppSettings.getDefaultDoseUnit());
+            }
+            if (AppSettings.getMaxDailyAmount() != MedicationRule.NO_LIMIT) {
+                maxDailyAmountSettingsEditText.setText(
+                        formatAmount(AppSettings.getMaxDailyAmount()));
+            }
         }
 
         // Handles cancel button click: closes activity with canceled result.
@@ -92,6 +115,7 @@ public class SettingsActivity extends AppCompatActivity {
      * current, closes activity as canceled.
      * <p>Treatment name should not be blank.</p>
      * <p>Min break and max daily usage should be greater then 0.</p>
+     * <p>Dose amount, unit and max daily amount are optional, amounts shouldn't be negative.</p>
      */
     private void validateUpdateSettings() {
         // New name should not be null or empty string.
@@ -132,15 +156,38 @@ public class SettingsActivity extends AppCompatActivity {
             maxDailySettingsEditText.selectAll();
             return;
         }
+        // Dose amount is optional and shouldn't be negative.
+        double doseAmount = parseAmount(doseAmountSettingsEditText,
+                FeverTreatment.NO_DOSE_AMOUNT, "Dose Amount");
+        if (Double.isNaN(doseAmount)) {
+            return;
+        }
+        // Blank unit isn't recorded.
+        String doseUnit = doseUnitSettingsEditText.getText().toString().trim();
+        if (doseUnit.isEmpty()) {
+            doseUnit = null;
+        }
+        // Max daily amount is optional and shouldn't be negative.
+        double dailyAmount = parseAmount(maxDailyAmountSettingsEditText,
+                MedicationRule.NO_LIMIT, "Max Daily Amount");
+        if (Double.isNaN(dailyAmount)) {
+            return;
+        }
         // Sets result OK and sends new settings to the parent activity only if new settings
         // are differ from the current ones.
         if (!treatmentName.equals(AppSettings.getDefaultName())
                 || interval != AppSettings.getMinTreatmentInterval()
-                || dailyUsage != AppSettings.getMaxDailyUsage()) {
+                || dailyUsage != AppSettings.getMaxDailyUsage()
+                || doseAmount != AppSettings.getDefaultDoseAmount()
+                || !Objects.equals(doseUnit, AppSettings.getDefaultDoseUnit())
+                || dailyAmount != AppSettings.getMaxDailyAmount()) {
             Intent intent = new Intent();
             intent.putExtra(AppSettings.SETTINGS_TREATMENT_NAME_KEY, treatmentName);
             intent.putExtra(AppSettings.SETTINGS_MIN_TREATMENT_INTERVAL_KEY, interval);
             intent.putExtra(AppSettings.SETTINGS_MAX_DAILY_USAGE_KEY, dailyUsage);
+            intent.putExtra(AppSettings.SETTINGS_DOSE_AMOUNT_KEY, doseAmount);
+            intent.putExtra(AppSettings.SETTINGS_DOSE_UNIT_KEY, doseUnit);
+            intent.putExtra(AppSettings.SETTINGS_MAX_DAILY_AMOUNT_KEY, dailyAmount);
             setResult(RESULT_OK, intent);
             finish();
         }
@@ -150,4 +197,40 @@ public class SettingsActivity extends AppCompatActivity {
             finish();
         }
     }
+
+    /**
+     * Parses optional amount from the field. Shows a message and focuses the field if the
+     * amount is invalid.
+     *
+     * @param editText field with the amount.
+     * @param blankValue value of the blank field.
+     * @param fieldName name of the field for the messages.
+     * @return amount, blankValue if the field is blank, NaN if the amount is invalid.
+     */
+    private double parseAmount(EditText editText, double blankValue, String fieldName) {
+        String amountString = editText.getText().toString().trim();
+        if (amountString.isEmpty()) {
+            return blankValue;
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(amountString);
+        }
+        catch (NumberFormatException e) {
+            amount = Double.NaN;
+        }
+        if (!(amount >= 0) || Double.isInfinite(amount)) {
+            Toast.makeText(this, fieldName + " should be a positive number",
+                    Toast.LENGTH_SHORT).show();
+            editText.requestFocus();
+            editText.selectAll();
+            return Double.NaN;
+        }
+        return amount;
+    }
+
+    // Formats amount without the trailing zeros.
+    private static String formatAmount(double amount) {
+        return BigDecimal.valueOf(amount).stripTrailingZeros().toPlainString();
+    }
 }
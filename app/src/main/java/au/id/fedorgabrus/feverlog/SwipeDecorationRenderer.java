@@ -0,0 +1,95 @@
+package au.id.fedorgabrus.feverlog;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+import java.util.Objects;
+
+/**
+ * Draws background, icon and label under the swiped history items.
+ *
+ * <p>Icons, labels, colors and text metrics are loaded once when the renderer is created, so
+ * drawing a frame of the swipe animation doesn't allocate objects or look up resources.
+ * Should be recreated when the configuration changes.</p>
+ */
+final class SwipeDecorationRenderer {
+    // Sizes in pixels.
+    private static final int TEXT_SIZE = 42;
+    private static final int X_PADDING = 32;
+    private static final int X_MARGIN = 16;
+
+    private final Paint editBackgroundPaint = new Paint();
+    private final Paint deleteBackgroundPaint = new Paint();
+    private final Paint textPaint = new Paint();
+    private final Drawable editIcon;
+    private final Drawable deleteIcon;
+    private final String editLabel;
+    private final String deleteLabel;
+    // Distance from the right edge of the item to the start of the delete label.
+    private final float deleteLabelOffset;
+
+    /**
+     * Loads resources used for drawing.
+     *
+     * @param context context of the current configuration.
+     */
+    SwipeDecorationRenderer(Context context) {
+        editBackgroundPaint.setColor(Color.argb(250, 255, 140, 0));
+        deleteBackgroundPaint.setColor(Color.argb(250, 235, 64, 52));
+        textPaint.setStyle(Paint.Style.FILL);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(TEXT_SIZE);
+
+        editIcon = Objects.requireNonNull(context.getDrawable(R.drawable.ic_edit_white_24dp));
+        deleteIcon = Objects.requireNonNull(context.getDrawable(R.drawable.ic_delete_white_24dp));
+        editLabel = context.getString(R.string.edit);
+        deleteLabel = context.getString(R.string.delete);
+        deleteLabelOffset = X_PADDING + deleteIcon.getIntrinsicWidth() + X_MARGIN
+                + textPaint.measureText(deleteLabel);
+    }
+
+    /**
+     * Draws decoration of the swiped item.
+     *
+     * @param canvas canvas to draw on.
+     * @param itemView view of the swiped item.
+     * @param dX horizontal displacement of the item, positive for swipe to the right (edit),
+     *           negative for swipe to the left (delete).
+     */
+    void draw(Canvas canvas, View itemView, float dX) {
+        final int left = itemView.getLeft();
+        final int top = itemView.getTop();
+        final int right = itemView.getRight();
+        final int bottom = itemView.getBottom();
+        final int centerY = bottom - itemView.getHeight() / 2;
+        final float textY = centerY + TEXT_SIZE / 2f;
+
+        // On swipe to right (EDIT).
+        if (dX > 0) {
+            canvas.drawRect(left, top, right, bottom, editBackgroundPaint);
+            int iconLeft = left + X_PADDING;
+            drawIcon(canvas, editIcon, iconLeft, centerY);
+            canvas.drawText(editLabel, iconLeft + editIcon.getIntrinsicWidth() + X_MARGIN, textY,
+                    textPaint);
+        }
+        // On swipe to left (DELETE).
+        else {
+            canvas.drawRect(left, top, right, bottom, deleteBackgroundPaint);
+            drawIcon(canvas, deleteIcon, right - X_PADDING - deleteIcon.getIntrinsicWidth(),
+                    centerY);
+            canvas.drawText(deleteLabel, right - deleteLabelOffset, textY, textPaint);
+        }
+    }
+
+    // Draws icon vertically centered on the provided line.
+    private static void drawIcon(Canvas canvas, Drawable icon, int iconLeft, int centerY) {
+        int iconBottom = centerY + icon.getIntrinsicHeight() / 2;
+        icon.setBounds(iconLeft, iconBottom - icon.getIntrinsicHeight(),
+                iconLeft + icon.getIntrinsicWidth(), iconBottom);
+        icon.draw(canvas);
+    }
+}
@@ -1,66 +1,587 @@
 package au.id.fedorgabrus.feverlog.models;
 
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.DateFormat;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import au.id.fedorgabrus.feverlog.R;
+import au.id.fedorgabrus.feverlog.metrics.LatencyHistogram;
+import au.id.fedorgabrus.feverlog.metrics.Metrics;
 
 /**
  * Adapter for treatment history data.
+ *
+ * <p>In the model mode shows an immutable snapshot of the data model. When the model changes,
+ * {@link #refresh()} takes a new snapshot, compares it with the shown one on a background thread
+ * and rebinds only the rows that changed.</p>
+ * <p>In the rows mode shows a window of the history loaded by the caller page by page while the
+ * list is scrolled. Pages are added at both ends and dropped when the window grows too large,
+ * rows are numbered after the treatments before the window. Reloaded rows replace the shown ones
+ * with {@link #swapRows(long, int, List, Runnable)}, which compares them on the background thread
+ * like the snapshots.</p>
+ * <p>Row ids are the treatment ids. Row labels are taken from a cache shared by all adapters,
+ * labels of the new and changed rows are formatted on the background thread together with the
+ * differences, and labels of the added pages before the pages are shown.</p>
  */
 public class HistoryRecyclerViewAdapter
         extends RecyclerView.Adapter<HistoryRecyclerViewAdapter.ViewHolder> {
 
     private static final String TAG = "HistoryRecyclerViewAdap";
-    private List<FeverTreatment> data;
-    private DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd/MM/yy hh:mm a");
+    // Payload of a row that only changed its position, only the row number is rebound.
+    private static final Object POSITION_PAYLOAD = new Object();
+    // Maximum number of cached time labels.
+    private static final int LABEL_CACHE_CAPACITY = 512;
+    // Computes differences between snapshots.
+    private static final Executor diffExecutor = Executors.newSingleThreadExecutor();
+    // Formatted row labels.
+    private static final RowLabelCache labelCache = new RowLabelCache(LABEL_CACHE_CAPACITY);
+    // Latencies of creating and binding the rows.
+    private static final LatencyHistogram CREATE_LATENCY =
+            Metrics.histogram("adapter.onCreateViewHolder");
+    private static final LatencyHistogram BIND_LATENCY =
+            Metrics.histogram("adapter.onBindViewHolder");
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Used to check the clock format.
+    private final Context context;
+    // Rows provided with swapRows() and appendRows(), null if rows are taken from the data model.
+    private final TreatmentListRows loadedRows;
     // When this flag is true -> adapter shows all data from the data model,
     // When false -> only for the past 24 hours.
     private boolean showAllDataFromModel;
+    // Shown data.
+    private HistoryRows rows;
+    // Profile of the shown rows.
+    private long profileId;
+    // Shown snapshot of the data model, null in the rows mode.
+    private HistorySnapshot snapshot;
+    // Number of the latest requested refresh or swap. Older results are dropped.
+    private int refreshGeneration = 0;
+    // Number of the treatments before the shown rows in the rows mode.
+    private int rowOffset = 0;
+    // Number of the changes of the loaded rows. Swaps compared with older rows are compared again.
+    private int rowsVersion = 0;
 
     /**
      * Constructor for the adapter.
      *
-     * @param data List with data.
-     * @param showAllDataFromModel if true shows all values from the provided data model,
+     * @param context context to check the clock format with.
+     * @param showAllDataFromModel if true shows all values from the data model,
      *                             if false shows treatments for the last 24 hours.
      */
-    public HistoryRecyclerViewAdapter(List<FeverTreatment> data, boolean showAllDataFromModel) {
-        this.data = data;
+    public HistoryRecyclerViewAdapter(Context context, boolean showAllDataFromModel) {
+        this.context = context.getApplicationContext();
         this.showAllDataFromModel = showAllDataFromModel;
+        loadedRows = null;
+        TreatmentData model = TreatmentData.getInstance();
+        snapshot = takeSnapshot(model);
+        rows = snapshot;
+        profileId = model.getProfileId();
+        setHasStableIds(true);
+        updateLabelFormat();
+    }
+
+    /**
+     * Constructor for the adapter in the rows mode. Adapter is empty until the rows are provided
+     * with {@link #swapRows(long, int, List, Runnable)} or {@link #appendRows(List, Runnable)}.
+     *
+     * @param context context to check the clock format with.
+     */
+    public HistoryRecyclerViewAdapter(Context context) {
+        this.context = context.getApplicationContext();
+        loadedRows = new TreatmentListRows();
+        rows = loadedRows;
+        profileId = Profile.DEFAULT_ID;
+        setHasStableIds(true);
+        updateLabelFormat();
+    }
+
+    /**
+     * Replaces shown rows. Used in the rows mode. Differences are calculated on a background
+     * thread and dispatched as item changes, so only the changed rows are rebound. Should be
+     * called on the main thread.
+     *
+     * @param profileId id of the profile the treatments belong to.
+     * @param offset number of the treatments before the first row.
+     * @param newRows treatments to show in descending time order.
+     * @param onSwapped called on the main thread when the rows are shown. Isn't called if newer
+     *                  rows are swapped first.
+     */
+    public void swapRows(final long profileId, final int offset,
+                         final List<FeverTreatment> newRows, final Runnable onSwapped) {
+        if (loadedRows == null) {
+            Log.e(TAG, "swapRows(): adapter shows the data model.");
+            return;
+        }
+        if (updateLabelFormat()) {
+            notifyItemRangeChanged(0, rows.size());
+        }
+        final TreatmentListRows oldRows = new TreatmentListRows(loadedRows.treatments, rowOffset);
+        final TreatmentListRows shownRows = new TreatmentListRows(newRows, offset);
+        final int version = rowsVersion;
+        final int generation = ++refreshGeneration;
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diff =
+                        DiffUtil.calculateDiff(new RowsDiffCallback(oldRows, shownRows));
+                precomputeLabels(oldRows, shownRows, diff);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Newer swap will be applied instead.
+                        if (generation != refreshGeneration) {
+                            return;
+                        }
+                        // Rows were added or removed meanwhile, differences are outdated.
+                        if (version != rowsVersion) {
+                            swapRows(profileId, offset, newRows, onSwapped);
+                            return;
+                        }
+                        HistoryRecyclerViewAdapter.this.profileId = profileId;
+                        loadedRows.treatments = shownRows.treatments;
+                        rowOffset = offset;
+                        diff.dispatchUpdatesTo(HistoryRecyclerViewAdapter.this);
+                        onSwapped.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Adds rows after the shown ones once their labels are formatted on the background thread.
+     * Used in the rows mode. Should be called on the main thread.
+     *
+     * @param page older treatments in descending time order.
+     * @param onAdded called on the main thread when the rows are shown.
+     */
+    public void appendRows(final List<FeverTreatment> page, final Runnable onAdded) {
+        if (loadedRows == null) {
+            Log.e(TAG, "appendRows(): adapter shows the data model.");
+            return;
+        }
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                precomputeLabels(page);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        int start = loadedRows.size();
+                        loadedRows.treatments.addAll(page);
+                        rowsVersion++;
+                        notifyItemRangeInserted(start, page.size());
+                        onAdded.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Adds rows before the shown ones once their labels are formatted on the background thread.
+     * Used in the rows mode. Should be called on the main thread.
+     *
+     * @param page newer treatments in descending time order.
+     * @param offset number of the treatments before the first added row.
+     * @param onAdded called on the main thread when the rows are shown.
+     */
+    public void prependRows(final List<FeverTreatment> page, final int offset,
+                            final Runnable onAdded) {
+        if (loadedRows == null) {
+            Log.e(TAG, "prependRows(): adapter shows the data model.");
+            return;
+        }
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                precomputeLabels(page);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        int shownCount = loadedRows.size();
+                        boolean renumbered = offset + page.size() != rowOffset;
+                        loadedRows.treatments.addAll(0, page);
+                        rowOffset = offset;
+                        rowsVersion++;
+                        notifyItemRangeInserted(0, page.size());
+                        // Treatments before the window have changed since it was loaded.
+                        if (renumbered) {
+                            notifyItemRangeChanged(page.size(), shownCount, POSITION_PAYLOAD);
+                        }
+                        onAdded.run();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the first rows of the window, e.g. when they are far from the visible rows. Following
+     * rows keep their numbers. Used in the rows mode. Should be called on the main thread.
+     *
+     * @param count number of rows to drop.
+     */
+    public void dropFirstRows(int count) {
+        if (loadedRows == null) {
+            Log.e(TAG, "dropFirstRows(): adapter shows the data model.");
+            return;
+        }
+        loadedRows.treatments.subList(0, count).clear();
+        rowOffset += count;
+        rowsVersion++;
+        notifyItemRangeRemoved(0, count);
+    }
+
+    /**
+     * Drops the last rows of the window, e.g. when they are far from the visible rows. Used in
+     * the rows mode. Should be called on the main thread.
+     *
+     * @param count number of rows to drop.
+     */
+    public void dropLastRows(int count) {
+        if (loadedRows == null) {
+            Log.e(TAG, "dropLastRows(): adapter shows the data model.");
+            return;
+        }
+        int start = loadedRows.size() - count;
+        loadedRows.treatments.subList(start, loadedRows.size()).clear();
+        rowsVersion++;
+        notifyItemRangeRemoved(start, count);
+    }
+
+    /**
+     * Returns number of the treatments before the shown rows. Always 0 in the model mode.
+     *
+     * @return number of newer treatments that aren't shown.
+     */
+    public int getRowOffset() {
+        return rowOffset;
+    }
+
+    /**
+     * Hides the row until the rows are replaced, e.g. after its treatment was deleted. Used in the
+     * rows mode. Should be called on the main thread.
+     *
+     * @param position position of the row.
+     */
+    public void removeRow(int position) {
+        if (loadedRows == null) {
+            Log.e(TAG, "removeRow(): adapter shows the data model.");
+            return;
+        }
+        loadedRows.treatments.remove(position);
+        rowsVersion++;
+        notifyItemRemoved(position);
+        // Numbers of the following rows have changed.
+        notifyItemRangeChanged(position, loadedRows.size() - position, POSITION_PAYLOAD);
+    }
+
+    /**
+     * Returns treatment shown in the row.
+     *
+     * @param position position of the row.
+     * @return new treatment object with the values of the row, assigned to the profile of the
+     *      shown rows.
+     */
+    public FeverTreatment getTreatment(int position) {
+        // Loaded rows keep the exact time, which the pages continue from.
+        LocalDateTime time = loadedRows != null
+                ? loadedRows.treatments.get(position).getTreatmentTime()
+                : TimeKeys.fromTimeKey(rows.getTimeKey(position));
+        FeverTreatment treatment = new FeverTreatment(rows.getId(position), time,
+                rows.getName(position), rows.getDoseAmount(position), rows.getDoseUnit(position));
+        treatment.setProfileId(profileId);
+        return treatment;
+    }
+
+    /**
+     * Updates shown rows after the data model has changed. Differences are calculated on a
+     * background thread and dispatched as item changes. In the rows mode only updates the labels
+     * format. Should be called on the main thread.
+     */
+    public void refresh() {
+        // Labels of all shown rows are outdated.
+        if (updateLabelFormat()) {
+            notifyItemRangeChanged(0, rows.size());
+        }
+        if (loadedRows != null) {
+            return;
+        }
+        final HistorySnapshot oldSnapshot = snapshot;
+        final TreatmentData model = TreatmentData.getInstance();
+        final HistorySnapshot newSnapshot = takeSnapshot(model);
+        final int generation = ++refreshGeneration;
+        diffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diff =
+                        DiffUtil.calculateDiff(new SnapshotDiffCallback(oldSnapshot, newSnapshot));
+                precomputeLabels(oldSnapshot, newSnapshot, diff);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Newer refresh will be applied instead.
+                        if (generation != refreshGeneration) {
+                            return;
+                        }
+                        snapshot = newSnapshot;
+                        rows = newSnapshot;
+                        profileId = model.getProfileId();
+                        diff.dispatchUpdatesTo(HistoryRecyclerViewAdapter.this);
+                    }
+                });
+            }
+        });
     }
 
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        long start = System.nanoTime();
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.layout_treatment_rv_item, parent, false);
+        CREATE_LATENCY.recordSince(start);
         return new ViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        holder.itemNumberRVItemTextView.setText(String.valueOf(position + 1));
-        FeverTreatment treatment = data.get(position);
-        holder.treatmentTimeRVItemTextView.setText(treatment.getTreatmentTime()
-                .format(dateTimeFormatter).toUpperCase());
-        holder.treatmentNameRVItemTextView.setText(treatment.getTreatmentName());
+        holder.itemNumberRVItemTextView.setText(
+                labelCache.getNumberLabel(rowOffset + position + 1));
+        holder.treatmentTimeRVItemTextView.setText(
+                labelCache.getTimeLabel(rows.getTimeKey(position)));
+        holder.treatmentNameRVItemTextView.setText(rows.getName(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        // Every bind comes through here, full binds included.
+        long start = System.nanoTime();
+        if (!payloads.isEmpty() && !payloads.contains(null)) {
+            // Row was only moved.
+            holder.itemNumberRVItemTextView.setText(
+                    labelCache.getNumberLabel(rowOffset + position + 1));
+        }
+        else {
+            onBindViewHolder(holder, position);
+        }
+        BIND_LATENCY.recordSince(start);
     }
 
     @Override
     public int getItemCount() {
-        if (showAllDataFromModel) {
-            return TreatmentData.getInstance().getDataSize();
+        return rows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        int id = rows.getId(position);
+        // Treatments that aren't saved yet get a negative id derived from their time.
+        if (id == FeverTreatment.DEFAULT_ID) {
+            return -1 - rows.getTimeKey(position);
+        }
+        return id;
+    }
+
+    // Applies current locale and clock format to the labels. Returns true if they have changed.
+    private boolean updateLabelFormat() {
+        return labelCache.setFormat(Locale.getDefault(), DateFormat.is24HourFormat(context));
+    }
+
+    // Formats labels of the rows that are new or changed in the new rows. Called on the
+    // background thread.
+    private static void precomputeLabels(HistoryRows oldRows, HistoryRows newRows,
+                                         DiffUtil.DiffResult diff) {
+        int remaining = labelCache.getCapacity();
+        for (int i = 0; i < newRows.size() && remaining > 0; i++) {
+            int oldPosition = diff.convertNewPositionToOld(i);
+            if (oldPosition == DiffUtil.DiffResult.NO_POSITION
+                    || oldRows.getTimeKey(oldPosition) != newRows.getTimeKey(i)) {
+                labelCache.precompute(newRows.getTimeKey(i));
+                remaining--;
+            }
+        }
+    }
+
+    // Formats labels of the loaded page. Called on the background thread.
+    private static void precomputeLabels(List<FeverTreatment> page) {
+        int count = Math.min(page.size(), labelCache.getCapacity());
+        for (int i = 0; i < count; i++) {
+            labelCache.precompute(TimeKeys.toTimeKey(page.get(i).getTreatmentTime()));
+        }
+    }
+
+    // Copies rows shown by the adapter from the data model.
+    private HistorySnapshot takeSnapshot(TreatmentData treatmentData) {
+        int count = showAllDataFromModel
+                ? treatmentData.getDataSize()
+                : treatmentData.getTreatmentsNumber24h();
+        return treatmentData.getHistorySnapshot(count);
+    }
+
+    /**
+     * Rows of the treatments loaded by the caller. Changed on the main thread only.
+     */
+    private static class TreatmentListRows implements HistoryRows {
+        private List<FeverTreatment> treatments;
+        // Number of the treatments before the rows, only used to compare rows.
+        private final int offset;
+
+        TreatmentListRows() {
+            this(new ArrayList<FeverTreatment>(), 0);
+        }
+
+        // Copies the treatments.
+        TreatmentListRows(List<FeverTreatment> treatments, int offset) {
+            this.treatments = new ArrayList<>(treatments);
+            this.offset = offset;
+        }
+
+        @Override
+        public int size() {
+            return treatments.size();
+        }
+
+        @Override
+        public int getId(int index) {
+            return treatments.get(index).getId();
+        }
+
+        @Override
+        public long getTimeKey(int index) {
+            return TimeKeys.toTimeKey(treatments.get(index).getTreatmentTime());
+        }
+
+        @Override
+        public String getName(int index) {
+            return treatments.get(index).getTreatmentName();
+        }
+
+        @Override
+        public double getDoseAmount(int index) {
+            return treatments.get(index).getDoseAmount();
+        }
+
+        @Override
+        public String getDoseUnit(int index) {
+            return treatments.get(index).getDoseUnit();
+        }
+    }
+
+    /**
+     * Compares rows of two snapshots without creating treatment objects.
+     */
+    private static class SnapshotDiffCallback extends DiffUtil.Callback {
+        private final HistorySnapshot oldSnapshot;
+        private final HistorySnapshot newSnapshot;
+
+        SnapshotDiffCallback(HistorySnapshot oldSnapshot, HistorySnapshot newSnapshot) {
+            this.oldSnapshot = oldSnapshot;
+            this.newSnapshot = newSnapshot;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldSnapshot.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newSnapshot.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldSnapshot.isSameTreatment(oldItemPosition, newSnapshot, newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            // Row number is a part of the content.
+            return oldItemPosition == newItemPosition
+                    && oldSnapshot.getId(oldItemPosition) == newSnapshot.getId(newItemPosition)
+                    && oldSnapshot.hasSameContent(oldItemPosition, newSnapshot, newItemPosition);
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            if (oldSnapshot.getId(oldItemPosition) == newSnapshot.getId(newItemPosition)
+                    && oldSnapshot.hasSameContent(oldItemPosition, newSnapshot, newItemPosition)) {
+                return POSITION_PAYLOAD;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Compares loaded rows. Loaded treatments are always saved, so rows are matched by ids.
+     */
+    private static class RowsDiffCallback extends DiffUtil.Callback {
+        private final TreatmentListRows oldRows;
+        private final TreatmentListRows newRows;
+
+        RowsDiffCallback(TreatmentListRows oldRows, TreatmentListRows newRows) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldRows.getId(oldItemPosition) == newRows.getId(newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            // Row number is a part of the content.
+            return oldRows.offset + oldItemPosition == newRows.offset + newItemPosition
+                    && hasSameTreatment(oldItemPosition, newItemPosition);
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            if (hasSameTreatment(oldItemPosition, newItemPosition)) {
+                return POSITION_PAYLOAD;
+            }
+            return null;
+        }
+
+        private boolean hasSameTreatment(int oldItemPosition, int newItemPosition) {
+            return oldRows.treatments.get(oldItemPosition)
+                    .equals(newRows.treatments.get(newItemPosition));
         }
-        return TreatmentData.getInstance().getTreatmentsNumber24h();
     }
 
     public class ViewHolder extends RecyclerView.ViewHolder {
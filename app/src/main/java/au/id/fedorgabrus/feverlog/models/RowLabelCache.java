@@ -0,0 +1,142 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the formatted labels of the history rows.
+ *
+ * <p>Time labels are keyed by the treatment time, so a label is never stale for a treatment, an
+ * edited treatment simply gets a new key. All labels are dropped when the locale or the clock
+ * format changes. Row number labels are kept for the first rows of the list. Labels can be
+ * precomputed on a background thread. Thread safe.</p>
+ */
+class RowLabelCache {
+    // Date patterns for the 12 and 24 hour clock.
+    private static final String PATTERN_12_HOUR = "dd/MM/yy hh:mm a";
+    private static final String PATTERN_24_HOUR = "dd/MM/yy HH:mm";
+    // Number of row number labels that are kept.
+    private static final int NUMBER_LABELS = 1024;
+
+    // Maximum number of time labels.
+    private final int capacity;
+    // Time labels by the time keys, in access order.
+    private final LinkedHashMap<Long, String> timeLabels;
+    // Row number labels by the row numbers, filled on demand.
+    private final String[] numberLabels = new String[NUMBER_LABELS];
+    private Locale locale;
+    private boolean is24HourFormat;
+    private DateTimeFormatter formatter;
+
+    /**
+     * Creates an empty cache that formats times for the default locale and the 12 hour clock.
+     *
+     * @param capacity maximum number of time labels.
+     */
+    RowLabelCache(int capacity) {
+        this.capacity = capacity;
+        timeLabels = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > RowLabelCache.this.capacity;
+            }
+        };
+        setFormat(Locale.getDefault(), false);
+    }
+
+    /**
+     * Returns maximum number of time labels.
+     *
+     * @return capacity of the cache.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Updates format of the time labels. Drops all time labels if the format has changed.
+     *
+     * @param locale locale to format times for.
+     * @param is24HourFormat true if the 24 hour clock is used.
+     * @return true if the format has changed.
+     */
+    synchronized boolean setFormat(Locale locale, boolean is24HourFormat) {
+        if (locale.equals(this.locale) && is24HourFormat == this.is24HourFormat) {
+            return false;
+        }
+        this.locale = locale;
+        this.is24HourFormat = is24HourFormat;
+        formatter = DateTimeFormatter.ofPattern(
+                is24HourFormat ? PATTERN_24_HOUR : PATTERN_12_HOUR, locale);
+        timeLabels.clear();
+        return true;
+    }
+
+    /**
+     * Returns label of the treatment time, formats it if it's not cached.
+     *
+     * @param timeKey treatment time in seconds from the epoch at UTC offset.
+     * @return formatted time.
+     */
+    synchronized String getTimeLabel(long timeKey) {
+        String label = timeLabels.get(timeKey);
+        if (label == null) {
+            label = format(timeKey);
+            timeLabels.put(timeKey, label);
+        }
+        return label;
+    }
+
+    /**
+     * Formats label of the treatment time if it's not cached. Doesn't change the access order
+     * of the cached labels.
+     *
+     * @param timeKey treatment time in seconds from the epoch at UTC offset.
+     */
+    void precompute(long timeKey) {
+        DateTimeFormatter currentFormatter;
+        Locale currentLocale;
+        synchronized (this) {
+            if (timeLabels.containsKey(timeKey)) {
+                return;
+            }
+            currentFormatter = formatter;
+            currentLocale = locale;
+        }
+        // Formats outside of the lock, so the UI thread isn't blocked.
+        String label = TimeKeys.fromTimeKey(timeKey).format(currentFormatter)
+                .toUpperCase(currentLocale);
+        synchronized (this) {
+            // Format could change while the label was being formatted.
+            if (currentFormatter == formatter) {
+                timeLabels.put(timeKey, label);
+            }
+        }
+    }
+
+    /**
+     * Returns label of the row number.
+     *
+     * @param number row number, starting from 1.
+     * @return number as a string.
+     */
+    String getNumberLabel(int number) {
+        if (number < 0 || number >= NUMBER_LABELS) {
+            return String.valueOf(number);
+        }
+        // Races only create an equal string twice.
+        String label = numberLabels[number];
+        if (label == null) {
+            label = String.valueOf(number);
+            numberLabels[number] = label;
+        }
+        return label;
+    }
+
+    // Formats time with the current formatter. Called with the lock held.
+    private String format(long timeKey) {
+        return TimeKeys.fromTimeKey(timeKey).format(formatter).toUpperCase(locale);
+    }
+}
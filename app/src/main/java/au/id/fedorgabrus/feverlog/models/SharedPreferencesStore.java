@@ -0,0 +1,68 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import android.content.SharedPreferences;
+
+/**
+ * Settings store backed by the shared preferences.
+ */
+public class SharedPreferencesStore implements SettingsStore {
+    private final SharedPreferences preferences;
+
+    /**
+     * Constructor.
+     *
+     * @param preferences shared preferences to keep the settings in.
+     */
+    public SharedPreferencesStore(SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return preferences.contains(key);
+    }
+
+    @Override
+    public String getString(String key, String defaultValue) {
+        return preferences.getString(key, defaultValue);
+    }
+
+    @Override
+    public int getInt(String key, int defaultValue) {
+        return preferences.getInt(key, defaultValue);
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        return preferences.getLong(key, defaultValue);
+    }
+
+    @Override
+    public Editor edit() {
+        final SharedPreferences.Editor editor = preferences.edit();
+        return new Editor() {
+            @Override
+            public Editor putString(String key, String value) {
+                editor.putString(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                editor.putInt(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                editor.putLong(key, value);
+                return this;
+            }
+
+            @Override
+            public void apply() {
+                editor.apply();
+            }
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the window queries of the pager continue the pages of the whole history, in both
+ * directions, and that reloaded ranges are positioned in the history.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HistoryPagerTest {
+    // Rows of both profiles, the default profile gets a half of them.
+    private static final int ROWS = 1000;
+
+    private SQLiteDatabase db;
+    // Whole history of the profile.
+    private List<FeverTreatment> history;
+
+    @Before
+    public void setUp() {
+        TreatmentsDBHelper dbHelper = new TreatmentsDBHelper(RuntimeEnvironment.application);
+        db = SQLiteDatabase.create(null);
+        SyntheticHistory.fill(db, dbHelper, ROWS);
+        history = dbHelper.loadHistoryFromDB(db, SyntheticHistory.PROFILE_ID);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void loadPageAfter_continuesHistory() {
+        List<FeverTreatment> loaded = new ArrayList<>();
+        List<FeverTreatment> page = HistoryPager.loadPageAfter(db, SyntheticHistory.PROFILE_ID,
+                null);
+        while (!page.isEmpty()) {
+            loaded.addAll(page);
+            page = HistoryPager.loadPageAfter(db, SyntheticHistory.PROFILE_ID,
+                    loaded.get(loaded.size() - 1));
+        }
+        assertEquals(history, loaded);
+    }
+
+    @Test
+    public void loadPageBefore_precedesTreatment() {
+        int first = HistoryPager.PAGE_SIZE + 30;
+        assertEquals(history.subList(30, first), HistoryPager.loadPageBefore(db,
+                SyntheticHistory.PROFILE_ID, history.get(first)));
+        // Short page reaches the newest treatment.
+        assertEquals(history.subList(0, 30), HistoryPager.loadPageBefore(db,
+                SyntheticHistory.PROFILE_ID, history.get(30)));
+    }
+
+    @Test
+    public void loadRange_countsNewerTreatments() {
+        HistoryRange range = HistoryPager.loadRange(db, SyntheticHistory.PROFILE_ID,
+                history.get(120), history.get(250), HistoryPager.PAGE_SIZE * 5);
+        assertEquals(120, range.getOffset());
+        assertEquals(history.subList(120, 251), range.getTreatments());
+        assertTrue(range.hasOlder());
+
+        // Open range ends at the oldest treatment unless the limit cuts it.
+        range = HistoryPager.loadRange(db, SyntheticHistory.PROFILE_ID, history.get(400), null,
+                HistoryPager.PAGE_SIZE * 5);
+        assertEquals(history.subList(400, history.size()), range.getTreatments());
+        assertFalse(range.hasOlder());
+        range = HistoryPager.loadRange(db, SyntheticHistory.PROFILE_ID, null, null,
+                HistoryPager.PAGE_SIZE);
+        assertEquals(0, range.getOffset());
+        assertEquals(history.subList(0, HistoryPager.PAGE_SIZE), range.getTreatments());
+        assertTrue(range.hasOlder());
+    }
+}
@@ -0,0 +1,74 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import au.id.fedorgabrus.feverlog.models.Profile;
+
+/**
+ * Fills a new treatments DB with a synthetic history of two profiles.
+ *
+ * <p>Rows alternate between the default profile and a second one, with a treatment every ten
+ * minutes back from now and three alternating names. Rows are inserted through the history
+ * triggers, so the daily aggregate is filled as well.</p>
+ */
+final class SyntheticHistory {
+    static final long PROFILE_ID = Profile.DEFAULT_ID;
+    static final String OTHER_PROFILE_NAME = "Other";
+    static final String[] NAMES = {"Paracetamol", "Ibuprofen", "Aspirin"};
+    static final int INTERVAL_MINUTES = 10;
+    // Rows inserted in one transaction.
+    private static final int BATCH_SIZE = 10_000;
+
+    // Not instantiable.
+    private SyntheticHistory() {
+    }
+
+    /**
+     * Creates the schema and inserts the rows.
+     *
+     * @param db empty database.
+     * @param dbHelper helper that creates the schema.
+     * @param rows number of history rows of both profiles together.
+     * @return id of the second profile.
+     */
+    static long fill(SQLiteDatabase db, TreatmentsDBHelper dbHelper, int rows) {
+        dbHelper.onConfigure(db);
+        dbHelper.onCreate(db);
+        long otherProfileId = dbHelper.createProfile(db, OTHER_PROFILE_NAME);
+        long[] treatmentKeys = new long[NAMES.length];
+        SQLiteStatement insertName = db.compileStatement(TreatmentsContract.Treatments.SQL_INSERT);
+        for (int i = 0; i < NAMES.length; i++) {
+            insertName.bindString(1, NAMES[i]);
+            treatmentKeys[i] = insertName.executeInsert();
+        }
+        insertName.close();
+        long now = TreatmentsDBHelper.toUsageTime(
+                LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES));
+        long interval = INTERVAL_MINUTES * 60_000L;
+        SQLiteStatement insert =
+                db.compileStatement(TreatmentsContract.TreatmentsHistory.SQL_INSERT);
+        for (int start = 0; start < rows; start += BATCH_SIZE) {
+            db.beginTransaction();
+            try {
+                for (int i = start; i < Math.min(rows, start + BATCH_SIZE); i++) {
+                    insert.bindLong(1, now - i * interval);
+                    insert.bindLong(2, treatmentKeys[i % NAMES.length]);
+                    insert.bindDouble(3, 500);
+                    insert.bindString(4, "mg");
+                    insert.bindLong(5, i % 2 == 0 ? PROFILE_ID : otherProfileId);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+        }
+        insert.close();
+        return otherProfileId;
+    }
+}
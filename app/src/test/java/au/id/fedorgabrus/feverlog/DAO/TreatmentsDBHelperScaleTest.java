@@ -0,0 +1,189 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Times the history queries on synthetic histories of 10k to 1M rows.
+ *
+ * <p>Loading the whole history should grow linearly with its size. Single row writes and queries
+ * of a time range or a page should take about the same time at any size, limits are far above
+ * an indexed search and far below a scan of the larger histories. Timings are logged.</p>
+ *
+ * <p>The limits are wall-clock times, so the test isn't part of the default test task and runs
+ * with {@code -PscaleTests} only. Every size is filled once into a template file, each test
+ * works on a copy of it.</p>
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TreatmentsDBHelperScaleTest {
+    // Limit of loading the whole history, per row.
+    private static final long LOAD_NANOS_PER_ROW = 50_000;
+    // Limit of an indexed single row write or a bounded query.
+    private static final long INDEXED_OPERATION_NANOS = 5_000_000;
+    // Number of timed single row writes and bounded queries.
+    private static final int OPERATIONS = 200;
+    private static final Logger LOG = Logger.getLogger("TreatmentsDBHelperScaleTest");
+    // Filled template DB files by the number of rows.
+    private static final Map<Integer, File> TEMPLATES = new HashMap<>();
+
+    private final int rows;
+    private File dbFile;
+    private TreatmentsDBHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} rows")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][] {{10_000}, {100_000}, {1_000_000}});
+    }
+
+    public TreatmentsDBHelperScaleTest(int rows) {
+        this.rows = rows;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dbHelper = new TreatmentsDBHelper(RuntimeEnvironment.application);
+        dbFile = File.createTempFile("scale", ".db");
+        Files.copy(template(dbHelper, rows).toPath(), dbFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        db = SQLiteDatabase.openDatabase(dbFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        dbHelper.onConfigure(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        SQLiteDatabase.deleteDatabase(dbFile);
+    }
+
+    @Test
+    public void loadHistoryFromDB_growsLinearly() {
+        long start = System.nanoTime();
+        List<FeverTreatment> history = dbHelper.loadHistoryFromDB(db, SyntheticHistory.PROFILE_ID);
+        long elapsed = System.nanoTime() - start;
+        report("loadHistoryFromDB", elapsed, 1);
+        assertEquals((rows + 1) / 2, history.size());
+        assertTrue("loadHistoryFromDB took " + elapsed + " ns",
+                elapsed < LOAD_NANOS_PER_ROW * history.size());
+    }
+
+    @Test
+    public void updateAndDeleteById_dontDependOnSize() {
+        Random random = new Random(rows);
+        FeverTreatment treatment = new FeverTreatment(0, LocalDateTime.now(),
+                SyntheticHistory.NAMES[1], 250, "mg");
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            treatment.setId(1 + random.nextInt(rows));
+            treatment.setTreatmentTime(LocalDateTime.now().minusMinutes(random.nextInt(rows)));
+            assertEquals(1, dbHelper.updateTreatment(db, treatment));
+        }
+        assertIndexed("updateTreatment", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            // Every id is deleted once.
+            treatment.setId(rows - i);
+            assertEquals(1, dbHelper.deleteTreatment(db, treatment));
+        }
+        assertIndexed("deleteTreatment", System.nanoTime() - start);
+    }
+
+    @Test
+    public void boundedQueries_dontDependOnSize() {
+        long profileId = SyntheticHistory.PROFILE_ID;
+        LocalDateTime dayAgo = LocalDateTime.now().minusHours(24);
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            dbHelper.loadNewestHistory(db, profileId, dayAgo, HistoryPager.PAGE_SIZE);
+        }
+        assertIndexed("loadNewestHistory", System.nanoTime() - start);
+
+        HistoryPager pager = HistoryPager.getInstance(profileId);
+        pager.reset();
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            pager.loadNextPage(db);
+        }
+        assertIndexed("loadNextPage", System.nanoTime() - start);
+        pager.reset();
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            dbHelper.loadHistoryOfTreatment(db, profileId, SyntheticHistory.NAMES[i % 3],
+                    HistoryPager.PAGE_SIZE);
+        }
+        assertIndexed("loadHistoryOfTreatment", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            dbHelper.countUsagesByTreatment(db, profileId, dayAgo);
+        }
+        assertIndexed("countUsagesByTreatment", System.nanoTime() - start);
+
+        LocalDate today = LocalDate.now();
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            dbHelper.loadDailyUsage(db, profileId, today.minusDays(30), today);
+        }
+        assertIndexed("loadDailyUsage", System.nanoTime() - start);
+    }
+
+    // Checks average time of the timed operations.
+    private void assertIndexed(String operation, long elapsed) {
+        report(operation, elapsed, OPERATIONS);
+        assertTrue(operation + " took " + elapsed / OPERATIONS + " ns on average",
+                elapsed / OPERATIONS < INDEXED_OPERATION_NANOS);
+    }
+
+    // Logs average time of the operation.
+    private void report(String operation, long elapsed, int count) {
+        LOG.info(rows + " rows, " + operation + ": " + elapsed / count / 1000 + " us");
+    }
+
+    // Returns the template DB file of the size, fills it on first use.
+    private static synchronized File template(TreatmentsDBHelper dbHelper, int rows)
+            throws IOException {
+        File template = TEMPLATES.get(rows);
+        if (template == null) {
+            template = File.createTempFile("scale-template-" + rows, ".db");
+            template.deleteOnExit();
+            SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(template, null);
+            try {
+                SyntheticHistory.fill(db, dbHelper, rows);
+            }
+            finally {
+                db.close();
+            }
+            TEMPLATES.put(rows, template);
+        }
+        return template;
+    }
+}
@@ -0,0 +1,280 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks query plans of the history queries, so a missing or unused index fails the build.
+ *
+ * <p>Queries are recorded by the cursor factory of the DB when the helper runs them and are
+ * explained with the same placeholders. Statements that don't return cursors are explained from
+ * the contract constants the helper runs, and trigger statements from the triggers installed in
+ * the DB. Queries of a profile's history should search one of the indexes that lead with the
+ * profile, ordered queries should get their order from the index, and single rows should be found
+ * by the primary key.</p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TreatmentsQueryPlanTest {
+    private static final int ROWS = 1000;
+    // Prefix of the string form of a query.
+    private static final String QUERY_PREFIX = "SQLiteQuery: ";
+    private static final String HISTORY = TreatmentsContract.TreatmentsHistory.TABLE_NAME;
+    private static final String PROFILE_USAGE_INDEX =
+            TreatmentsContract.TreatmentsHistory.INDEX_NAME_PROFILE_USAGE;
+    private static final String PROFILE_TREATMENT_USAGE_INDEX =
+            TreatmentsContract.TreatmentsHistory.INDEX_NAME_PROFILE_TREATMENT_USAGE;
+    // Lookup of a single row, plan format differs between SQLite versions.
+    private static final String PRIMARY_KEY = "(INTEGER )?PRIMARY KEY";
+    private static final String DAILY_USAGE = TreatmentsContract.DailyUsage.TABLE_NAME;
+    // Reference to a column of the row changed by a trigger.
+    private static final Pattern ROW_COLUMN = Pattern.compile("\\b(NEW|OLD)\\.\\w+");
+
+    // Queries run through the cursor factory, in order.
+    private final List<String> queries = new ArrayList<>();
+    private TreatmentsDBHelper dbHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        dbHelper = new TreatmentsDBHelper(RuntimeEnvironment.application);
+        db = SQLiteDatabase.create(new SQLiteDatabase.CursorFactory() {
+            @Override
+            public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery,
+                                    String editTable, SQLiteQuery query) {
+                queries.add(query.toString().substring(QUERY_PREFIX.length()));
+                return new SQLiteCursor(masterQuery, editTable, query);
+            }
+        });
+        SyntheticHistory.fill(db, dbHelper, ROWS);
+        queries.clear();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void loadHistoryFromDB_searchesProfileUsageIndex() {
+        dbHelper.loadHistoryFromDB(db, SyntheticHistory.PROFILE_ID);
+        List<String> plan = explain(lastQuery());
+        assertSearches(plan, HISTORY, "INDEX " + PROFILE_USAGE_INDEX);
+        assertNoSorting(plan);
+    }
+
+    @Test
+    public void historyPages_searchProfileUsageIndex() {
+        HistoryPager pager = HistoryPager.getInstance(SyntheticHistory.PROFILE_ID);
+        pager.reset();
+        pager.loadNextPage(db);
+        pager.loadNextPage(db);
+        pager.reset();
+        assertEquals(2, queries.size());
+        for (String query : new ArrayList<>(queries)) {
+            List<String> plan = explain(query);
+            assertSearches(plan, HISTORY, "INDEX " + PROFILE_USAGE_INDEX);
+            assertNoSorting(plan);
+        }
+    }
+
+    @Test
+    public void loadPages_searchesProfileUsageIndex() {
+        HistoryPager.create(SyntheticHistory.PROFILE_ID)
+                .loadPages(db, HistoryPager.PAGE_SIZE + 1);
+        assertEquals(2, queries.size());
+        for (String query : new ArrayList<>(queries)) {
+            List<String> plan = explain(query);
+            assertSearches(plan, HISTORY, "INDEX " + PROFILE_USAGE_INDEX);
+            assertNoSorting(plan);
+        }
+    }
+
+    @Test
+    public void historyWindow_searchesProfileUsageIndex() {
+        List<FeverTreatment> page =
+                HistoryPager.loadPageAfter(db, SyntheticHistory.PROFILE_ID, null);
+        HistoryPager.loadPageBefore(db, SyntheticHistory.PROFILE_ID, page.get(50));
+        HistoryPager.loadRange(db, SyntheticHistory.PROFILE_ID, page.get(10), page.get(90),
+                HistoryPager.PAGE_SIZE);
+        assertEquals(3, queries.size());
+        for (String query : new ArrayList<>(queries)) {
+            List<String> plan = explain(query);
+            assertSearches(plan, HISTORY, "INDEX " + PROFILE_USAGE_INDEX);
+            assertNoSorting(plan);
+        }
+        // Treatments before the window are counted with a range of the same index.
+        assertSearches(explain(TreatmentsContract.TreatmentsHistory.SQL_COUNT_BEFORE),
+                HISTORY, "INDEX " + PROFILE_USAGE_INDEX + " .*usage_time>");
+    }
+
+    @Test
+    public void loadNewestHistory_searchesProfileUsageIndex() {
+        dbHelper.loadNewestHistory(db, SyntheticHistory.PROFILE_ID,
+                LocalDateTime.now().minusHours(24), HistoryPager.PAGE_SIZE);
+        List<String> plan = explain(lastQuery());
+        assertSearches(plan, HISTORY, "INDEX " + PROFILE_USAGE_INDEX);
+        assertNoSorting(plan);
+        // Rows of the past day are counted with a range of the same index.
+        assertSearches(explain(TreatmentsContract.TreatmentsHistory.SQL_COUNT_SINCE),
+                HISTORY, "INDEX " + PROFILE_USAGE_INDEX + " .*usage_time>");
+    }
+
+    @Test
+    public void loadHistoryOfTreatment_searchesProfileTreatmentUsageIndex() {
+        dbHelper.loadHistoryOfTreatment(db, SyntheticHistory.PROFILE_ID,
+                SyntheticHistory.NAMES[0], HistoryPager.PAGE_SIZE);
+        List<String> plan = explain(lastQuery());
+        assertSearches(plan, HISTORY,
+                "INDEX " + PROFILE_TREATMENT_USAGE_INDEX + " .*treatment_id=");
+        assertNoSorting(plan);
+    }
+
+    @Test
+    public void countUsagesByTreatment_searchesUsageTimeRange() {
+        dbHelper.countUsagesByTreatment(db, SyntheticHistory.PROFILE_ID,
+                LocalDateTime.now().minusHours(24));
+        assertSearches(explain(lastQuery()), HISTORY,
+                "INDEX " + PROFILE_USAGE_INDEX + " .*usage_time>");
+    }
+
+    @Test
+    public void loadDailyUsage_searchesPrimaryKeyRange() {
+        LocalDate today = LocalDate.now();
+        dbHelper.loadDailyUsage(db, SyntheticHistory.PROFILE_ID, today.minusDays(30), today);
+        assertSearches(explain(lastQuery()), DAILY_USAGE, "PRIMARY KEY .*day>");
+    }
+
+    @Test
+    public void updateAndDeleteById_searchPrimaryKey() {
+        assertSearches(explain(TreatmentsContract.TreatmentsHistory.SQL_UPDATE),
+                HISTORY, PRIMARY_KEY);
+        assertSearches(explain(TreatmentsContract.TreatmentsHistory.SQL_DELETE),
+                HISTORY, PRIMARY_KEY);
+    }
+
+    @Test
+    public void clearHistory_searchesProfileIndex() {
+        assertSearches(explain(TreatmentsContract.TreatmentsHistory.SQL_DELETE_PROFILE),
+                HISTORY, "INDEX (" + PROFILE_USAGE_INDEX + "|" + PROFILE_TREATMENT_USAGE_INDEX
+                        + ") ");
+    }
+
+    @Test
+    public void dailyUsageTriggers_searchIndexes() {
+        List<String> statements = triggerStatements();
+        assertFalse("No trigger statements.", statements.isEmpty());
+        boolean historyRead = false;
+        boolean dailyUsageRead = false;
+        for (String statement : statements) {
+            List<String> plan = explain(statement);
+            historyRead |= readsThrough(plan, HISTORY,
+                    "INDEX " + PROFILE_TREATMENT_USAGE_INDEX + " .*usage_time>");
+            dailyUsageRead |= readsThrough(plan, DAILY_USAGE, "PRIMARY KEY");
+        }
+        assertTrue("Triggers don't read " + HISTORY, historyRead);
+        assertTrue("Triggers don't read " + DAILY_USAGE, dailyUsageRead);
+    }
+
+    // Returns statements of the triggers installed in the DB, references to the columns of the
+    // changed row are replaced with placeholders.
+    private List<String> triggerStatements() {
+        List<String> statements = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE type = 'trigger'", null);
+        try {
+            while (cursor.moveToNext()) {
+                String sql = cursor.getString(0);
+                String body = sql.substring(sql.indexOf(" BEGIN ") + " BEGIN ".length(),
+                        sql.lastIndexOf("END"));
+                for (String statement : body.split(";")) {
+                    if (!statement.trim().isEmpty()) {
+                        statements.add(ROW_COLUMN.matcher(statement.trim()).replaceAll("?"));
+                    }
+                }
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return statements;
+    }
+
+    // Returns the last query run through the cursor factory.
+    private String lastQuery() {
+        assertFalse("No query was run.", queries.isEmpty());
+        return queries.get(queries.size() - 1);
+    }
+
+    // Returns details of the query plan rows. Every placeholder is bound to 1.
+    private List<String> explain(String sql) {
+        int placeholders = sql.length() - sql.replace("?", "").length();
+        String[] args = new String[placeholders];
+        Arrays.fill(args, "1");
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return plan;
+    }
+
+    // Checks that every step that reads the table searches it with the expected access path
+    // and that the table is read.
+    private static void assertSearches(List<String> plan, String table, String access) {
+        assertTrue(table + " isn't read, plan: " + plan, readsThrough(plan, table, access));
+    }
+
+    // Checks that every step that reads the table searches it with the expected access path.
+    // Returns whether the table is read at all.
+    private static boolean readsThrough(List<String> plan, String table, String access) {
+        Pattern readsTable = Pattern.compile("^(SCAN|SEARCH) (TABLE )?" + table + "\\b.*");
+        Pattern searchesTable = Pattern.compile(
+                "^SEARCH (TABLE )?" + table + " (AS \\w+ )?USING (COVERING )?" + access + ".*");
+        boolean found = false;
+        for (String detail : plan) {
+            if (readsTable.matcher(detail).matches()) {
+                assertTrue("Expected search of " + table + " using " + access + ", plan: "
+                        + plan, searchesTable.matcher(detail).matches());
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    // Checks that the order comes from the index.
+    private static void assertNoSorting(List<String> plan) {
+        for (String detail : plan) {
+            assertFalse("Rows are sorted, plan: " + plan, detail.contains("TEMP B-TREE"));
+        }
+    }
+}
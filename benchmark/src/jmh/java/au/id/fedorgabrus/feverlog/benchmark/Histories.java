@@ -0,0 +1,51 @@
+package au.id.fedorgabrus.feverlog.benchmark;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import au.id.fedorgabrus.feverlog.models.AppSettings;
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+
+/**
+ * Generates histories and settings shared by the benchmarks.
+ */
+final class Histories {
+    /**
+     * Seconds between two generated treatments. Treatments between them are never equal to the
+     * generated ones.
+     */
+    static final int INTERVAL_SECONDS = 10 * 60;
+    private static final String[] NAMES = {"Paracetamol", "Ibuprofen", "Aspirin"};
+    private static final String DOSE_UNIT = "mg";
+
+    // Not instantiable.
+    private Histories() {
+    }
+
+    /**
+     * Sets the settings used by the model: four treatments a day, four hours apart.
+     */
+    static void applySettings() {
+        AppSettings.updateSettings(NAMES[0], 4, 4);
+        AppSettings.updateDoseSettings(500, DOSE_UNIT, 4000);
+    }
+
+    /**
+     * Generates history with treatments every {@link #INTERVAL_SECONDS} back from now, names
+     * and doses alternate.
+     *
+     * @param records number of treatments.
+     * @return treatments in descending time order with ids from 1.
+     */
+    static List<FeverTreatment> generate(int records) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        List<FeverTreatment> history = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            history.add(new FeverTreatment(i + 1, now.minusSeconds((long) i * INTERVAL_SECONDS),
+                    NAMES[i % NAMES.length], 200 + 100 * (i % 4), DOSE_UNIT));
+        }
+        return history;
+    }
+}
@@ -0,0 +1,89 @@
+package au.id.fedorgabrus.feverlog.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+import au.id.fedorgabrus.feverlog.models.TreatmentData;
+
+/**
+ * Measures heap retained by a loaded {@link TreatmentData} model per history record.
+ *
+ * <p>Every call loads the history into a new model and uses it once, so the derived values are
+ * calculated, then compares the used heap before and after with full collections. Only the
+ * retainedBytesPerRecord counter is meaningful, the time includes the collections. The
+ * measurement is approximate and stable for the larger histories.</p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class RetainedHeapBenchmark {
+    // Profile of the first model, every call uses the next one.
+    private static final long FIRST_PROFILE_ID = 2000;
+    // Number of collections before the used heap is read.
+    private static final int GC_COUNT = 4;
+
+    @Param({"100", "10000", "1000000"})
+    public int records;
+
+    private List<FeverTreatment> history;
+    private long nextProfileId = FIRST_PROFILE_ID;
+
+    /**
+     * Retained heap of the last call, reported with the results.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Heap {
+        public double retainedBytesPerRecord;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytesPerRecord = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Histories.applySettings();
+        history = Histories.generate(records);
+    }
+
+    @Benchmark
+    public TreatmentData loadFromHistory(Heap heap) {
+        // Creating a model evicts the least recently used one from the cache.
+        TreatmentData model = TreatmentData.getInstance(nextProfileId++);
+        long before = usedHeap();
+        model.loadFromHistory(history);
+        model.getTreatmentsNumber24h();
+        model.calculateTimeTillNextTreatmentAvailable();
+        long after = usedHeap();
+        heap.retainedBytesPerRecord = (double) (after - before) / records;
+        return model;
+    }
+
+    // Returns used heap after full collections.
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < GC_COUNT; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,107 @@
+package au.id.fedorgabrus.feverlog.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+import au.id.fedorgabrus.feverlog.models.TreatmentData;
+
+/**
+ * Benchmarks operations of the {@link TreatmentData} model on histories of different sizes.
+ *
+ * <p>Read operations run on a loaded model whose derived values are already calculated, as on
+ * the main screen. A treatment is added and deleted again in the middle of the history, the worst
+ * case for the shifted part of the columns, within one operation, so the history keeps its size
+ * without a per-invocation setup whose overhead would exceed the measured time.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreatmentDataBenchmark {
+    // Profile of the benchmarked model.
+    private static final long PROFILE_ID = 1000;
+    // Number of precomputed random indexes.
+    private static final int INDEX_COUNT = 1024;
+
+    /**
+     * Loaded model and its source history.
+     */
+    @State(Scope.Thread)
+    public static class Model {
+        @Param({"100", "10000", "1000000"})
+        public int records;
+
+        List<FeverTreatment> history;
+        TreatmentData model;
+        // Random indexes of the history, used in turn.
+        int[] indexes;
+        int nextIndex = 0;
+        // Treatment between two generated ones in the middle of the history.
+        FeverTreatment middleTreatment;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Histories.applySettings();
+            history = Histories.generate(records);
+            model = TreatmentData.getInstance(PROFILE_ID);
+            model.loadFromHistory(history);
+            model.getTreatmentsNumber24h();
+            model.calculateTimeTillNextTreatmentAvailable();
+            Random random = new Random(records);
+            indexes = new int[INDEX_COUNT];
+            for (int i = 0; i < INDEX_COUNT; i++) {
+                indexes[i] = random.nextInt(records);
+            }
+            FeverTreatment middle = history.get(records / 2);
+            middleTreatment = new FeverTreatment(records + 1,
+                    middle.getTreatmentTime().plusSeconds(Histories.INTERVAL_SECONDS / 2),
+                    middle.getTreatmentName(), middle.getDoseAmount(), middle.getDoseUnit());
+        }
+    }
+
+    @Benchmark
+    public int getTreatmentsNumber24h(Model state) {
+        return state.model.getTreatmentsNumber24h();
+    }
+
+    @Benchmark
+    public long calculateTimeTillNextTreatmentAvailable(Model state) {
+        return state.model.calculateTimeTillNextTreatmentAvailable();
+    }
+
+    @Benchmark
+    public FeverTreatment getTreatment(Model state) {
+        int index = state.indexes[state.nextIndex];
+        state.nextIndex = (state.nextIndex + 1) % INDEX_COUNT;
+        return state.model.getTreatment(index);
+    }
+
+    @Benchmark
+    public int addAndDeleteTreatment(Model state) {
+        state.model.addCustomTreatment(state.middleTreatment);
+        state.model.deleteTreatment(state.middleTreatment);
+        return state.model.getDataSize();
+    }
+
+    @Benchmark
+    public int loadFromHistory(Model state) {
+        state.model.loadFromHistory(state.history);
+        return state.model.getDataSize();
+    }
+}
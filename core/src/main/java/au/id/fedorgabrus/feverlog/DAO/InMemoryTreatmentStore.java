@@ -0,0 +1,261 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import au.id.fedorgabrus.feverlog.models.DailyUsage;
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+import au.id.fedorgabrus.feverlog.models.Profile;
+
+/**
+ * Treatment store that keeps everything in memory. Used to test and benchmark the logic on a
+ * plain JVM, behaves as the DB store.
+ *
+ * <p>History of every profile is kept sorted in the same order as the DB indexes: descending
+ * time, ties by ascending id. Stored and returned treatments are copies. Thread safe.</p>
+ */
+public class InMemoryTreatmentStore implements TreatmentStore {
+    // Name of the profile that exists in every store.
+    private static final String DEFAULT_PROFILE_NAME = "Default";
+    // Order of the history.
+    private static final Comparator<FeverTreatment> HISTORY_ORDER =
+            new Comparator<FeverTreatment>() {
+        @Override
+        public int compare(FeverTreatment o1, FeverTreatment o2) {
+            int result = o2.getTreatmentTime().compareTo(o1.getTreatmentTime());
+            return result != 0 ? result : Integer.compare(o1.getId(), o2.getId());
+        }
+    };
+
+    // Profile names by ids.
+    private final Map<Long, String> profiles = new HashMap<>();
+    // Histories by profile ids.
+    private final Map<Long, TreeSet<FeverTreatment>> histories = new HashMap<>();
+    // All treatments by ids.
+    private final Map<Integer, FeverTreatment> treatments = new HashMap<>();
+    private long nextProfileId = Profile.DEFAULT_ID + 1;
+    private int nextTreatmentId = 1;
+
+    /**
+     * Creates store with the default profile only.
+     */
+    public InMemoryTreatmentStore() {
+        profiles.put(Profile.DEFAULT_ID, DEFAULT_PROFILE_NAME);
+    }
+
+    @Override
+    public synchronized List<Profile> loadProfiles() {
+        List<Profile> result = new ArrayList<>(profiles.size());
+        for (Map.Entry<Long, String> profile : profiles.entrySet()) {
+            result.add(new Profile(profile.getKey(), profile.getValue()));
+        }
+        result.sort(new Comparator<Profile>() {
+            @Override
+            public int compare(Profile o1, Profile o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public synchronized long createProfile(String name) {
+        if (name == null || profiles.containsValue(name)) {
+            return -1;
+        }
+        long profileId = nextProfileId++;
+        profiles.put(profileId, name);
+        return profileId;
+    }
+
+    @Override
+    public synchronized List<FeverTreatment> loadHistory(long profileId) {
+        return copyNewest(getHistory(profileId), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized List<FeverTreatment> loadNewestHistory(long profileId,
+                                                               LocalDateTime since,
+                                                               int minRows) {
+        TreeSet<FeverTreatment> history = getHistory(profileId);
+        int recentRows = 0;
+        for (FeverTreatment treatment : history) {
+            if (treatment.getTreatmentTime().isBefore(since)) {
+                break;
+            }
+            recentRows++;
+        }
+        return copyNewest(history, Math.max(recentRows, minRows));
+    }
+
+    @Override
+    public synchronized List<FeverTreatment> loadHistoryOfTreatment(long profileId,
+                                                                    String treatmentName,
+                                                                    int limit) {
+        List<FeverTreatment> result = new ArrayList<>();
+        for (FeverTreatment treatment : getHistory(profileId)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (treatment.getTreatmentName().equals(treatmentName)) {
+                result.add(copy(treatment));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> countUsagesByTreatment(long profileId,
+                                                                    LocalDateTime since) {
+        final Map<String, Integer> counts = new TreeMap<>();
+        for (FeverTreatment treatment : getHistory(profileId)) {
+            if (treatment.getTreatmentTime().isBefore(since)) {
+                break;
+            }
+            Integer count = counts.get(treatment.getTreatmentName());
+            counts.put(treatment.getTreatmentName(), count == null ? 1 : count + 1);
+        }
+        List<String> names = new ArrayList<>(counts.keySet());
+        names.sort(new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return Integer.compare(counts.get(o2), counts.get(o1));
+            }
+        });
+        Map<String, Integer> usages = new LinkedHashMap<>();
+        for (String name : names) {
+            usages.put(name, counts.get(name));
+        }
+        return usages;
+    }
+
+    @Override
+    public synchronized List<DailyUsage> loadDailyUsage(long profileId, LocalDate from,
+                                                        LocalDate to) {
+        // Usages of the period by days and names, treatments come in descending time order.
+        TreeMap<LocalDate, TreeMap<String, List<FeverTreatment>>> days = new TreeMap<>();
+        for (FeverTreatment treatment : getHistory(profileId)) {
+            LocalDate day = treatment.getTreatmentTime().toLocalDate();
+            if (day.isBefore(from)) {
+                break;
+            }
+            if (day.isAfter(to)) {
+                continue;
+            }
+            TreeMap<String, List<FeverTreatment>> usages = days.get(day);
+            if (usages == null) {
+                usages = new TreeMap<>();
+                days.put(day, usages);
+            }
+            List<FeverTreatment> usagesOfName = usages.get(treatment.getTreatmentName());
+            if (usagesOfName == null) {
+                usagesOfName = new ArrayList<>();
+                usages.put(treatment.getTreatmentName(), usagesOfName);
+            }
+            usagesOfName.add(treatment);
+        }
+        List<DailyUsage> result = new ArrayList<>();
+        for (Map.Entry<LocalDate, TreeMap<String, List<FeverTreatment>>> day
+                : days.descendingMap().entrySet()) {
+            for (Map.Entry<String, List<FeverTreatment>> usages : day.getValue().entrySet()) {
+                List<FeverTreatment> usagesOfName = usages.getValue();
+                result.add(new DailyUsage(day.getKey(), usages.getKey(), usagesOfName.size(),
+                        usagesOfName.get(usagesOfName.size() - 1).getTreatmentTime(),
+                        usagesOfName.get(0).getTreatmentTime()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int saveTreatment(FeverTreatment treatment) {
+        if (treatment == null || !profiles.containsKey(treatment.getProfileId())) {
+            return -1;
+        }
+        FeverTreatment stored = copy(treatment);
+        stored.setId(nextTreatmentId++);
+        treatments.put(stored.getId(), stored);
+        getHistory(stored.getProfileId()).add(stored);
+        return stored.getId();
+    }
+
+    @Override
+    public synchronized int updateTreatment(FeverTreatment treatment) {
+        if (treatment == null) {
+            return 0;
+        }
+        FeverTreatment stored = treatments.get(treatment.getId());
+        if (stored == null) {
+            return 0;
+        }
+        // Profile of a treatment isn't changed by updates.
+        TreeSet<FeverTreatment> history = getHistory(stored.getProfileId());
+        history.remove(stored);
+        FeverTreatment updated = copy(treatment);
+        updated.setProfileId(stored.getProfileId());
+        treatments.put(updated.getId(), updated);
+        history.add(updated);
+        return 1;
+    }
+
+    @Override
+    public synchronized int deleteTreatment(FeverTreatment treatment) {
+        if (treatment == null) {
+            return 0;
+        }
+        FeverTreatment stored = treatments.remove(treatment.getId());
+        if (stored == null) {
+            return 0;
+        }
+        getHistory(stored.getProfileId()).remove(stored);
+        return 1;
+    }
+
+    @Override
+    public synchronized void clearHistory(long profileId) {
+        for (FeverTreatment treatment : getHistory(profileId)) {
+            treatments.remove(treatment.getId());
+        }
+        histories.remove(profileId);
+    }
+
+    // Returns history of the profile, creates it if needed.
+    private TreeSet<FeverTreatment> getHistory(long profileId) {
+        TreeSet<FeverTreatment> history = histories.get(profileId);
+        if (history == null) {
+            history = new TreeSet<>(HISTORY_ORDER);
+            histories.put(profileId, history);
+        }
+        return history;
+    }
+
+    // Copies the newest treatments of the history.
+    private static List<FeverTreatment> copyNewest(TreeSet<FeverTreatment> history, int count) {
+        List<FeverTreatment> result = new ArrayList<>(Math.min(count, history.size()));
+        for (FeverTreatment treatment : history) {
+            if (result.size() >= count) {
+                break;
+            }
+            result.add(copy(treatment));
+        }
+        return result;
+    }
+
+    // Copies treatment with the time truncated to the precision of the store.
+    private static FeverTreatment copy(FeverTreatment treatment) {
+        FeverTreatment copy = new FeverTreatment(treatment.getId(),
+                treatment.getTreatmentTime().truncatedTo(ChronoUnit.MILLIS),
+                treatment.getTreatmentName(), treatment.getDoseAmount(), treatment.getDoseUnit());
+        copy.setProfileId(treatment.getProfileId());
+        return copy;
+    }
+}
@@ -0,0 +1,113 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import au.id.fedorgabrus.feverlog.models.DailyUsage;
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+import au.id.fedorgabrus.feverlog.models.Profile;
+
+/**
+ * Storage of the profiles and their treatment histories.
+ *
+ * <p>Methods are blocking and shouldn't be called on the main thread. Treatment times are stored
+ * with a precision of one millisecond, treatments of a history are returned in descending time
+ * order.</p>
+ */
+public interface TreatmentStore {
+    /**
+     * Loads all profiles.
+     *
+     * @return profiles ordered by name, the default profile is always present.
+     */
+    List<Profile> loadProfiles();
+
+    /**
+     * Adds new profile.
+     *
+     * @param name name of the profile.
+     * @return id of the new profile, or -1 if the name is taken or an error occurred.
+     */
+    long createProfile(String name);
+
+    /**
+     * Loads the whole history of the profile.
+     *
+     * @param profileId id of the profile.
+     * @return treatments in descending time order, empty list if there are none.
+     */
+    List<FeverTreatment> loadHistory(long profileId);
+
+    /**
+     * Loads the newest treatments of the profile: all treatments since the provided time, but
+     * not less than the provided number of rows.
+     *
+     * @param profileId id of the profile.
+     * @param since local date and time, treatments since it are loaded.
+     * @param minRows minimum number of rows to load if the history has them.
+     * @return treatments in descending time order.
+     */
+    List<FeverTreatment> loadNewestHistory(long profileId, LocalDateTime since, int minRows);
+
+    /**
+     * Loads the newest usages of one treatment of the profile.
+     *
+     * @param profileId id of the profile.
+     * @param treatmentName name of the treatment.
+     * @param limit maximum number of treatments to load.
+     * @return treatments in descending time order, empty list if the treatment was never used.
+     */
+    List<FeverTreatment> loadHistoryOfTreatment(long profileId, String treatmentName, int limit);
+
+    /**
+     * Counts usages of every treatment of the profile since the provided time.
+     *
+     * @param profileId id of the profile.
+     * @param since local date and time to count from, inclusive.
+     * @return numbers of usages by treatment names, the most used first.
+     */
+    Map<String, Integer> countUsagesByTreatment(long profileId, LocalDateTime since);
+
+    /**
+     * Loads daily summaries of the usages of the profile for the period.
+     *
+     * @param profileId id of the profile.
+     * @param from first day of the period.
+     * @param to last day of the period, inclusive.
+     * @return summaries by day in descending order, by treatment name within a day.
+     */
+    List<DailyUsage> loadDailyUsage(long profileId, LocalDate from, LocalDate to);
+
+    /**
+     * Adds treatment to the history of its profile.
+     *
+     * @param treatment treatment to save.
+     * @return id of the new treatment, or -1 if an error occurred.
+     */
+    int saveTreatment(FeverTreatment treatment);
+
+    /**
+     * Updates time, name and dose of the treatment with the same id.
+     *
+     * @param treatment new data.
+     * @return the number of treatments updated (1 if successful).
+     */
+    int updateTreatment(FeverTreatment treatment);
+
+    /**
+     * Deletes treatment with the same id.
+     *
+     * @param treatment treatment to delete.
+     * @return the number of treatments deleted (1 if successful).
+     */
+    int deleteTreatment(FeverTreatment treatment);
+
+    /**
+     * Deletes the whole history of the profile.
+     *
+     * @param profileId id of the profile.
+     */
+    void clearHistory(long profileId);
+}
@@ -0,0 +1,151 @@
+package au.id.fedorgabrus.feverlog.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of operation latencies in nanoseconds.
+ *
+ * <p>Buckets are log-linear: every power of two is split into {@value #SUB_BUCKET_COUNT} equal
+ * buckets, so a value is known within 1/{@value #SUB_BUCKET_COUNT} of itself. Values up to
+ * 2^{@value #MAX_EXPONENT} ns, about 36 minutes, are kept apart, longer ones share the last
+ * bucket. Recording is a few bit operations, an atomic increment of the bucket and, for a new
+ * largest value, a compare-and-set loop on the maximum that retries only while other threads
+ * raise it. It doesn't allocate or lock and can be called from any thread. Readers see counts
+ * that may be a few recordings apart.</p>
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 41;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+    private static final int BUCKET_COUNT = bucketOf(MAX_VALUE) + 1;
+
+    private final String name;
+    // Number of values by bucket.
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    // Largest recorded value.
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructor. Histograms that should be shown with the metrics are created through
+     * {@link Metrics#histogram(String)}.
+     *
+     * @param name name of the measured operation.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Getter for the name of the operation.
+     *
+     * @return name of the measured operation.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records latency of an operation.
+     *
+     * @param nanos latency in nanoseconds, negative values are recorded as 0.
+     */
+    public void recordNanos(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketOf(value));
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Records latency of an operation that started at the provided time.
+     *
+     * @param startNanos value of {@link System#nanoTime()} at the start of the operation.
+     */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns number of recorded values.
+     *
+     * @return number of recorded values.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns largest recorded value.
+     *
+     * @return latency in nanoseconds, 0 if nothing was recorded.
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Returns value below or equal to which the provided share of the recorded values are.
+     *
+     * @param percentile share of the values, from 0 to 100.
+     * @return highest value of the bucket that holds the percentile, in nanoseconds, or 0 if
+     *      nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Drops all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    // Returns bucket of a value from 0 to MAX_VALUE.
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT
+                + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    // Returns the highest value that falls into the bucket.
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
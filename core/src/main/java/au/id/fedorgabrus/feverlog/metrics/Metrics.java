@@ -0,0 +1,99 @@
+package au.id.fedorgabrus.feverlog.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registry of the latency histograms of the app.
+ *
+ * <p>Instrumented classes create their histograms once, in static fields, and record into them
+ * directly. Histograms are kept for the life of the process and can be shown as a report with
+ * the percentiles of every operation.</p>
+ */
+public final class Metrics {
+    // Percentiles shown in the report.
+    private static final double[] PERCENTILES = {50, 90, 99};
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    // Histograms by names, in registration order.
+    private static final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+    // Not instantiable.
+    private Metrics() {
+    }
+
+    /**
+     * Returns histogram of the operation, registers it on the first call.
+     *
+     * @param name name of the operation, such as "db.loadHistory".
+     * @return histogram of the operation.
+     */
+    public static synchronized LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(name);
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns registered histograms.
+     *
+     * @return histograms ordered by name.
+     */
+    public static synchronized List<LatencyHistogram> getHistograms() {
+        List<LatencyHistogram> result = new ArrayList<>(histograms.values());
+        Collections.sort(result, new Comparator<LatencyHistogram>() {
+            @Override
+            public int compare(LatencyHistogram o1, LatencyHistogram o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Drops values of all histograms.
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : getHistograms()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Formats the histograms as a plain text table: an operation per line with the number of
+     * calls, the percentiles and the maximum in milliseconds. Operations that weren't called are
+     * skipped.
+     *
+     * @return report text.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%-32s %8s", "operation", "count"));
+        for (double percentile : PERCENTILES) {
+            report.append(String.format(Locale.ROOT, " %10s", "p" + (int) percentile));
+        }
+        report.append(String.format(Locale.ROOT, " %10s%n", "max"));
+        for (LatencyHistogram histogram : getHistograms()) {
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            report.append(String.format(Locale.ROOT, "%-32s %8d", histogram.getName(), count));
+            for (double percentile : PERCENTILES) {
+                report.append(String.format(Locale.ROOT, " %10.3f",
+                        histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI));
+            }
+            report.append(String.format(Locale.ROOT, " %10.3f%n",
+                    histogram.getMaxNanos() / NANOS_PER_MILLI));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,297 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.util.logging.Logger;
+
+/**
+ * Contains application settings.
+ * <p>Treatment settings belong to the active profile, every profile keeps them in its own
+ * settings file. Active profile is kept in the file of the default profile. Files are accessed
+ * through a {@link SettingsStore}.</p>
+ * <p>All fields and methods are static, can't be instantiated.</p>
+ */
+public final class AppSettings {
+    private static final Logger LOG = Logger.getLogger("AppSettings");
+
+    // Private constructor to prevent instantiation.
+    private AppSettings() {}
+
+    /**
+     * Key for the settings file. Holds settings of the default profile and
+     * the active profile.
+     */
+    public static final String SETTINGS_FILE_KEY =
+            "au.id.fedorgabrus.feverjournal.models.SETTINGS_FILE_KEY";
+    /**
+     * Key for the id of the active profile in settings.
+     */
+    public static final String SETTINGS_ACTIVE_PROFILE_KEY = "ACTIVE_PROFILE";
+    /**
+     * Key for a treatment name in settings.
+     */
+    public static final String SETTINGS_TREATMENT_NAME_KEY = "TREATMENT_NAME";
+    /**
+     * Key for the maximum daily usage in settings.
+     */
+    public static final String SETTINGS_MAX_DAILY_USAGE_KEY = "MAX_DAILY_USAGE";
+    /**
+     * Key for the minimum interval between treatments in settings.
+     */
+    public static final String SETTINGS_MIN_TREATMENT_INTERVAL_KEY = "MIN_TREATMENT_INTERVAL";
+    /**
+     * Key for the dose amount of new treatments in settings. Optional.
+     */
+    public static final String SETTINGS_DOSE_AMOUNT_KEY = "DOSE_AMOUNT";
+    /**
+     * Key for the dose unit of new treatments in settings. Optional.
+     */
+    public static final String SETTINGS_DOSE_UNIT_KEY = "DOSE_UNIT";
+    /**
+     * Key for the maximum dose amount per 24 hours in settings. Optional.
+     */
+    public static final String SETTINGS_MAX_DAILY_AMOUNT_KEY = "MAX_DAILY_AMOUNT";
+
+    // Profile whose settings are loaded.
+    private static long activeProfileId = Profile.DEFAULT_ID;
+    // Name for a new treatments from settings. Should not be null.
+    private static String defaultName = null;
+    // Maximum number of treatments allowed per 24 hours. Should be greater then 0.
+    private static int maxDailyUsage = 0;
+    // Minimum interval between treatments in hours. Should be greater then 0.
+    private static int minTreatmentInterval = 0;
+    // Dose amount of new treatments, FeverTreatment.NO_DOSE_AMOUNT if not recorded.
+    private static double defaultDoseAmount = FeverTreatment.NO_DOSE_AMOUNT;
+    // Dose unit of new treatments, null if not recorded.
+    private static String defaultDoseUnit = null;
+    // Maximum dose amount allowed per 24 hours, MedicationRule.NO_LIMIT if not limited.
+    private static double maxDailyAmount = MedicationRule.NO_LIMIT;
+
+    /**
+     * Getter for the active profile.
+     *
+     * @return id of the active profile.
+     */
+    public static long getActiveProfileId() {
+        return activeProfileId;
+    }
+
+    /**
+     * Returns name of the settings file with the treatment settings of the profile.
+     * Default profile uses the file that existed before profiles were added.
+     *
+     * @param profileId id of the profile.
+     * @return settings file name.
+     */
+    public static String getSettingsFileKey(long profileId) {
+        return profileId == Profile.DEFAULT_ID
+                ? SETTINGS_FILE_KEY : SETTINGS_FILE_KEY + "." + profileId;
+    }
+
+    /**
+     * Returns name of the settings file with the treatment settings of the active
+     * profile.
+     *
+     * @return settings file name.
+     */
+    public static String getSettingsFileKey() {
+        return getSettingsFileKey(activeProfileId);
+    }
+
+    /**
+     * Loads active profile id from the settings. Treatment settings of the profile
+     * should be loaded after it.
+     *
+     * @param settingsStore settings of the {@link #SETTINGS_FILE_KEY} file.
+     */
+    public static void loadActiveProfile(SettingsStore settingsStore) {
+        if (settingsStore == null) {
+            LOG.severe("loadActiveProfile(): Provided settings store is null");
+            return;
+        }
+        activeProfileId = settingsStore.getLong(SETTINGS_ACTIVE_PROFILE_KEY,
+                Profile.DEFAULT_ID);
+    }
+
+    /**
+     * Makes the profile active and saves it into the settings. Treatment settings of
+     * the profile should be loaded after it.
+     *
+     * @param settingsStore settings of the {@link #SETTINGS_FILE_KEY} file.
+     * @param profileId id of the profile.
+     */
+    public static void saveActiveProfile(SettingsStore settingsStore, long profileId) {
+        activeProfileId = profileId;
+        if (settingsStore == null) {
+            LOG.severe("saveActiveProfile(): Provided settings store is null");
+            return;
+        }
+        settingsStore.edit().putLong(SETTINGS_ACTIVE_PROFILE_KEY, profileId).apply();
+    }
+
+    /**
+     * Getter for the treatment name from the settings.
+     *
+     * @return treatment name from settings.
+     */
+    public static String getDefaultName() {
+        return defaultName;
+    }
+
+    /**
+     * Getter for maximum number of treatments per 24 hour.
+     *
+     * @return maximum number of treatments per 24 hour.
+     */
+    public static int getMaxDailyUsage() {
+        return maxDailyUsage;
+    }
+
+    /**
+     * Getter for the minimum interval between treatments in hours.
+     *
+     * @return minimum interval between treatments in hours.
+     */
+    public static int getMinTreatmentInterval() {
+        return minTreatmentInterval;
+    }
+
+    /**
+     * Getter for the dose amount of new treatments.
+     *
+     * @return dose amount, {@link FeverTreatment#NO_DOSE_AMOUNT} if not recorded.
+     */
+    public static double getDefaultDoseAmount() {
+        return defaultDoseAmount;
+    }
+
+    /**
+     * Getter for the dose unit of new treatments.
+     *
+     * @return dose unit, null if not recorded.
+     */
+    public static String getDefaultDoseUnit() {
+        return defaultDoseUnit;
+    }
+
+    /**
+     * Getter for the maximum dose amount per 24 hours.
+     *
+     * @return maximum dose amount, {@link MedicationRule#NO_LIMIT} if not limited.
+     */
+    public static double getMaxDailyAmount() {
+        return maxDailyAmount;
+    }
+
+    /**
+     * Updates settings stored in the AppSettings class. Doesn't persist any data.
+     *
+     * @param defaultName new treatment name.
+     * @param minTreatmentInterval  new min Treatment Interval.
+     * @param maxDailyUsage new max daily usage.
+     * @throws IllegalArgumentException if defaultName equals null, or either minTreatmentInterval
+     *      or maxDailyUsage less or equal to zero.
+     */
+    public static void updateSettings(String defaultName, int minTreatmentInterval,
+                                      int maxDailyUsage) throws IllegalArgumentException {
+        if (defaultName == null || minTreatmentInterval <= 0 || maxDailyUsage <= 0) {
+            throw new IllegalArgumentException();
+        }
+        AppSettings.defaultName = defaultName;
+        AppSettings.minTreatmentInterval = minTreatmentInterval;
+        AppSettings.maxDailyUsage = maxDailyUsage;
+    }
+
+    /**
+     * Updates dose settings stored in the AppSettings class. Doesn't persist any data.
+     *
+     * @param defaultDoseAmount new dose amount, {@link FeverTreatment#NO_DOSE_AMOUNT} to not
+     *                          record it.
+     * @param defaultDoseUnit new dose unit, null to not record it.
+     * @param maxDailyAmount new maximum dose amount per 24 hours, {@link MedicationRule#NO_LIMIT}
+     *                       to not limit it.
+     * @throws IllegalArgumentException if either amount is negative.
+     */
+    public static void updateDoseSettings(double defaultDoseAmount, String defaultDoseUnit,
+                                          double maxDailyAmount) throws IllegalArgumentException {
+        if (!(defaultDoseAmount >= 0) || !(maxDailyAmount >= 0)) {
+            throw new IllegalArgumentException();
+        }
+        AppSettings.defaultDoseAmount = defaultDoseAmount;
+        AppSettings.defaultDoseUnit = defaultDoseUnit;
+        AppSettings.maxDailyAmount = maxDailyAmount;
+    }
+
+    /**
+     * Loads settings from a settings store. Settings loaded before are dropped, even if the
+     * new ones are missing.
+     * <p>Name shouldn't be null, interval and daily usage should be greater than 0.</p>
+     *
+     * @param settingsStore data to load.
+     *
+     * @return true if data is present, false otherwise.
+     */
+    public static boolean loadSettings(SettingsStore settingsStore) {
+        // Settings of another profile shouldn't be applied to this one.
+        resetSettings();
+        // Returns false if any of settings is not in the store.
+        if (settingsStore == null || !settingsStore.contains(SETTINGS_TREATMENT_NAME_KEY)
+                || !settingsStore.contains(SETTINGS_MAX_DAILY_USAGE_KEY)
+                || !settingsStore.contains(SETTINGS_MIN_TREATMENT_INTERVAL_KEY)) {
+            LOG.info("loadSettings(): Settings store has no settings data.");
+            return false;
+        }
+        // Retrieves data from the store.
+        defaultName = settingsStore.getString(SETTINGS_TREATMENT_NAME_KEY, null);
+        minTreatmentInterval = settingsStore.getInt(SETTINGS_MIN_TREATMENT_INTERVAL_KEY,
+                0);
+        maxDailyUsage = settingsStore.getInt(SETTINGS_MAX_DAILY_USAGE_KEY, 0);
+        // Dose settings are optional, they didn't exist in the earlier versions. Amounts are
+        // stored as bits of the double values.
+        defaultDoseAmount = Math.max(0, getDouble(settingsStore, SETTINGS_DOSE_AMOUNT_KEY,
+                FeverTreatment.NO_DOSE_AMOUNT));
+        defaultDoseUnit = settingsStore.getString(SETTINGS_DOSE_UNIT_KEY, null);
+        maxDailyAmount = Math.max(0, getDouble(settingsStore, SETTINGS_MAX_DAILY_AMOUNT_KEY,
+                MedicationRule.NO_LIMIT));
+        // Validates retrieved data. Name shouldn't be null, interval and daily usage should
+        // be greater than 0.
+        return (defaultName != null) && (minTreatmentInterval > 0) && (maxDailyUsage > 0);
+    }
+
+    /**
+     * Saves treatment settings into the settings store.
+     *
+     * @param settingsStore store that will hold the data.
+     */
+    public static void saveSettings(SettingsStore settingsStore) {
+        if (settingsStore == null) {
+            LOG.severe("saveSettings(): Provided settings store is null");
+            return;
+        }
+        SettingsStore.Editor editor = settingsStore.edit();
+        editor.putString(SETTINGS_TREATMENT_NAME_KEY, defaultName);
+        editor.putInt(SETTINGS_MIN_TREATMENT_INTERVAL_KEY, minTreatmentInterval);
+        editor.putInt(SETTINGS_MAX_DAILY_USAGE_KEY, maxDailyUsage);
+        editor.putLong(SETTINGS_DOSE_AMOUNT_KEY, Double.doubleToLongBits(defaultDoseAmount));
+        editor.putString(SETTINGS_DOSE_UNIT_KEY, defaultDoseUnit);
+        editor.putLong(SETTINGS_MAX_DAILY_AMOUNT_KEY, Double.doubleToLongBits(maxDailyAmount));
+        editor.apply();
+    }
+
+    // Resets treatment settings to the values of the missing settings.
+    private static void resetSettings() {
+        defaultName = null;
+        minTreatmentInterval = 0;
+        maxDailyUsage = 0;
+        defaultDoseAmount = FeverTreatment.NO_DOSE_AMOUNT;
+        defaultDoseUnit = null;
+        maxDailyAmount = MedicationRule.NO_LIMIT;
+    }
+
+    // Reads double value stored as its bits.
+    private static double getDouble(SettingsStore settingsStore, String key,
+                                    double defaultValue) {
+        if (!settingsStore.contains(key)) {
+            return defaultValue;
+        }
+        return Double.longBitsToDouble(settingsStore.getLong(key, 0));
+    }
+}
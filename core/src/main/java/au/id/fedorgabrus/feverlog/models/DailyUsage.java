@@ -0,0 +1,83 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Summary of the usages of one treatment during one day.
+ */
+public final class DailyUsage {
+    // Day of the usages.
+    private final LocalDate day;
+    // Name of the treatment.
+    private final String treatmentName;
+    // Number of usages during the day.
+    private final int usageCount;
+    // Time of the first usage during the day.
+    private final LocalDateTime firstUsageTime;
+    // Time of the last usage during the day.
+    private final LocalDateTime lastUsageTime;
+
+    /**
+     * All args constructor.
+     *
+     * @param day day of the usages.
+     * @param treatmentName name of the treatment.
+     * @param usageCount number of usages during the day.
+     * @param firstUsageTime time of the first usage during the day.
+     * @param lastUsageTime time of the last usage during the day.
+     */
+    public DailyUsage(LocalDate day, String treatmentName, int usageCount,
+                      LocalDateTime firstUsageTime, LocalDateTime lastUsageTime) {
+        this.day = day;
+        this.treatmentName = treatmentName;
+        this.usageCount = usageCount;
+        this.firstUsageTime = firstUsageTime;
+        this.lastUsageTime = lastUsageTime;
+    }
+
+    /**
+     * Getter for the day.
+     *
+     * @return day of the usages.
+     */
+    public LocalDate getDay() {
+        return day;
+    }
+
+    /**
+     * Getter for the treatment name.
+     *
+     * @return name of the treatment.
+     */
+    public String getTreatmentName() {
+        return treatmentName;
+    }
+
+    /**
+     * Getter for the number of usages.
+     *
+     * @return number of usages during the day.
+     */
+    public int getUsageCount() {
+        return usageCount;
+    }
+
+    /**
+     * Getter for the first usage time.
+     *
+     * @return time of the first usage during the day.
+     */
+    public LocalDateTime getFirstUsageTime() {
+        return firstUsageTime;
+    }
+
+    /**
+     * Getter for the last usage time.
+     *
+     * @return time of the last usage during the day.
+     */
+    public LocalDateTime getLastUsageTime() {
+        return lastUsageTime;
+    }
+}
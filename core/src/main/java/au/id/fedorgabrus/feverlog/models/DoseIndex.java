@@ -0,0 +1,200 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.util.Arrays;
+
+/**
+ * Sorted times and amounts of the doses of one medication.
+ *
+ * <p>Doses are kept in ascending time order in arrays, so the latest dose and the n-th latest dose
+ * are found in O(1). Positions of added and removed doses are found with a binary search. Adding
+ * the newest dose is amortized O(1), other changes shift the newer doses.</p>
+ *
+ * <p>Prefix sums of the amounts answer the amount taken within a window and the time when it
+ * drops to a limit with a binary search, O(log n). Sums are recalculated lazily from the oldest
+ * changed dose, so appending the newest doses keeps them valid.</p>
+ */
+class DoseIndex {
+    // Initial capacity of the arrays.
+    private static final int DEFAULT_CAPACITY = 8;
+
+    // Dose times in seconds from the epoch at UTC offset, ascending.
+    private long[] times = new long[DEFAULT_CAPACITY];
+    // Dose amounts in the order of times.
+    private double[] amounts = new double[DEFAULT_CAPACITY];
+    // Sum of the amounts of the doses before the index, one element longer than the doses.
+    private double[] prefixSums = new double[DEFAULT_CAPACITY + 1];
+    // Number of doses.
+    private int size;
+    // Number of prefix sums that are up to date, at least 1.
+    private int validSums = 1;
+
+    /**
+     * Returns number of doses.
+     *
+     * @return number of doses.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns time of the dose.
+     *
+     * @param index index of the dose, the oldest one has index 0.
+     * @return time in seconds from the epoch at UTC offset.
+     */
+    long get(int index) {
+        return times[index];
+    }
+
+    /**
+     * Returns time of the latest dose. Index shouldn't be empty.
+     *
+     * @return time in seconds from the epoch at UTC offset.
+     */
+    long getLatest() {
+        return times[size - 1];
+    }
+
+    /**
+     * Adds dose without an amount.
+     *
+     * @param time time in seconds from the epoch at UTC offset.
+     */
+    void add(long time) {
+        add(time, FeverTreatment.NO_DOSE_AMOUNT);
+    }
+
+    /**
+     * Adds dose.
+     *
+     * @param time time in seconds from the epoch at UTC offset.
+     * @param amount amount of the dose, not negative.
+     */
+    void add(long time, double amount) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            amounts = Arrays.copyOf(amounts, size * 2);
+            prefixSums = Arrays.copyOf(prefixSums, size * 2 + 1);
+        }
+        int index = size;
+        // Doses are usually added in time order.
+        if (size > 0 && times[size - 1] > time) {
+            index = upperBound(time);
+            System.arraycopy(times, index, times, index + 1, size - index);
+            System.arraycopy(amounts, index, amounts, index + 1, size - index);
+        }
+        times[index] = time;
+        amounts[index] = amount;
+        size++;
+        validSums = Math.min(validSums, index + 1);
+    }
+
+    /**
+     * Removes one dose without an amount with the provided time.
+     *
+     * @param time time in seconds from the epoch at UTC offset.
+     * @return true if the dose was found and removed.
+     */
+    boolean remove(long time) {
+        return remove(time, FeverTreatment.NO_DOSE_AMOUNT);
+    }
+
+    /**
+     * Removes one dose with the provided time and amount.
+     *
+     * @param time time in seconds from the epoch at UTC offset.
+     * @param amount amount of the dose.
+     * @return true if the dose was found and removed.
+     */
+    boolean remove(long time, double amount) {
+        int index = upperBound(time) - 1;
+        while (index >= 0 && times[index] == time && amounts[index] != amount) {
+            index--;
+        }
+        if (index < 0 || times[index] != time) {
+            return false;
+        }
+        System.arraycopy(times, index + 1, times, index, size - index - 1);
+        System.arraycopy(amounts, index + 1, amounts, index, size - index - 1);
+        size--;
+        validSums = Math.min(validSums, index + 1);
+        return true;
+    }
+
+    /**
+     * Removes all doses.
+     */
+    void clear() {
+        size = 0;
+        validSums = 1;
+    }
+
+    /**
+     * Returns total amount of the doses taken within the window.
+     *
+     * @param from start of the window, exclusive.
+     * @param to end of the window, inclusive.
+     * @return sum of the amounts of the doses in the window.
+     */
+    double getAmountBetween(long from, long to) {
+        if (to <= from) {
+            return 0;
+        }
+        updatePrefixSums();
+        return prefixSums[upperBound(to)] - prefixSums[upperBound(from)];
+    }
+
+    /**
+     * Finds the earliest window start such that the doses after it amount to at most the limit.
+     *
+     * @param limit maximum amount, not negative.
+     * @return time of the dose that has to leave the window, or Long.MIN_VALUE if the doses are
+     *      already within the limit.
+     */
+    long getWindowStartWithin(double limit) {
+        updatePrefixSums();
+        double excess = prefixSums[size] - limit;
+        if (excess <= 0) {
+            return Long.MIN_VALUE;
+        }
+        // Finds the least number of the oldest doses whose amounts cover the excess.
+        int low = 1;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (prefixSums[middle] >= excess) {
+                high = middle;
+            }
+            else {
+                low = middle + 1;
+            }
+        }
+        // Doses at the same time leave the window together.
+        return times[low - 1];
+    }
+
+    // Recalculates prefix sums that are out of date.
+    private void updatePrefixSums() {
+        for (int i = validSums; i <= size; i++) {
+            prefixSums[i] = prefixSums[i - 1] + amounts[i - 1];
+        }
+        validSums = size + 1;
+    }
+
+    // Finds index of the first dose later than the time.
+    private int upperBound(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[middle] <= time) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
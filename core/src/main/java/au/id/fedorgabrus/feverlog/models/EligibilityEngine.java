@@ -0,0 +1,257 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds when the next dose of a medication can be taken and how much of it was taken recently.
+ *
+ * <p>Applies three kinds of rules: a general rule to the doses of all medications together, a
+ * rule of the medication to its own doses, and spacing rules that require a dose of one
+ * medication to be taken at least some time after the latest dose of another one. Medications
+ * are identified by their names. Times are local dates and times in seconds from the epoch at UTC
+ * offset.</p>
+ *
+ * <p>Doses of every medication are kept in their own sorted {@link DoseIndex}, so a rule needs
+ * only the latest and the n-th latest dose, and the next time of a medication is found in O(1)
+ * plus O(1) per its spacing rule. Amount limits and amounts taken within a window are answered
+ * from the prefix sums of the indexes in O(log n). Changes of the doses cost a binary search plus
+ * a shift of the newer doses of the same medication.</p>
+ */
+public final class EligibilityEngine {
+    // Doses of all medications.
+    private final DoseIndex allDoses = new DoseIndex();
+    // Doses by medication.
+    private final Map<String, DoseIndex> doses = new HashMap<>();
+    // Rules by medication.
+    private final Map<String, MedicationRule> rules = new HashMap<>();
+    // Spacing rules by medication whose doses they restrict.
+    private final Map<String, List<Spacing>> spacings = new HashMap<>();
+    // Rule for the doses of all medications together, null if there is no such rule.
+    private MedicationRule generalRule = null;
+
+    /**
+     * Sets rule that applies to the doses of all medications together.
+     *
+     * @param rule general rule, null to remove it.
+     */
+    public void setGeneralRule(MedicationRule rule) {
+        generalRule = rule;
+    }
+
+    /**
+     * Returns rule that applies to the doses of all medications together.
+     *
+     * @return general rule, null if there is no such rule.
+     */
+    public MedicationRule getGeneralRule() {
+        return generalRule;
+    }
+
+    /**
+     * Sets rule of the medication, replacing the previous one.
+     *
+     * @param medication name of the medication.
+     * @param rule rule that applies to the doses of the medication, null to remove it.
+     */
+    public void setRule(String medication, MedicationRule rule) {
+        if (rule == null) {
+            rules.remove(medication);
+        }
+        else {
+            rules.put(medication, rule);
+        }
+    }
+
+    /**
+     * Adds spacing rule: a dose of one medication can be taken only after some time since the
+     * latest dose of another one. Rule is one-directional, spacing in both directions needs two
+     * rules.
+     *
+     * @param before name of the medication taken earlier.
+     * @param after name of the medication whose doses are restricted.
+     * @param spacingSeconds minimum time between the doses in seconds.
+     * @throws IllegalArgumentException if spacing is negative.
+     */
+    public void addSpacingRule(String before, String after, long spacingSeconds)
+            throws IllegalArgumentException {
+        if (spacingSeconds < 0) {
+            throw new IllegalArgumentException();
+        }
+        List<Spacing> list = spacings.get(after);
+        if (list == null) {
+            list = new ArrayList<>();
+            spacings.put(after, list);
+        }
+        list.add(new Spacing(before, spacingSeconds));
+    }
+
+    /**
+     * Removes all rules.
+     */
+    public void clearRules() {
+        generalRule = null;
+        rules.clear();
+        spacings.clear();
+    }
+
+    /**
+     * Adds taken dose without a recorded amount.
+     *
+     * @param medication name of the medication.
+     * @param time time of the dose.
+     */
+    public void addDose(String medication, long time) {
+        addDose(medication, time, FeverTreatment.NO_DOSE_AMOUNT);
+    }
+
+    /**
+     * Adds taken dose.
+     *
+     * @param medication name of the medication.
+     * @param time time of the dose.
+     * @param amount amount of the dose, not negative.
+     */
+    public void addDose(String medication, long time, double amount) {
+        DoseIndex index = doses.get(medication);
+        if (index == null) {
+            index = new DoseIndex();
+            doses.put(medication, index);
+        }
+        index.add(time, amount);
+        allDoses.add(time, amount);
+    }
+
+    /**
+     * Removes one dose of the medication without a recorded amount taken at the provided time.
+     *
+     * @param medication name of the medication.
+     * @param time time of the dose.
+     * @return true if the dose was found and removed.
+     */
+    public boolean removeDose(String medication, long time) {
+        return removeDose(medication, time, FeverTreatment.NO_DOSE_AMOUNT);
+    }
+
+    /**
+     * Removes one dose of the medication taken at the provided time.
+     *
+     * @param medication name of the medication.
+     * @param time time of the dose.
+     * @param amount amount of the dose.
+     * @return true if the dose was found and removed.
+     */
+    public boolean removeDose(String medication, long time, double amount) {
+        DoseIndex index = doses.get(medication);
+        if (index == null || !index.remove(time, amount)) {
+            return false;
+        }
+        if (index.size() == 0) {
+            doses.remove(medication);
+        }
+        allDoses.remove(time, amount);
+        return true;
+    }
+
+    /**
+     * Removes all doses. Rules are kept.
+     */
+    public void clearDoses() {
+        doses.clear();
+        allDoses.clear();
+    }
+
+    /**
+     * Returns total amount of the doses taken within the window that ends now.
+     *
+     * @param medication name of the medication, null for all medications together.
+     * @param windowSeconds length of the window in seconds.
+     * @param now current time, end of the window.
+     * @return sum of the amounts of the doses.
+     */
+    public double getAmountInWindow(String medication, long windowSeconds, long now) {
+        DoseIndex index = medication == null ? allDoses : doses.get(medication);
+        if (index == null) {
+            return 0;
+        }
+        return index.getAmountBetween(now - windowSeconds, now);
+    }
+
+    /**
+     * Finds the earliest time when the next dose of the medication without a recorded amount can
+     * be taken.
+     *
+     * @param medication name of the medication.
+     * @param now current time.
+     * @return time of the next dose, equals to now if the dose can be taken now.
+     */
+    public long getNextEligibleTime(String medication, long now) {
+        return getNextEligibleTime(medication, FeverTreatment.NO_DOSE_AMOUNT, now);
+    }
+
+    /**
+     * Finds the earliest time when the next dose of the medication can be taken.
+     *
+     * @param medication name of the medication.
+     * @param amount amount of the next dose.
+     * @param now current time.
+     * @return time of the next dose, equals to now if the dose can be taken now.
+     */
+    public long getNextEligibleTime(String medication, double amount, long now) {
+        long next = now;
+        if (generalRule != null) {
+            next = Math.max(next, generalRule.getEarliestDoseTime(allDoses, amount));
+        }
+        MedicationRule rule = rules.get(medication);
+        DoseIndex index = doses.get(medication);
+        if (rule != null && index != null) {
+            next = Math.max(next, rule.getEarliestDoseTime(index, amount));
+        }
+        List<Spacing> list = spacings.get(medication);
+        if (list != null) {
+            for (Spacing spacing : list) {
+                DoseIndex before = doses.get(spacing.before);
+                if (before != null) {
+                    next = Math.max(next, before.getLatest() + spacing.seconds);
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Finds the next dose times of every medication that was taken or has a rule.
+     *
+     * @param now current time.
+     * @return times of the next doses by medication names.
+     */
+    public Map<String, Long> getNextEligibleTimes(long now) {
+        Map<String, Long> result = new HashMap<>();
+        for (String medication : doses.keySet()) {
+            result.put(medication, getNextEligibleTime(medication, now));
+        }
+        for (String medication : rules.keySet()) {
+            if (!result.containsKey(medication)) {
+                result.put(medication, getNextEligibleTime(medication, now));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Minimum time between the latest dose of a medication and the next dose of another one.
+     */
+    private static final class Spacing {
+        // Name of the medication taken earlier.
+        private final String before;
+        // Minimum time between the doses in seconds.
+        private final long seconds;
+
+        Spacing(String before, long seconds) {
+            this.before = before;
+            this.seconds = seconds;
+        }
+    }
+}
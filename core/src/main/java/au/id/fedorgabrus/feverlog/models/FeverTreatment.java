@@ -12,6 +12,10 @@ public final class FeverTreatment implements Serializable {
      * Used when instance wasn't retrieved from the DB.
      */
     public static final int DEFAULT_ID = -1;
+    /**
+     * Used when dose amount wasn't recorded.
+     */
+    public static final double NO_DOSE_AMOUNT = 0;
 
     private static long serialVersionUID = 15L;
     // Id from DB.
@@ -20,6 +24,12 @@ public final class FeverTreatment implements Serializable {
     private LocalDateTime treatmentTime;
     // Current treatment name.
     private String treatmentName;
+    // Amount of the dose, NO_DOSE_AMOUNT if not recorded.
+    private double doseAmount;
+    // Unit of the dose amount, null if not recorded.
+    private String doseUnit;
+    // Id of the profile the treatment belongs to.
+    private long profileId = Profile.DEFAULT_ID;
 
     /**
      * All args constructor.
@@ -27,11 +37,27 @@ public final class FeverTreatment implements Serializable {
      * @param id treatment id from the DB.
      * @param treatmentTime date and time of a usage.
      * @param treatmentName name for a treatment.
+     * @param doseAmount amount of the dose, {@link #NO_DOSE_AMOUNT} if not recorded.
+     * @param doseUnit unit of the dose amount, null if not recorded.
      */
-    public FeverTreatment(int id, LocalDateTime treatmentTime, String treatmentName) {
+    public FeverTreatment(int id, LocalDateTime treatmentTime, String treatmentName,
+                          double doseAmount, String doseUnit) {
         this.id = id;
         this.treatmentTime = treatmentTime;
         this.treatmentName = treatmentName;
+        this.doseAmount = doseAmount;
+        this.doseUnit = doseUnit;
+    }
+
+    /**
+     * Constructor for treatment without a recorded dose.
+     *
+     * @param id treatment id from the DB.
+     * @param treatmentTime date and time of a usage.
+     * @param treatmentName name for a treatment.
+     */
+    public FeverTreatment(int id, LocalDateTime treatmentTime, String treatmentName) {
+        this(id, treatmentTime, treatmentName, NO_DOSE_AMOUNT, null);
     }
 
     /**
@@ -98,6 +124,60 @@ public final class FeverTreatment implements Serializable {
         this.treatmentName = treatmentName;
     }
 
+    /**
+     * Getter for the dose amount.
+     *
+     * @return amount of the dose, {@link #NO_DOSE_AMOUNT} if not recorded.
+     */
+    public double getDoseAmount() {
+        return doseAmount;
+    }
+
+    /**
+     * Setter for the dose amount.
+     *
+     * @param doseAmount new amount of the dose, {@link #NO_DOSE_AMOUNT} if not recorded.
+     */
+    public void setDoseAmount(double doseAmount) {
+        this.doseAmount = doseAmount;
+    }
+
+    /**
+     * Getter for the dose unit.
+     *
+     * @return unit of the dose amount, null if not recorded.
+     */
+    public String getDoseUnit() {
+        return doseUnit;
+    }
+
+    /**
+     * Setter for the dose unit.
+     *
+     * @param doseUnit new unit of the dose amount, null if not recorded.
+     */
+    public void setDoseUnit(String doseUnit) {
+        this.doseUnit = doseUnit;
+    }
+
+    /**
+     * Getter for the profile id.
+     *
+     * @return id of the profile the treatment belongs to.
+     */
+    public long getProfileId() {
+        return profileId;
+    }
+
+    /**
+     * Setter for the profile id. Profile of a saved treatment isn't changed by the updates.
+     *
+     * @param profileId id of the profile the treatment belongs to.
+     */
+    public void setProfileId(long profileId) {
+        this.profileId = profileId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -105,11 +185,13 @@ public final class FeverTreatment implements Serializable {
         FeverTreatment treatment = (FeverTreatment) o;
         return id == treatment.id &&
                 treatmentTime.equals(treatment.treatmentTime) &&
-                treatmentName.equals(treatment.treatmentName);
+                treatmentName.equals(treatment.treatmentName) &&
+                Double.compare(doseAmount, treatment.doseAmount) == 0 &&
+                Objects.equals(doseUnit, treatment.doseUnit);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, treatmentTime, treatmentName);
+        return Objects.hash(id, treatmentTime, treatmentName, doseAmount, doseUnit);
     }
 }
@@ -0,0 +1,55 @@
+package au.id.fedorgabrus.feverlog.models;
+
+/**
+ * Read-only treatment rows positioned by index, in descending time order. Implemented by the
+ * snapshots of the data model and by the history pages loaded from the DB.
+ */
+public interface HistoryRows {
+    /**
+     * Returns number of rows.
+     *
+     * @return number of rows.
+     */
+    int size();
+
+    /**
+     * Returns id of the treatment.
+     *
+     * @param index index of the row.
+     * @return treatment id, {@link FeverTreatment#DEFAULT_ID} or a negative temporary id if it
+     *      isn't saved yet.
+     */
+    int getId(int index);
+
+    /**
+     * Returns time of the treatment.
+     *
+     * @param index index of the row.
+     * @return local date and time in seconds from the epoch at UTC offset.
+     */
+    long getTimeKey(int index);
+
+    /**
+     * Returns name of the treatment.
+     *
+     * @param index index of the row.
+     * @return treatment name.
+     */
+    String getName(int index);
+
+    /**
+     * Returns amount of the dose.
+     *
+     * @param index index of the row.
+     * @return dose amount, {@link FeverTreatment#NO_DOSE_AMOUNT} if not recorded.
+     */
+    double getDoseAmount(int index);
+
+    /**
+     * Returns unit of the dose amount.
+     *
+     * @param index index of the row.
+     * @return dose unit, null if not recorded.
+     */
+    String getDoseUnit(int index);
+}
@@ -0,0 +1,120 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Immutable copy of the newest part of the treatment history.
+ *
+ * <p>Keeps the same columns as the history, so it can be handed to another thread and compared
+ * with other snapshots without creating treatment objects. Snapshots are taken with
+ * {@link TreatmentData#getHistorySnapshot(int)}.</p>
+ */
+public final class HistorySnapshot implements HistoryRows {
+    /**
+     * Snapshot without treatments.
+     */
+    public static final HistorySnapshot EMPTY = new HistorySnapshot(new long[0], new int[0],
+            new String[0], new double[0], new String[0]);
+
+    // Treatment times. Local date and time in seconds from the epoch at UTC offset.
+    private final long[] times;
+    // Treatment ids.
+    private final int[] ids;
+    // Treatment names.
+    private final String[] names;
+    // Dose amounts.
+    private final double[] doseAmounts;
+    // Dose units, null if not recorded.
+    private final String[] doseUnits;
+
+    /**
+     * Constructor. Arrays aren't copied and shouldn't be changed after the call.
+     *
+     * @param times treatment times in seconds from the epoch at UTC offset.
+     * @param ids treatment ids.
+     * @param names treatment names.
+     * @param doseAmounts dose amounts.
+     * @param doseUnits dose units.
+     */
+    HistorySnapshot(long[] times, int[] ids, String[] names, double[] doseAmounts,
+                    String[] doseUnits) {
+        this.times = times;
+        this.ids = ids;
+        this.names = names;
+        this.doseAmounts = doseAmounts;
+        this.doseUnits = doseUnits;
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public long getTimeKey(int index) {
+        return times[index];
+    }
+
+    /**
+     * Returns time of the treatment.
+     *
+     * @param index index of the treatment.
+     * @return local date and time of the treatment.
+     */
+    public LocalDateTime getTreatmentTime(int index) {
+        return TimeKeys.fromTimeKey(times[index]);
+    }
+
+    @Override
+    public String getName(int index) {
+        return names[index];
+    }
+
+    @Override
+    public double getDoseAmount(int index) {
+        return doseAmounts[index];
+    }
+
+    @Override
+    public String getDoseUnit(int index) {
+        return doseUnits[index];
+    }
+
+    /**
+     * Checks if rows of two snapshots represent the same treatment. Treatment that isn't saved
+     * yet, with the default or a temporary id, matches a treatment with the same time and name.
+     *
+     * @param index index of the treatment in this snapshot.
+     * @param other other snapshot.
+     * @param otherIndex index of the treatment in the other snapshot.
+     * @return true if rows represent the same treatment.
+     */
+    public boolean isSameTreatment(int index, HistorySnapshot other, int otherIndex) {
+        // Ids of the saved treatments are positive.
+        if (ids[index] > 0 && other.ids[otherIndex] > 0) {
+            return ids[index] == other.ids[otherIndex];
+        }
+        return hasSameContent(index, other, otherIndex);
+    }
+
+    /**
+     * Checks if rows of two snapshots show the same data.
+     *
+     * @param index index of the treatment in this snapshot.
+     * @param other other snapshot.
+     * @param otherIndex index of the treatment in the other snapshot.
+     * @return true if time, name and dose are equal.
+     */
+    public boolean hasSameContent(int index, HistorySnapshot other, int otherIndex) {
+        return times[index] == other.times[otherIndex]
+                && names[index].equals(other.names[otherIndex])
+                && Double.compare(doseAmounts[index], other.doseAmounts[otherIndex]) == 0
+                && Objects.equals(doseUnits[index], other.doseUnits[otherIndex]);
+    }
+}
@@ -0,0 +1,152 @@
+package au.id.fedorgabrus.feverlog.models;
+
+/**
+ * Limits usage of a medication: minimum interval between doses, maximum number of doses and
+ * maximum total amount of the doses within a sliding window. Immutable.
+ */
+public final class MedicationRule {
+    /**
+     * Used as a value of the limits that don't apply.
+     */
+    public static final int NO_LIMIT = 0;
+
+    // Minimum interval between doses in seconds.
+    private final long minIntervalSeconds;
+    // Maximum number of doses within the window.
+    private final int maxDoses;
+    // Length of the window in seconds.
+    private final long windowSeconds;
+    // Maximum total amount of the doses within the window.
+    private final double maxAmount;
+
+    /**
+     * All args constructor.
+     *
+     * @param minIntervalSeconds minimum interval between doses in seconds, {@link #NO_LIMIT} if
+     *                           doses can be taken at any time.
+     * @param maxDoses maximum number of doses within the window, {@link #NO_LIMIT} if unlimited.
+     * @param windowSeconds length of the window in seconds.
+     * @param maxAmount maximum total amount of the doses within the window, {@link #NO_LIMIT} if
+     *                  unlimited. Amounts of all doses the rule applies to should be in the same
+     *                  unit.
+     * @throws IllegalArgumentException if a value is negative or the window is empty while the
+     *      number or the amount of doses is limited.
+     */
+    public MedicationRule(long minIntervalSeconds, int maxDoses, long windowSeconds,
+                          double maxAmount) throws IllegalArgumentException {
+        if (minIntervalSeconds < 0 || maxDoses < 0 || windowSeconds < 0 || !(maxAmount >= 0)
+                || ((maxDoses != NO_LIMIT || maxAmount != NO_LIMIT) && windowSeconds == 0)) {
+            throw new IllegalArgumentException();
+        }
+        this.minIntervalSeconds = minIntervalSeconds;
+        this.maxDoses = maxDoses;
+        this.windowSeconds = windowSeconds;
+        this.maxAmount = maxAmount;
+    }
+
+    /**
+     * Constructor for the rule that doesn't limit the amount.
+     *
+     * @param minIntervalSeconds minimum interval between doses in seconds, {@link #NO_LIMIT} if
+     *                           doses can be taken at any time.
+     * @param maxDoses maximum number of doses within the window, {@link #NO_LIMIT} if unlimited.
+     * @param windowSeconds length of the window in seconds.
+     * @throws IllegalArgumentException if a value is negative or the window is empty while the
+     *      number of doses is limited.
+     */
+    public MedicationRule(long minIntervalSeconds, int maxDoses, long windowSeconds)
+            throws IllegalArgumentException {
+        this(minIntervalSeconds, maxDoses, windowSeconds, NO_LIMIT);
+    }
+
+    /**
+     * Getter for the minimum interval.
+     *
+     * @return minimum interval between doses in seconds.
+     */
+    public long getMinIntervalSeconds() {
+        return minIntervalSeconds;
+    }
+
+    /**
+     * Getter for the maximum number of doses.
+     *
+     * @return maximum number of doses within the window.
+     */
+    public int getMaxDoses() {
+        return maxDoses;
+    }
+
+    /**
+     * Getter for the window length.
+     *
+     * @return length of the window in seconds.
+     */
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    /**
+     * Getter for the maximum amount.
+     *
+     * @return maximum total amount of the doses within the window.
+     */
+    public double getMaxAmount() {
+        return maxAmount;
+    }
+
+    /**
+     * Finds the earliest time when a new dose satisfies the rule.
+     *
+     * @param doses doses the rule applies to.
+     * @param amount amount of the new dose.
+     * @return time in seconds from the epoch at UTC offset, or Long.MIN_VALUE if the rule
+     *      doesn't restrict the next dose.
+     */
+    long getEarliestDoseTime(DoseIndex doses, double amount) {
+        long earliest = Long.MIN_VALUE;
+        int count = doses.size();
+        if (count == 0) {
+            return earliest;
+        }
+        // Doses in the window together with the new one have to fit into the limit. A dose
+        // larger than the limit waits for the window to empty.
+        if (maxAmount != NO_LIMIT) {
+            long windowStart = doses.getWindowStartWithin(Math.max(0, maxAmount - amount));
+            if (windowStart != Long.MIN_VALUE) {
+                earliest = windowStart + windowSeconds;
+            }
+        }
+        if (minIntervalSeconds != NO_LIMIT) {
+            earliest = Math.max(earliest, doses.getLatest() + minIntervalSeconds);
+        }
+        // The oldest dose of the last maxDoses ones has to leave the window.
+        if (maxDoses != NO_LIMIT && count >= maxDoses) {
+            earliest = Math.max(earliest, doses.get(count - maxDoses) + windowSeconds);
+        }
+        return earliest;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MedicationRule)) {
+            return false;
+        }
+        MedicationRule that = (MedicationRule) o;
+        return minIntervalSeconds == that.minIntervalSeconds
+                && maxDoses == that.maxDoses
+                && windowSeconds == that.windowSeconds
+                && Double.compare(maxAmount, that.maxAmount) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(minIntervalSeconds);
+        result = 31 * result + maxDoses;
+        result = 31 * result + Long.hashCode(windowSeconds);
+        return 31 * result + Double.hashCode(maxAmount);
+    }
+}
@@ -0,0 +1,46 @@
+package au.id.fedorgabrus.feverlog.models;
+
+/**
+ * Person whose treatments are tracked. Every profile has its own history and settings.
+ */
+public final class Profile {
+    /**
+     * Id of the profile that exists in every DB. Owns the history recorded before profiles
+     * were added.
+     */
+    public static final long DEFAULT_ID = 1;
+
+    // Id from DB.
+    private final long id;
+    // Name shown to the user, unique.
+    private final String name;
+
+    /**
+     * All args constructor.
+     *
+     * @param id profile id from the DB.
+     * @param name name of the profile.
+     */
+    public Profile(long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Getter for the profile id.
+     *
+     * @return id of the profile.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Getter for the profile name.
+     *
+     * @return name of the profile.
+     */
+    public String getName() {
+        return name;
+    }
+}
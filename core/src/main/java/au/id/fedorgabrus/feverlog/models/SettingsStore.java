@@ -0,0 +1,86 @@
+package au.id.fedorgabrus.feverlog.models;
+
+/**
+ * Key-value storage of the settings, such as shared preferences on Android. Lets
+ * {@link AppSettings} be loaded and saved without depending on the platform.
+ */
+public interface SettingsStore {
+    /**
+     * Checks if the storage has a value for the key.
+     *
+     * @param key key of the setting.
+     * @return true if the value is stored.
+     */
+    boolean contains(String key);
+
+    /**
+     * Returns string value of the setting.
+     *
+     * @param key key of the setting.
+     * @param defaultValue value returned if the setting isn't stored.
+     * @return stored value.
+     */
+    String getString(String key, String defaultValue);
+
+    /**
+     * Returns int value of the setting.
+     *
+     * @param key key of the setting.
+     * @param defaultValue value returned if the setting isn't stored.
+     * @return stored value.
+     */
+    int getInt(String key, int defaultValue);
+
+    /**
+     * Returns long value of the setting.
+     *
+     * @param key key of the setting.
+     * @param defaultValue value returned if the setting isn't stored.
+     * @return stored value.
+     */
+    long getLong(String key, long defaultValue);
+
+    /**
+     * Starts changing the settings. Changes are stored when applied.
+     *
+     * @return editor of the settings.
+     */
+    Editor edit();
+
+    /**
+     * Collects changes of the settings.
+     */
+    interface Editor {
+        /**
+         * Sets string value of the setting.
+         *
+         * @param key key of the setting.
+         * @param value new value, null removes the setting.
+         * @return this editor.
+         */
+        Editor putString(String key, String value);
+
+        /**
+         * Sets int value of the setting.
+         *
+         * @param key key of the setting.
+         * @param value new value.
+         * @return this editor.
+         */
+        Editor putInt(String key, int value);
+
+        /**
+         * Sets long value of the setting.
+         *
+         * @param key key of the setting.
+         * @param value new value.
+         * @return this editor.
+         */
+        Editor putLong(String key, long value);
+
+        /**
+         * Stores the changes, possibly in background.
+         */
+        void apply();
+    }
+}
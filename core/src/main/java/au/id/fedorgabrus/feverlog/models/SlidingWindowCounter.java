@@ -0,0 +1,101 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Counts treatments taken within a sliding time window that ends now.
+ *
+ * <p>The count is recalculated only when the history changes or when the oldest counted
+ * treatment leaves the window, so reading it is O(1) the rest of the time.</p>
+ */
+class SlidingWindowCounter {
+    /**
+     * Used as an expiry time when no treatments are counted.
+     */
+    static final long NEVER = Long.MAX_VALUE;
+
+    // History to count treatments in. Descending time order.
+    private final TreatmentHistory history;
+    // Length of the window in hours.
+    private final int windowHours;
+    // Number of treatments in the window at the time of the last calculation.
+    private int count;
+    // System time in milliseconds when the oldest counted treatment leaves the window.
+    private long expiresAtMillis;
+    // False if the history has changed since the last calculation.
+    private boolean valid;
+
+    /**
+     * Constructor.
+     *
+     * @param history history to count treatments in.
+     * @param windowHours length of the window in hours.
+     */
+    SlidingWindowCounter(TreatmentHistory history, int windowHours) {
+        this.history = history;
+        this.windowHours = windowHours;
+    }
+
+    /**
+     * Returns number of treatments in the window ending now.
+     *
+     * @return number of treatments in the window.
+     */
+    int getCount() {
+        refreshIfNeeded();
+        return count;
+    }
+
+    /**
+     * Returns time when the count drops next time because of the oldest counted treatment
+     * leaving the window.
+     *
+     * @return system time in milliseconds, or {@link #NEVER} if no treatments are counted.
+     */
+    long getExpiresAtMillis() {
+        refreshIfNeeded();
+        return expiresAtMillis;
+    }
+
+    /**
+     * Updates the count after a treatment was added to the beginning of the history.
+     *
+     * @param treatment newly added treatment, taken now.
+     */
+    void onNewestAdded(FeverTreatment treatment) {
+        if (!valid) {
+            return;
+        }
+        count++;
+        if (count == 1) {
+            expiresAtMillis = toMillis(treatment.getTreatmentTime().plusHours(windowHours));
+        }
+    }
+
+    /**
+     * Marks the count as outdated. Should be called on any history change other than adding
+     * the newest treatment.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    // Recalculates count if history has changed or the oldest counted treatment expired.
+    private void refreshIfNeeded() {
+        if (valid && System.currentTimeMillis() < expiresAtMillis) {
+            return;
+        }
+        count = history.indexOfFirstBefore(
+                TimeKeys.toTimeKey(LocalDateTime.now().minusHours(windowHours)));
+        expiresAtMillis = (count == 0)
+                ? NEVER
+                : toMillis(history.getTreatmentTime(count - 1).plusHours(windowHours));
+        valid = true;
+    }
+
+    // Converts local date and time into system time in milliseconds.
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
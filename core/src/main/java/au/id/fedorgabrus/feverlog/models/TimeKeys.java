@@ -0,0 +1,36 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Converts treatment times into time keys and back. Time key is a local date and time in seconds
+ * from the epoch at UTC offset, the history and its rows keep times as keys instead of date and
+ * time objects.
+ */
+public final class TimeKeys {
+
+    // Not instantiable.
+    private TimeKeys() {
+    }
+
+    /**
+     * Converts date and time into a time key.
+     *
+     * @param dateTime date and time to convert.
+     * @return seconds from the epoch at UTC offset.
+     */
+    public static long toTimeKey(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Converts time key into date and time.
+     *
+     * @param timeKey seconds from the epoch at UTC offset.
+     * @return local date and time.
+     */
+    public static LocalDateTime fromTimeKey(long timeKey) {
+        return LocalDateTime.ofEpochSecond(timeKey, 0, ZoneOffset.UTC);
+    }
+}
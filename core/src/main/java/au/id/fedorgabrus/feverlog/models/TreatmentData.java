@@ -0,0 +1,576 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import au.id.fedorgabrus.feverlog.metrics.LatencyHistogram;
+import au.id.fedorgabrus.feverlog.metrics.Metrics;
+
+
+/**
+ * Data model for fever treatments of one profile.
+ *
+ * <p>Has an instance per profile, instances of the recently used profiles are kept in a bounded
+ * LRU cache, so switching back to them doesn't load the history again. The history of a new
+ * instance is loaded lazily, after the first use. Treatments are stored in a compact columnar
+ * form, treatment objects returned by the model are copies and changes to them are not reflected
+ * in the model. Treatment times are stored with a precision of one second.</p>
+ */
+public class TreatmentData {
+    private static final Logger LOG = Logger.getLogger("TreatmentData");
+
+    // Latencies of the model operations run on the main thread for every use of the app.
+    private static final LatencyHistogram ADD_DEFAULT_LATENCY =
+            Metrics.histogram("model.addNewDefaultTreatment");
+    private static final LatencyHistogram ADD_CUSTOM_LATENCY =
+            Metrics.histogram("model.addCustomTreatment");
+    private static final LatencyHistogram TIME_TILL_AVAILABLE_LATENCY =
+            Metrics.histogram("model.calculateTimeTillTreatmentAvailable");
+    private static final LatencyHistogram NUMBER_24H_LATENCY =
+            Metrics.histogram("model.getTreatmentsNumber24h");
+    private static final LatencyHistogram SNAPSHOT_LATENCY =
+            Metrics.histogram("model.getHistorySnapshot");
+
+    // Length of the daily usage window in hours.
+    private static final int DAILY_WINDOW_HOURS = 24;
+    private static final int SECONDS_PER_HOUR = 60 * 60;
+
+    // Number of profiles whose models are kept in memory.
+    private static final int CACHED_PROFILES = 4;
+
+    // Models by profile ids, in access order.
+    private static final LinkedHashMap<Long, TreatmentData> instances =
+            new LinkedHashMap<Long, TreatmentData>(CACHED_PROFILES + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, TreatmentData> eldest) {
+                    // Model of the active profile is accessed on every use, it's never eldest.
+                    return size() > CACHED_PROFILES;
+                }
+            };
+
+    // Profile of the model.
+    private final long profileId;
+    // False until the history is loaded from the DB.
+    private boolean loaded = false;
+
+    // Treatments in descending time order.
+    private final TreatmentHistory treatmentsHistory;
+    // Number of treatments in the past 24 hours.
+    private final SlidingWindowCounter dailyCounter;
+    // Finds times of the next doses, doses are indexed from the history.
+    private final EligibilityEngine eligibility = new EligibilityEngine();
+    // False if the history was replaced since the doses were indexed. Single changes update the
+    // indexed doses.
+    private boolean eligibilityValid = false;
+    // General rule built from the settings, built again only when they change.
+    private MedicationRule settingsRule = null;
+    // Amounts of the doses in this unit are indexed, other doses are indexed without amounts.
+    private String indexedUnit = null;
+    // Defines order of the history.
+    private final Comparator<FeverTreatment> comparator = new DescendingTimeTreatmentsComparator();
+    // True if the model holds only the newest part of the history and older treatments are
+    // still in the DB.
+    private boolean hasOlderHistory = false;
+
+    // Private constructor.
+    private TreatmentData(long profileId) {
+        this.profileId = profileId;
+        treatmentsHistory = new TreatmentHistory();
+        dailyCounter = new SlidingWindowCounter(treatmentsHistory, DAILY_WINDOW_HOURS);
+    }
+
+    /**
+     * Getter for the data model of the active profile.
+     *
+     * @return treatment data model.
+     */
+    public static TreatmentData getInstance() {
+        return getInstance(AppSettings.getActiveProfileId());
+    }
+
+    /**
+     * Getter for the data model of the profile. Model that isn't cached is created empty, its
+     * history should be loaded, see {@link #isLoaded()}.
+     *
+     * @param profileId id of the profile.
+     * @return treatment data model.
+     */
+    public static TreatmentData getInstance(long profileId) {
+        TreatmentData model = instances.get(profileId);
+        if (model == null) {
+            model = new TreatmentData(profileId);
+            instances.put(profileId, model);
+        }
+        return model;
+    }
+
+    /**
+     * Getter for the profile of the model.
+     *
+     * @return id of the profile.
+     */
+    public long getProfileId() {
+        return profileId;
+    }
+
+    /**
+     * Checks if the history was loaded into the model.
+     *
+     * @return false if the history should be loaded from the DB.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Adds new treatment to the beginning of the list.
+     * <p>Uses default name and dose from settings and current date & time to create a new
+     * treatment</p>
+     *
+     * @return treatment that was added to the data model.
+     */
+    public FeverTreatment addNewDefaultTreatment() {
+        long start = System.nanoTime();
+        FeverTreatment treatment = new FeverTreatment(FeverTreatment.DEFAULT_ID,
+                LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS), AppSettings.getDefaultName(),
+                AppSettings.getDefaultDoseAmount(), AppSettings.getDefaultDoseUnit());
+        treatment.setProfileId(profileId);
+        treatmentsHistory.addFirst(treatment);
+        dailyCounter.onNewestAdded(treatment);
+        addDose(0);
+        ADD_DEFAULT_LATENCY.recordSince(start);
+        return treatment;
+    }
+
+    /**
+     * Adds provided custom treatment to the data model and assigns it to the profile of the
+     * model. Doesn't persist data.
+     * <p>Inserts treatment into its place in the descending date & time order. If the treatment
+     * is not newer than the loaded part of the history, it's not added, as it will be loaded
+     * with the older pages.</p>
+     *
+     * @param treatment treatment to add to the model.
+     * @return treatment that was added to the model.
+     * @throws IllegalArgumentException if provided treatment equals to null.
+     */
+    public FeverTreatment addCustomTreatment(FeverTreatment treatment) throws IllegalArgumentException {
+        long start = System.nanoTime();
+        if (treatment == null) {
+            throw new IllegalArgumentException("Adding null to the data model.");
+        }
+        treatment.setProfileId(profileId);
+        if (isInLoadedRange(treatment.getTreatmentTime())) {
+            addDose(treatmentsHistory.insert(treatment));
+            dailyCounter.invalidate();
+        }
+        ADD_CUSTOM_LATENCY.recordSince(start);
+        return treatment;
+    }
+
+    /**
+     * Replaces history data with the newly provided and marks the model as loaded.
+     *
+     * @param history Set with a treatment history to use in the data model.
+     */
+    public void loadFromHistory(List<FeverTreatment> history) {
+        // Replaces the snapshot even if the history is empty.
+        if ((history != null) && (history.size() > 0 || treatmentsHistory.size() > 0)) {
+            treatmentsHistory.replaceAll(history);
+            onHistoryChanged();
+        }
+        loaded = true;
+    }
+
+    /**
+     * Shows snapshot of the recent history until the history is loaded from the DB. Doesn't mark
+     * the model as loaded, the history should be loaded with {@link #loadFromHistory(List)}.
+     *
+     * @param snapshot treatments in descending time order.
+     */
+    public void loadFromSnapshot(List<FeverTreatment> snapshot) {
+        if (loaded || snapshot == null) {
+            return;
+        }
+        treatmentsHistory.replaceAll(snapshot);
+        onHistoryChanged();
+        // Treatments older than the snapshot are in the DB.
+        hasOlderHistory = true;
+    }
+
+    /**
+     * Adds a page of older treatments to the end of the history.
+     *
+     * @param page treatments in descending time order, all older than the loaded ones.
+     * @param hasMorePages true if there are even older treatments in the DB.
+     */
+    public void appendHistoryPage(List<FeverTreatment> page, boolean hasMorePages) {
+        if (page != null) {
+            for (FeverTreatment treatment : page) {
+                treatmentsHistory.addLast(treatment);
+            }
+            // Older doses would shift all indexed ones, indexing them again costs the same.
+            onHistoryChanged();
+        }
+        hasOlderHistory = hasMorePages;
+    }
+
+    /**
+     * Checks if the model holds only a part of the history.
+     *
+     * @return true if there are treatments in the DB that weren't loaded into the model.
+     */
+    public boolean hasOlderHistory() {
+        return hasOlderHistory;
+    }
+
+    /**
+     * Marks whether the model holds only the newest part of the history.
+     *
+     * @param hasOlderHistory true if there are treatments in the DB that weren't loaded.
+     */
+    public void setHasOlderHistory(boolean hasOlderHistory) {
+        this.hasOlderHistory = hasOlderHistory;
+    }
+
+    /**
+     * Calculates time in milliseconds till the next treatment with the default name becomes
+     * available.
+     *
+     * @return number of milliseconds till the next treatment becomes available, 0 if no need to wait.
+     */
+    public long calculateTimeTillNextTreatmentAvailable() {
+        return calculateTimeTillTreatmentAvailable(AppSettings.getDefaultName());
+    }
+
+    /**
+     * Calculates time in milliseconds till the next treatment with the provided name becomes
+     * available, if it's taken with the default dose amount. Applies the interval, the daily
+     * maximum and the daily amount maximum from the settings to all treatments together, and the
+     * rules of the treatment added to the {@link #getEligibilityEngine()}.
+     *
+     * @param treatmentName name of the treatment.
+     * @return number of milliseconds till the next treatment becomes available, 0 if no need to wait.
+     */
+    public long calculateTimeTillTreatmentAvailable(String treatmentName) {
+        // Returns 0 if history is empty.
+        if (treatmentsHistory.size() == 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long now = TimeKeys.toTimeKey(LocalDateTime.now());
+        long waitMillis = (getEligibilityEngine().getNextEligibleTime(treatmentName,
+                AppSettings.getDefaultDoseAmount(), now) - now) * 1000;
+        TIME_TILL_AVAILABLE_LATENCY.recordSince(start);
+        return waitMillis;
+    }
+
+    /**
+     * Returns total dose amount of all treatments taken in the last 24 hours in the default dose
+     * unit from the settings.
+     * <p>O(log n) with the prefix sums of the eligibility engine.</p>
+     *
+     * @return dose amount, doses that weren't recorded or are in other units count as 0.
+     */
+    public double getDoseAmount24h() {
+        long now = TimeKeys.toTimeKey(LocalDateTime.now());
+        return getEligibilityEngine().getAmountInWindow(null,
+                (long) DAILY_WINDOW_HOURS * SECONDS_PER_HOUR, now);
+    }
+
+    /**
+     * Returns engine that finds the next dose times, with the doses from the loaded history and
+     * the general rule from the settings. Rules of single treatments can be added to it.
+     * <p>Amounts are indexed only for the doses in the default dose unit from the settings, so
+     * amount limits don't add up different units. Doses in other units still count towards the
+     * interval and the number of doses.</p>
+     *
+     * @return eligibility engine of the model.
+     */
+    public EligibilityEngine getEligibilityEngine() {
+        if (!eligibilityValid || !Objects.equals(indexedUnit, AppSettings.getDefaultDoseUnit())) {
+            eligibility.clearDoses();
+            indexedUnit = AppSettings.getDefaultDoseUnit();
+            // Oldest first, so every dose is appended to its index.
+            for (int i = treatmentsHistory.size() - 1; i >= 0; i--) {
+                eligibility.addDose(treatmentsHistory.getName(i), treatmentsHistory.getTimeKey(i),
+                        getIndexedAmount(i));
+            }
+            eligibilityValid = true;
+        }
+        long minIntervalSeconds = (long) AppSettings.getMinTreatmentInterval() * SECONDS_PER_HOUR;
+        int maxDailyUsage = AppSettings.getMaxDailyUsage();
+        double maxDailyAmount = AppSettings.getMaxDailyAmount();
+        if (settingsRule == null || settingsRule.getMinIntervalSeconds() != minIntervalSeconds
+                || settingsRule.getMaxDoses() != maxDailyUsage
+                || Double.compare(settingsRule.getMaxAmount(), maxDailyAmount) != 0) {
+            settingsRule = new MedicationRule(minIntervalSeconds, maxDailyUsage,
+                    (long) DAILY_WINDOW_HOURS * SECONDS_PER_HOUR, maxDailyAmount);
+        }
+        if (eligibility.getGeneralRule() != settingsRule) {
+            eligibility.setGeneralRule(settingsRule);
+        }
+        return eligibility;
+    }
+
+    /**
+     * Returns number of treatments used in the last 24 hours.
+     * <p>The number is maintained incrementally and only recalculated when the history changes
+     * or the oldest counted treatment becomes older than 24 hours.</p>
+     *
+     * @return number of treatments in the last 24 hours.
+     */
+    public int getTreatmentsNumber24h() {
+        long start = System.nanoTime();
+        int count = dailyCounter.getCount();
+        NUMBER_24H_LATENCY.recordSince(start);
+        return count;
+    }
+
+    /**
+     * Returns time when the number of treatments in the last 24 hours will decrease, because
+     * the oldest of them becomes older than 24 hours.
+     *
+     * @return system time in milliseconds, or Long.MAX_VALUE if there were no treatments in the
+     *      last 24 hours.
+     */
+    public long getTreatmentsNumber24hExpiryTime() {
+        return dailyCounter.getExpiresAtMillis();
+    }
+
+    /**
+     * Returns list of treatments.
+     *
+     * @return unmodifiable list of treatments.
+     */
+    public List<FeverTreatment> getTreatmentHistory() {
+        return Collections.unmodifiableList(treatmentsHistory);
+    }
+
+    /**
+     * Copies the newest treatments into an immutable snapshot for displaying.
+     *
+     * @param count maximum number of treatments to copy.
+     * @return snapshot of the history.
+     */
+    public HistorySnapshot getHistorySnapshot(int count) {
+        long start = System.nanoTime();
+        HistorySnapshot snapshot = treatmentsHistory.snapshot(count);
+        SNAPSHOT_LATENCY.recordSince(start);
+        return snapshot;
+    }
+
+    /**
+     * Returns size of treatment history.
+     *
+     * @return size of treatment history.
+     */
+    public int getDataSize() {
+        return treatmentsHistory.size();
+    }
+
+    /**
+     * Clears data model.
+     */
+    public void clearHistory() {
+        treatmentsHistory.clear();
+        onHistoryChanged();
+        hasOlderHistory = false;
+    }
+
+    /**
+     * Gets treatment by its index from the history.
+     *
+     * @param index index of the treatment
+     * @return treatment with the specified index or null if index is out of boundaries.
+     */
+    public FeverTreatment getTreatment(int index) {
+        // Handles unacceptable index values.
+        if (index < 0 || index >= treatmentsHistory.size()) {
+            LOG.severe("getTreatment(): index out of boundaries.");
+            return null;
+        }
+        FeverTreatment treatment = treatmentsHistory.get(index);
+        treatment.setProfileId(profileId);
+        return treatment;
+    }
+
+    /**
+     * Sorts data model by date and time (descending).
+     */
+    public void sortHistoryByDate() {
+        treatmentsHistory.sort(comparator);
+        onHistoryChanged();
+    }
+
+    /**
+     * Updates date, time and name of the treatment and moves it to its place in the descending
+     * date & time order. Rest of the history stays in place. Doesn't persist changes.
+     * <p>If the treatment becomes older than the loaded part of the history, it's removed from the
+     * model, as it will be loaded with the older pages.</p>
+     *
+     * @param index index of the treatment to update.
+     * @param treatment treatment with new values.
+     * @return new index of the treatment, or -1 if it was removed from the model, index is out of
+     *      boundaries or treatment is null.
+     */
+    public int updateTreatment(int index, FeverTreatment treatment) {
+        if (treatment == null || index < 0 || index >= treatmentsHistory.size()) {
+            LOG.severe("updateTreatment(): index out of boundaries or null treatment.");
+            return -1;
+        }
+        removeDose(index);
+        dailyCounter.invalidate();
+        if (!isInLoadedRange(treatment.getTreatmentTime())) {
+            treatmentsHistory.remove(index);
+            return -1;
+        }
+        int newIndex = treatmentsHistory.update(index, treatment);
+        addDose(newIndex);
+        return newIndex;
+    }
+
+    /**
+     * Replaces treatment with its edited version and moves it to its place in the descending
+     * date & time order. Doesn't persist changes.
+     * <p>Treatment that isn't in the model is added if its new time belongs to the loaded part of
+     * the history, and edited treatment that becomes older than the loaded part is removed.</p>
+     *
+     * @param original treatment before editing.
+     * @param edited treatment with new values and the same id.
+     * @return new index of the treatment, or -1 if it isn't in the model.
+     */
+    public int replaceTreatment(FeverTreatment original, FeverTreatment edited) {
+        if (original == null || edited == null) {
+            LOG.severe("replaceTreatment(): null argument.");
+            return -1;
+        }
+        int index = treatmentsHistory.binarySearch(original);
+        if (index >= 0) {
+            return updateTreatment(index, edited);
+        }
+        if (!isInLoadedRange(edited.getTreatmentTime())) {
+            return -1;
+        }
+        index = treatmentsHistory.insert(edited);
+        addDose(index);
+        dailyCounter.invalidate();
+        return index;
+    }
+
+    /**
+     * Sets id of the treatment both in the data model and in the provided object. Used after
+     * treatment was saved into the DB.
+     *
+     * @param treatment treatment from the model, with its current id.
+     * @param id new id.
+     */
+    public void updateTreatmentId(FeverTreatment treatment, int id) {
+        if (treatment == null) {
+            LOG.severe("updateTreatmentId(FeverTreatment treatment, int id): null argument");
+            return;
+        }
+        int index = treatmentsHistory.binarySearch(treatment);
+        if (index >= 0) {
+            treatmentsHistory.setId(index, id);
+        }
+        treatment.setId(id);
+    }
+
+    /**
+     * Deletes treatment from the data model. Doesn't persist changes.
+     * @param treatment treatment to delete
+     */
+    public void deleteTreatment(FeverTreatment treatment) {
+        if (treatment == null) {
+            LOG.severe("deleteTreatment(FeverTreatment treatment): null argument");
+            return;
+        }
+        int index = treatmentsHistory.binarySearch(treatment);
+        if (index >= 0) {
+            removeDose(index);
+            treatmentsHistory.remove(index);
+            dailyCounter.invalidate();
+        }
+    }
+
+    // Invalidates values calculated from the history.
+    private void onHistoryChanged() {
+        dailyCounter.invalidate();
+        eligibilityValid = false;
+    }
+
+    // Adds dose of the treatment at the index to the eligibility engine. Nothing to do if the
+    // doses will be indexed again.
+    private void addDose(int index) {
+        if (eligibilityValid) {
+            eligibility.addDose(treatmentsHistory.getName(index),
+                    treatmentsHistory.getTimeKey(index), getIndexedAmount(index));
+        }
+    }
+
+    // Removes dose of the treatment at the index from the eligibility engine. Nothing to do if the
+    // doses will be indexed again.
+    private void removeDose(int index) {
+        if (eligibilityValid) {
+            eligibility.removeDose(treatmentsHistory.getName(index),
+                    treatmentsHistory.getTimeKey(index), getIndexedAmount(index));
+        }
+    }
+
+    // Returns amount of the treatment at the index as indexed by the eligibility engine.
+    private double getIndexedAmount(int index) {
+        return Objects.equals(treatmentsHistory.getDoseUnit(index), indexedUnit)
+                ? treatmentsHistory.getDoseAmount(index) : FeverTreatment.NO_DOSE_AMOUNT;
+    }
+
+    /**
+     * Checks if a treatment with the provided time belongs to the loaded part of the history.
+     *
+     * @param treatmentTime date and time of the treatment.
+     * @return true if the whole history is loaded or the time is newer than the oldest loaded
+     *      treatment.
+     */
+    private boolean isInLoadedRange(LocalDateTime treatmentTime) {
+        if (!hasOlderHistory || treatmentsHistory.size() == 0) {
+            return true;
+        }
+        return TimeKeys.toTimeKey(treatmentTime)
+                > treatmentsHistory.getTimeKey(treatmentsHistory.size() - 1);
+    }
+
+    /**
+     * Comparator to sort fever treatments by usage time in descending order.
+     */
+    private class DescendingTimeTreatmentsComparator implements Comparator<FeverTreatment> {
+        @Override
+        public int compare(FeverTreatment o1, FeverTreatment o2) {
+            // Both objects shouldn't be null.
+            if (o1 == null || o2 == null) {
+                throw new IllegalArgumentException();
+            }
+            // Case same object.
+            if (o1 == o2) {
+                return 0;
+            }
+            // Compare by date in descending order.
+            int result = o1.getTreatmentTime().compareTo(o2.getTreatmentTime());
+            if (result != 0) {
+                // Returns the opposite number.
+                return -result;
+            }
+            // Compares names in case if dates are equal.
+            result = o1.getTreatmentName().compareTo(o2.getTreatmentName());
+            if (result != 0) {
+                return result;
+            }
+            return o1.getId() - o2.getId();
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Array backed storage for the treatment history.
+ *
+ * <p>Treatments are kept in descending time order (the newest one has index 0). Elements are
+ * stored in a circular buffer, so positional access is O(1), adding to either end of the
+ * history is amortized O(1) and time lookups are done with a binary search.</p>
+ *
+ * <p>Data is stored in columns: treatment times as seconds, ids, keys of interned names, dose
+ * amounts and keys of interned dose units.
+ * {@link FeverTreatment} objects are created only when requested with {@link #get(int)} and
+ * aren't backed by the history, changes should be made through the history methods.</p>
+ *
+ * <p>Only the time order is kept. Inserted and moved treatments are ordered by name and id among
+ * the ones with the same time, but histories loaded from the DB keep its order, so treatments
+ * with the same time are looked up by id and name.</p>
+ */
+class TreatmentHistory extends AbstractList<FeverTreatment> implements RandomAccess {
+    // Initial capacity of the buffer. Should be a power of two.
+    private static final int DEFAULT_CAPACITY = 16;
+    // Key of a dose without a unit.
+    private static final int NO_UNIT = -1;
+
+    // Treatment times. Local date and time in seconds from the epoch at UTC offset.
+    private long[] times;
+    // Treatment ids.
+    private int[] ids;
+    // Keys of treatment names in the name table.
+    private int[] nameKeys;
+    // Distinct treatment names.
+    private final TreatmentNameTable names = new TreatmentNameTable();
+    // Dose amounts.
+    private double[] doseAmounts;
+    // Keys of dose units in the unit table, NO_UNIT if not recorded.
+    private int[] unitKeys;
+    // Distinct dose units.
+    private final TreatmentNameTable units = new TreatmentNameTable();
+    // Position of the first (newest) element in the buffer.
+    private int head;
+    // Number of stored elements.
+    private int size;
+
+    /**
+     * Creates an empty history.
+     */
+    TreatmentHistory() {
+        times = new long[DEFAULT_CAPACITY];
+        ids = new int[DEFAULT_CAPACITY];
+        nameKeys = new int[DEFAULT_CAPACITY];
+        doseAmounts = new double[DEFAULT_CAPACITY];
+        unitKeys = new int[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Creates a treatment object with the data from the history.
+     *
+     * @param index index of the treatment.
+     * @return new treatment object, not backed by the history.
+     */
+    @Override
+    public FeverTreatment get(int index) {
+        int slot = slot(index);
+        return new FeverTreatment(ids[slot], TimeKeys.fromTimeKey(times[slot]),
+                names.get(nameKeys[slot]), doseAmounts[slot], getUnit(unitKeys[slot]));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns treatment time without creating a treatment object.
+     *
+     * @param index index of the treatment.
+     * @return seconds from the epoch at UTC offset.
+     */
+    long getTimeKey(int index) {
+        return times[slot(index)];
+    }
+
+    /**
+     * Returns treatment name without creating a treatment object.
+     *
+     * @param index index of the treatment.
+     * @return name of the treatment.
+     */
+    String getName(int index) {
+        return names.get(nameKeys[slot(index)]);
+    }
+
+    /**
+     * Returns dose amount without creating a treatment object.
+     *
+     * @param index index of the treatment.
+     * @return amount of the dose, {@link FeverTreatment#NO_DOSE_AMOUNT} if not recorded.
+     */
+    double getDoseAmount(int index) {
+        return doseAmounts[slot(index)];
+    }
+
+    /**
+     * Returns dose unit without creating a treatment object.
+     *
+     * @param index index of the treatment.
+     * @return unit of the dose amount, null if not recorded.
+     */
+    String getDoseUnit(int index) {
+        return getUnit(unitKeys[slot(index)]);
+    }
+
+    /**
+     * Returns treatment time without creating a treatment object.
+     *
+     * @param index index of the treatment.
+     * @return date and time of the treatment.
+     */
+    LocalDateTime getTreatmentTime(int index) {
+        return TimeKeys.fromTimeKey(getTimeKey(index));
+    }
+
+    /**
+     * Updates id of the treatment. Treatment stays in place, id doesn't change the time order.
+     *
+     * @param index index of the treatment.
+     * @param id new id.
+     */
+    void setId(int index, int id) {
+        ids[slot(index)] = id;
+        modCount++;
+    }
+
+    /**
+     * Updates treatment time, name and dose and moves the treatment to its new place.
+     *
+     * @param index index of the treatment.
+     * @param treatment treatment with the new values, its id is ignored.
+     * @return new index of the treatment.
+     */
+    int update(int index, FeverTreatment treatment) {
+        int slot = slot(index);
+        int id = ids[slot];
+        store(slot, treatment);
+        ids[slot] = id;
+        return reposition(index);
+    }
+
+    /**
+     * Adds treatment to the beginning of the history. Amortized O(1).
+     *
+     * @param treatment treatment to add, should be the newest one in the history.
+     */
+    void addFirst(FeverTreatment treatment) {
+        ensureCapacity(size + 1);
+        head = (head - 1) & (times.length - 1);
+        store(head, treatment);
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Adds treatment to the end of the history. Amortized O(1).
+     *
+     * @param treatment treatment to add, should be the oldest one in the history.
+     */
+    void addLast(FeverTreatment treatment) {
+        ensureCapacity(size + 1);
+        store((head + size) & (times.length - 1), treatment);
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Inserts treatment into its place. Finds the place with a binary search and shifts the
+     * shorter part of the history.
+     *
+     * @param treatment treatment to insert.
+     * @return index of the inserted treatment.
+     */
+    int insert(FeverTreatment treatment) {
+        long timeKey = TimeKeys.toTimeKey(treatment.getTreatmentTime());
+        int index = findInsertionPoint(timeKey, treatment.getTreatmentName(), treatment.getId(),
+                0, size);
+        ensureCapacity(size + 1);
+        final int mask = times.length - 1;
+        if (index < size / 2) {
+            head = (head - 1) & mask;
+            for (int i = 0; i < index; i++) {
+                move((head + i + 1) & mask, (head + i) & mask);
+            }
+        }
+        else {
+            for (int i = size; i > index; i--) {
+                move((head + i - 1) & mask, (head + i) & mask);
+            }
+        }
+        store((head + index) & mask, treatment);
+        size++;
+        modCount++;
+        return index;
+    }
+
+    /**
+     * Finds index of the treatment. Treatments with the same time are found with a binary
+     * search, the one with the same id and name is looked up among them.
+     *
+     * @param treatment treatment to look for.
+     * @return index of the treatment, or -1 if there is no such treatment in the history.
+     */
+    int binarySearch(FeverTreatment treatment) {
+        long timeKey = TimeKeys.toTimeKey(treatment.getTreatmentTime());
+        int end = indexOfFirstBefore(timeKey);
+        for (int i = indexOfFirstBefore(timeKey + 1); i < end; i++) {
+            int slot = slot(i);
+            if (ids[slot] == treatment.getId()
+                    && names.get(nameKeys[slot]).equals(treatment.getTreatmentName())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public FeverTreatment remove(int index) {
+        FeverTreatment removed = get(index);
+        final int mask = times.length - 1;
+        // Shifts the shorter part of the buffer over the removed element.
+        if (index < size / 2) {
+            for (int i = index; i > 0; i--) {
+                move((head + i - 1) & mask, (head + i) & mask);
+            }
+            head = (head + 1) & mask;
+        }
+        else {
+            for (int i = index; i < size - 1; i++) {
+                move((head + i + 1) & mask, (head + i) & mask);
+            }
+        }
+        size--;
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Replaces content of the history with provided treatments.
+     *
+     * @param treatments treatments in descending time order.
+     */
+    void replaceAll(Collection<FeverTreatment> treatments) {
+        clear();
+        ensureCapacity(treatments.size());
+        for (FeverTreatment treatment : treatments) {
+            store(size++, treatment);
+        }
+    }
+
+    /**
+     * Sorts the history with the provided comparator.
+     *
+     * @param comparator comparator that defines the new order.
+     */
+    @Override
+    public void sort(Comparator<? super FeverTreatment> comparator) {
+        List<FeverTreatment> sorted = new ArrayList<>(this);
+        sorted.sort(comparator);
+        replaceAll(sorted);
+    }
+
+    /**
+     * Copies the newest treatments into an immutable snapshot.
+     *
+     * @param count number of treatments to copy, limited by the size of the history.
+     * @return snapshot of the history.
+     */
+    HistorySnapshot snapshot(int count) {
+        count = Math.max(0, Math.min(count, size));
+        long[] snapshotTimes = new long[count];
+        int[] snapshotIds = new int[count];
+        String[] snapshotNames = new String[count];
+        double[] snapshotDoseAmounts = new double[count];
+        String[] snapshotDoseUnits = new String[count];
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) & (times.length - 1);
+            snapshotTimes[i] = times[slot];
+            snapshotIds[i] = ids[slot];
+            snapshotNames[i] = names.get(nameKeys[slot]);
+            snapshotDoseAmounts[i] = doseAmounts[slot];
+            snapshotDoseUnits[i] = getUnit(unitKeys[slot]);
+        }
+        return new HistorySnapshot(snapshotTimes, snapshotIds, snapshotNames, snapshotDoseAmounts,
+                snapshotDoseUnits);
+    }
+
+    /**
+     * Finds position of the first treatment that was taken before the provided time.
+     * <p>Binary search, O(log n).</p>
+     *
+     * @param timeKey time in seconds from the epoch at UTC offset.
+     * @return index of the first treatment older than time, or size of the history if there is
+     *      no such treatment. Equals to the number of treatments taken at or after the time.
+     */
+    int indexOfFirstBefore(long timeKey) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getTimeKey(middle) >= timeKey) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Moves changed treatment to its place. Only elements between the old and the new
+    // positions are shifted.
+    private int reposition(int index) {
+        final int mask = times.length - 1;
+        final int slot = slot(index);
+        long timeKey = times[slot];
+        int id = ids[slot];
+        int nameKey = nameKeys[slot];
+        double doseAmount = doseAmounts[slot];
+        int unitKey = unitKeys[slot];
+        String name = names.get(nameKey);
+        int newIndex;
+        // Moves towards the beginning.
+        if (index > 0 && compare(index - 1, timeKey, name, id) > 0) {
+            newIndex = findInsertionPoint(timeKey, name, id, 0, index);
+            for (int i = index; i > newIndex; i--) {
+                move((head + i - 1) & mask, (head + i) & mask);
+            }
+        }
+        // Moves towards the end.
+        else if (index < size - 1 && compare(index + 1, timeKey, name, id) < 0) {
+            newIndex = findInsertionPoint(timeKey, name, id, index + 1, size) - 1;
+            for (int i = index; i < newIndex; i++) {
+                move((head + i + 1) & mask, (head + i) & mask);
+            }
+        }
+        else {
+            return index;
+        }
+        int newSlot = (head + newIndex) & mask;
+        times[newSlot] = timeKey;
+        ids[newSlot] = id;
+        nameKeys[newSlot] = nameKey;
+        doseAmounts[newSlot] = doseAmount;
+        unitKeys[newSlot] = unitKey;
+        modCount++;
+        return newIndex;
+    }
+
+    /*
+     * Compares stored treatment with the provided values. Newer treatments go first, treatments
+     * with the same time are ordered by name and then by id.
+     */
+    private int compare(int index, long timeKey, String name, int id) {
+        int slot = slot(index);
+        if (times[slot] != timeKey) {
+            return (times[slot] > timeKey) ? -1 : 1;
+        }
+        int result = names.get(nameKeys[slot]).compareTo(name);
+        if (result != 0) {
+            return result;
+        }
+        return Integer.compare(ids[slot], id);
+    }
+
+    // Finds the first index in [from, to) where element goes after the provided values.
+    private int findInsertionPoint(long timeKey, String name, int id, int from, int to) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, timeKey, name, id) <= 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Writes treatment data into the slot of the buffer.
+    private void store(int slot, FeverTreatment treatment) {
+        times[slot] = TimeKeys.toTimeKey(treatment.getTreatmentTime());
+        ids[slot] = treatment.getId();
+        nameKeys[slot] = names.intern(treatment.getTreatmentName());
+        doseAmounts[slot] = treatment.getDoseAmount();
+        unitKeys[slot] = treatment.getDoseUnit() == null
+                ? NO_UNIT : units.intern(treatment.getDoseUnit());
+    }
+
+    // Returns dose unit by its key.
+    private String getUnit(int unitKey) {
+        return unitKey == NO_UNIT ? null : units.get(unitKey);
+    }
+
+    // Copies data between slots of the buffer.
+    private void move(int fromSlot, int toSlot) {
+        times[toSlot] = times[fromSlot];
+        ids[toSlot] = ids[fromSlot];
+        nameKeys[toSlot] = nameKeys[fromSlot];
+        doseAmounts[toSlot] = doseAmounts[fromSlot];
+        unitKeys[toSlot] = unitKeys[fromSlot];
+    }
+
+    // Grows buffer to fit required number of elements. Moves data to the start of the buffer.
+    private void ensureCapacity(int required) {
+        if (required <= times.length) {
+            return;
+        }
+        int capacity = times.length;
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        long[] grownTimes = new long[capacity];
+        int[] grownIds = new int[capacity];
+        int[] grownNameKeys = new int[capacity];
+        double[] grownDoseAmounts = new double[capacity];
+        int[] grownUnitKeys = new int[capacity];
+        final int mask = times.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) & mask;
+            grownTimes[i] = times[slot];
+            grownIds[i] = ids[slot];
+            grownNameKeys[i] = nameKeys[slot];
+            grownDoseAmounts[i] = doseAmounts[slot];
+            grownUnitKeys[i] = unitKeys[slot];
+        }
+        times = grownTimes;
+        ids = grownIds;
+        nameKeys = grownNameKeys;
+        doseAmounts = grownDoseAmounts;
+        unitKeys = grownUnitKeys;
+        head = 0;
+    }
+
+    // Returns position of the element in the buffer. Throws IndexOutOfBoundsException if index is
+    // outside of the history.
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (head + index) & (times.length - 1);
+    }
+}
@@ -0,0 +1,58 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interned table of treatment names.
+ *
+ * <p>Each distinct name is stored once and referenced by its integer key, so rows of the history
+ * don't hold their own copies of the same name.</p>
+ */
+class TreatmentNameTable {
+    // Names by their keys.
+    private String[] names = new String[4];
+    // Keys by names.
+    private final Map<String, Integer> keys = new HashMap<>();
+    // Number of names in the table.
+    private int size;
+
+    /**
+     * Returns key of the name, adds name to the table if it's not there yet.
+     *
+     * @param name treatment name.
+     * @return key of the name.
+     */
+    int intern(String name) {
+        Integer key = keys.get(name);
+        if (key != null) {
+            return key;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        names[size] = name;
+        keys.put(name, size);
+        return size++;
+    }
+
+    /**
+     * Returns name by its key.
+     *
+     * @param key key of the name.
+     * @return treatment name.
+     */
+    String get(int key) {
+        return names[key];
+    }
+
+    /**
+     * Returns number of names in the table.
+     *
+     * @return number of names.
+     */
+    int size() {
+        return size;
+    }
+}
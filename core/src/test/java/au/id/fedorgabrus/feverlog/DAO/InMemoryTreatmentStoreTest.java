@@ -0,0 +1,144 @@
+package au.id.fedorgabrus.feverlog.DAO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import au.id.fedorgabrus.feverlog.models.FeverTreatment;
+import au.id.fedorgabrus.feverlog.models.Profile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the in-memory store keeps histories of the profiles apart and in the order of the
+ * DB indexes after inserts, updates and deletes.
+ */
+public class InMemoryTreatmentStoreTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2020, 5, 1, 12, 30);
+
+    private InMemoryTreatmentStore store;
+    private long otherProfileId;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryTreatmentStore();
+        otherProfileId = store.createProfile("Other");
+    }
+
+    @Test
+    public void saveTreatment_keepsDescendingTimeAndAscendingIdOrder() {
+        int older = save(Profile.DEFAULT_ID, TIME.minusHours(1), "Aspirin");
+        int first = save(Profile.DEFAULT_ID, TIME, "Paracetamol");
+        int second = save(Profile.DEFAULT_ID, TIME, "Ibuprofen");
+        int newer = save(Profile.DEFAULT_ID, TIME.plusHours(1), "Paracetamol");
+        assertEquals(Arrays.asList(newer, first, second, older),
+                ids(store.loadHistory(Profile.DEFAULT_ID)));
+    }
+
+    @Test
+    public void saveTreatment_rejectsUnknownProfile() {
+        assertEquals(-1, save(otherProfileId + 1, TIME, "Paracetamol"));
+        assertEquals(-1, store.saveTreatment(null));
+    }
+
+    @Test
+    public void loadHistory_returnsHistoryOfTheProfile() {
+        int own = save(Profile.DEFAULT_ID, TIME, "Paracetamol");
+        int other = save(otherProfileId, TIME.plusMinutes(1), "Ibuprofen");
+        assertEquals(Arrays.asList(own), ids(store.loadHistory(Profile.DEFAULT_ID)));
+        List<FeverTreatment> history = store.loadHistory(otherProfileId);
+        assertEquals(Arrays.asList(other), ids(history));
+        assertEquals(otherProfileId, history.get(0).getProfileId());
+    }
+
+    @Test
+    public void loadHistory_returnsCopies() {
+        save(Profile.DEFAULT_ID, TIME, "Paracetamol");
+        store.loadHistory(Profile.DEFAULT_ID).get(0).setTreatmentName("Ibuprofen");
+        assertEquals("Paracetamol",
+                store.loadHistory(Profile.DEFAULT_ID).get(0).getTreatmentName());
+    }
+
+    @Test
+    public void saveTreatment_truncatesTimeToMillis() {
+        save(Profile.DEFAULT_ID, TIME.plusNanos(1_234_567), "Paracetamol");
+        assertEquals(TIME.plusNanos(1_000_000),
+                store.loadHistory(Profile.DEFAULT_ID).get(0).getTreatmentTime());
+    }
+
+    @Test
+    public void updateTreatment_movesTreatmentAndKeepsProfile() {
+        int moved = save(otherProfileId, TIME, "Paracetamol");
+        int kept = save(otherProfileId, TIME.minusHours(1), "Ibuprofen");
+        // Profile of the update is ignored.
+        FeverTreatment update = new FeverTreatment(moved, TIME.minusHours(2), "Aspirin", 200,
+                "mg");
+        assertEquals(1, store.updateTreatment(update));
+        List<FeverTreatment> history = store.loadHistory(otherProfileId);
+        assertEquals(Arrays.asList(kept, moved), ids(history));
+        assertEquals("Aspirin", history.get(1).getTreatmentName());
+        assertEquals(200, history.get(1).getDoseAmount(), 0);
+        assertEquals(otherProfileId, history.get(1).getProfileId());
+        assertTrue(store.loadHistory(Profile.DEFAULT_ID).isEmpty());
+    }
+
+    @Test
+    public void updateTreatment_returnsZeroForUnknownId() {
+        int id = save(Profile.DEFAULT_ID, TIME, "Paracetamol");
+        assertEquals(0, store.updateTreatment(new FeverTreatment(id + 1, TIME, "Aspirin")));
+        assertEquals(0, store.updateTreatment(null));
+        assertEquals("Paracetamol",
+                store.loadHistory(Profile.DEFAULT_ID).get(0).getTreatmentName());
+    }
+
+    @Test
+    public void deleteTreatment_removesOnlyThatTreatment() {
+        int first = save(Profile.DEFAULT_ID, TIME, "Paracetamol");
+        int second = save(Profile.DEFAULT_ID, TIME, "Paracetamol");
+        assertEquals(1, store.deleteTreatment(new FeverTreatment(first, TIME, "Paracetamol")));
+        assertEquals(0, store.deleteTreatment(new FeverTreatment(first, TIME, "Paracetamol")));
+        assertEquals(Arrays.asList(second), ids(store.loadHistory(Profile.DEFAULT_ID)));
+    }
+
+    @Test
+    public void clearHistory_keepsOtherProfiles() {
+        int cleared = save(Profile.DEFAULT_ID, TIME, "Paracetamol");
+        int other = save(otherProfileId, TIME, "Paracetamol");
+        store.clearHistory(Profile.DEFAULT_ID);
+        assertTrue(store.loadHistory(Profile.DEFAULT_ID).isEmpty());
+        assertEquals(Arrays.asList(other), ids(store.loadHistory(otherProfileId)));
+        // Cleared treatments can't be changed anymore.
+        assertEquals(0, store.deleteTreatment(new FeverTreatment(cleared, TIME, "Paracetamol")));
+    }
+
+    @Test
+    public void loadNewestHistory_loadsSinceTimeButAtLeastMinRows() {
+        int newest = save(Profile.DEFAULT_ID, TIME, "Paracetamol");
+        int older = save(Profile.DEFAULT_ID, TIME.minusHours(30), "Paracetamol");
+        save(Profile.DEFAULT_ID, TIME.minusHours(40), "Paracetamol");
+        assertEquals(Arrays.asList(newest),
+                ids(store.loadNewestHistory(Profile.DEFAULT_ID, TIME.minusHours(24), 1)));
+        assertEquals(Arrays.asList(newest, older),
+                ids(store.loadNewestHistory(Profile.DEFAULT_ID, TIME.minusHours(24), 2)));
+    }
+
+    // Saves a treatment of the profile and returns its id.
+    private int save(long profileId, LocalDateTime time, String name) {
+        FeverTreatment treatment = new FeverTreatment(time, name);
+        treatment.setProfileId(profileId);
+        return store.saveTreatment(treatment);
+    }
+
+    // Returns ids of the treatments in order.
+    private static List<Integer> ids(List<FeverTreatment> treatments) {
+        Integer[] ids = new Integer[treatments.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = treatments.get(i).getId();
+        }
+        return Arrays.asList(ids);
+    }
+}
@@ -0,0 +1,79 @@
+package au.id.fedorgabrus.feverlog.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the buckets and percentiles of the histogram against sorted values.
+ */
+public class LatencyHistogramTest {
+    private static final int VALUES = 100_000;
+    // Values are known within 1/16 of themselves.
+    private static final double RELATIVE_ERROR = 1.0 / 16;
+
+    @Test
+    public void buckets_areContiguousAndNarrow() {
+        Random random = new Random(42);
+        for (int i = 0; i < VALUES; i++) {
+            long value = random.nextLong() >>> (23 + random.nextInt(40));
+            int bucket = LatencyHistogram.bucketOf(value);
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(value + " above bucket " + bucket, value <= highest);
+            assertTrue(value + " below bucket " + bucket,
+                    bucket == 0 || value > LatencyHistogram.highestValueOf(bucket - 1));
+            assertTrue(value + " bucket too wide", highest - value <= value * RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void percentiles_matchSortedValues() {
+        Random random = new Random(7);
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        long[] values = new long[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            // Log-normal, as latencies usually are.
+            values[i] = (long) Math.exp(10 + 2 * random.nextGaussian());
+            histogram.recordNanos(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(VALUES, histogram.getCount());
+        assertEquals(values[VALUES - 1], histogram.getMaxNanos());
+        for (double percentile : new double[] {0, 1, 50, 90, 99, 99.9, 100}) {
+            long expected = values[Math.max(0, (int) Math.ceil(percentile / 100 * VALUES) - 1)];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue("p" + percentile + ": " + actual + " instead of " + expected,
+                    actual >= expected && actual - expected <= expected * RELATIVE_ERROR);
+        }
+    }
+
+    @Test
+    public void recordNanos_countsEveryValueFromManyThreads() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram("test");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final long value = 1000L * (t + 1);
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < VALUES; i++) {
+                        histogram.recordNanos(value);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals((long) threads.length * VALUES, histogram.getCount());
+        assertEquals(1000L * threads.length, histogram.getMaxNanos());
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,240 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the eligibility engine with a brute force search over random doses, amounts and
+ * rules.
+ */
+public class EligibilityEngineTest {
+    private static final String[] MEDICATIONS = {"Paracetamol", "Ibuprofen", "Aspirin"};
+    private static final long HOUR = 60 * 60;
+    private static final int ROUNDS = 200;
+    private static final int OPERATIONS = 300;
+
+    @Test
+    public void nextEligibleTime_matchesBruteForce() {
+        Random random = new Random(42);
+        for (int round = 0; round < ROUNDS; round++) {
+            EligibilityEngine engine = new EligibilityEngine();
+            Reference reference = new Reference();
+            setRandomRules(random, engine, reference);
+            for (int operation = 0; operation < OPERATIONS; operation++) {
+                String medication = MEDICATIONS[random.nextInt(MEDICATIONS.length)];
+                // Small time range, so doses often have equal times.
+                long time = random.nextInt(96) * HOUR / 2;
+                double amount = randomAmount(random);
+                if (random.nextInt(3) == 0) {
+                    assertEquals(reference.removeDose(medication, time, amount),
+                            engine.removeDose(medication, time, amount));
+                }
+                else {
+                    engine.addDose(medication, time, amount);
+                    reference.addDose(medication, time, amount);
+                }
+                long now = random.nextInt(120) * HOUR / 2;
+                double nextAmount = randomAmount(random);
+                long window = (1 + random.nextInt(24)) * HOUR;
+                for (String name : MEDICATIONS) {
+                    String message = "Round " + round + ", operation " + operation + ", " + name;
+                    assertEquals(message, reference.getNextEligibleTime(name, nextAmount, now),
+                            engine.getNextEligibleTime(name, nextAmount, now));
+                    assertEquals(message, reference.getAmountInWindow(name, window, now),
+                            engine.getAmountInWindow(name, window, now), 0);
+                }
+                assertEquals(reference.getAmountInWindow(null, window, now),
+                        engine.getAmountInWindow(null, window, now), 0);
+            }
+        }
+    }
+
+    @Test
+    public void nextEligibleTimes_coversTakenMedications() {
+        EligibilityEngine engine = new EligibilityEngine();
+        engine.setRule("Ibuprofen", new MedicationRule(6 * HOUR, 3, 24 * HOUR));
+        engine.addDose("Paracetamol", 0);
+        Map<String, Long> times = engine.getNextEligibleTimes(HOUR);
+        assertEquals(2, times.size());
+        assertEquals(Long.valueOf(HOUR), times.get("Paracetamol"));
+        assertEquals(Long.valueOf(HOUR), times.get("Ibuprofen"));
+    }
+
+    @Test
+    public void amountLimit_waitsForOldestDosesToLeaveWindow() {
+        EligibilityEngine engine = new EligibilityEngine();
+        engine.setRule("Paracetamol", new MedicationRule(MedicationRule.NO_LIMIT,
+                MedicationRule.NO_LIMIT, 24 * HOUR, 4000));
+        engine.addDose("Paracetamol", 0, 1000);
+        engine.addDose("Paracetamol", 6 * HOUR, 1000);
+        engine.addDose("Paracetamol", 12 * HOUR, 1000);
+        assertEquals(12 * HOUR, engine.getNextEligibleTime("Paracetamol", 1000, 12 * HOUR));
+        // 1500 fit only after the first dose leaves the window.
+        assertEquals(24 * HOUR, engine.getNextEligibleTime("Paracetamol", 1500, 12 * HOUR));
+        // 2500 fit only after the second dose leaves the window too.
+        assertEquals(30 * HOUR, engine.getNextEligibleTime("Paracetamol", 2500, 12 * HOUR));
+        assertEquals(2000, engine.getAmountInWindow("Paracetamol", 24 * HOUR, 25 * HOUR), 0);
+    }
+
+    @Test
+    public void clearDoses_keepsRules() {
+        EligibilityEngine engine = new EligibilityEngine();
+        engine.setGeneralRule(new MedicationRule(4 * HOUR, MedicationRule.NO_LIMIT, 0));
+        engine.addDose("Paracetamol", 0);
+        assertEquals(4 * HOUR, engine.getNextEligibleTime("Ibuprofen", 0));
+        engine.clearDoses();
+        assertEquals(0, engine.getNextEligibleTime("Ibuprofen", 0));
+    }
+
+    // Sets the same random rules to the engine and the reference.
+    private static void setRandomRules(Random random, EligibilityEngine engine,
+                                       Reference reference) {
+        if (random.nextBoolean()) {
+            MedicationRule rule = randomRule(random);
+            engine.setGeneralRule(rule);
+            reference.generalRule = rule;
+        }
+        for (String medication : MEDICATIONS) {
+            if (random.nextBoolean()) {
+                MedicationRule rule = randomRule(random);
+                engine.setRule(medication, rule);
+                reference.rules.put(medication, rule);
+            }
+        }
+        for (String before : MEDICATIONS) {
+            for (String after : MEDICATIONS) {
+                if (random.nextInt(4) == 0) {
+                    long spacing = random.nextInt(8) * HOUR;
+                    engine.addSpacingRule(before, after, spacing);
+                    reference.spacings.add(new Object[] {before, after, spacing});
+                }
+            }
+        }
+    }
+
+    private static MedicationRule randomRule(Random random) {
+        long interval = random.nextInt(3) == 0 ? MedicationRule.NO_LIMIT : random.nextInt(8) * HOUR;
+        int maxDoses = random.nextInt(3) == 0 ? MedicationRule.NO_LIMIT : 1 + random.nextInt(5);
+        double maxAmount = random.nextInt(3) == 0 ? MedicationRule.NO_LIMIT
+                : 250 * (1 + random.nextInt(16));
+        return new MedicationRule(interval, maxDoses, (1 + random.nextInt(24)) * HOUR, maxAmount);
+    }
+
+    // Amounts are whole, so sums are exact.
+    private static double randomAmount(Random random) {
+        return random.nextInt(4) == 0 ? FeverTreatment.NO_DOSE_AMOUNT : 250 * random.nextInt(5);
+    }
+
+    /**
+     * Keeps doses in a list and checks every candidate time against the rules literally.
+     */
+    private static class Reference {
+        private final List<Object[]> doses = new ArrayList<>();
+        private final Map<String, MedicationRule> rules = new HashMap<>();
+        private final List<Object[]> spacings = new ArrayList<>();
+        private MedicationRule generalRule = null;
+
+        void addDose(String medication, long time, double amount) {
+            doses.add(new Object[] {medication, time, amount});
+        }
+
+        boolean removeDose(String medication, long time, double amount) {
+            for (int i = 0; i < doses.size(); i++) {
+                if (doses.get(i)[0].equals(medication) && (long) doses.get(i)[1] == time
+                        && (double) doses.get(i)[2] == amount) {
+                    doses.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        double getAmountInWindow(String medication, long window, long now) {
+            double sum = 0;
+            for (Object[] dose : doses) {
+                long time = (long) dose[1];
+                if ((medication == null || dose[0].equals(medication))
+                        && time > now - window && time <= now) {
+                    sum += (double) dose[2];
+                }
+            }
+            return sum;
+        }
+
+        long getNextEligibleTime(String medication, double amount, long now) {
+            // Earliest time is now or the moment when one of the restrictions ends.
+            TreeSet<Long> candidates = new TreeSet<>();
+            candidates.add(now);
+            for (Object[] dose : doses) {
+                long time = (long) dose[1];
+                for (long offset = 0; offset <= 48 * HOUR; offset += HOUR) {
+                    if (time + offset >= now) {
+                        candidates.add(time + offset);
+                    }
+                }
+            }
+            for (long candidate : candidates) {
+                if (isEligible(medication, amount, candidate)) {
+                    return candidate;
+                }
+            }
+            throw new AssertionError("No eligible time found.");
+        }
+
+        private boolean isEligible(String medication, double amount, long time) {
+            if (generalRule != null && !satisfies(generalRule, null, amount, time)) {
+                return false;
+            }
+            MedicationRule rule = rules.get(medication);
+            if (rule != null && !satisfies(rule, medication, amount, time)) {
+                return false;
+            }
+            for (Object[] spacing : spacings) {
+                if (!spacing[1].equals(medication)) {
+                    continue;
+                }
+                for (Object[] dose : doses) {
+                    if (dose[0].equals(spacing[0]) && (long) dose[1] + (long) spacing[2] > time) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // Checks rule against doses of the medication, or of all medications if it's null.
+        private boolean satisfies(MedicationRule rule, String medication, double amount,
+                                  long time) {
+            int inWindow = 0;
+            double amountInWindow = 0;
+            for (Object[] dose : doses) {
+                if (medication != null && !dose[0].equals(medication)) {
+                    continue;
+                }
+                long doseTime = (long) dose[1];
+                if (rule.getMinIntervalSeconds() != MedicationRule.NO_LIMIT
+                        && doseTime + rule.getMinIntervalSeconds() > time) {
+                    return false;
+                }
+                if (doseTime > time - rule.getWindowSeconds()) {
+                    inWindow++;
+                    amountInWindow += (double) dose[2];
+                }
+            }
+            // Dose larger than the limit is allowed only when the window is empty.
+            if (rule.getMaxAmount() != MedicationRule.NO_LIMIT
+                    && amountInWindow > Math.max(0, rule.getMaxAmount() - amount)) {
+                return false;
+            }
+            return rule.getMaxDoses() == MedicationRule.NO_LIMIT || inWindow < rule.getMaxDoses();
+        }
+    }
+}
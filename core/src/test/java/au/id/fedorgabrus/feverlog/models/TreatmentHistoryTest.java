@@ -0,0 +1,147 @@
+package au.id.fedorgabrus.feverlog.models;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks lookups and moves of the treatment history when treatments have the same time, both in
+ * the DB order and in the order of the history methods, and compares random changes with a list.
+ */
+public class TreatmentHistoryTest {
+    private static final String[] NAMES = {"Paracetamol", "Ibuprofen", "Aspirin"};
+    private static final LocalDateTime TIME = LocalDateTime.of(2020, 5, 1, 12, 30);
+    private static final int ROUNDS = 100;
+    private static final int OPERATIONS = 200;
+
+    @Test
+    public void remove_findsTreatmentWithSameTimeInDbOrder() {
+        TreatmentHistory history = new TreatmentHistory();
+        // DB orders treatments with the same time by id, not by name.
+        history.replaceAll(Arrays.asList(
+                new FeverTreatment(1, TIME, "Paracetamol"),
+                new FeverTreatment(2, TIME, "Ibuprofen")));
+        int index = history.binarySearch(new FeverTreatment(2, TIME, "Ibuprofen"));
+        assertEquals(1, index);
+        history.remove(index);
+        assertEquals(1, history.size());
+        assertEquals(1, history.get(0).getId());
+    }
+
+    @Test
+    public void binarySearch_matchesIdAndName() {
+        TreatmentHistory history = new TreatmentHistory();
+        history.replaceAll(Arrays.asList(
+                new FeverTreatment(3, TIME, "Paracetamol"),
+                new FeverTreatment(1, TIME, "Paracetamol"),
+                new FeverTreatment(2, TIME.minusMinutes(1), "Paracetamol")));
+        assertEquals(1, history.binarySearch(new FeverTreatment(1, TIME, "Paracetamol")));
+        assertEquals(-1, history.binarySearch(new FeverTreatment(1, TIME, "Ibuprofen")));
+        assertEquals(-1, history.binarySearch(new FeverTreatment(2, TIME, "Paracetamol")));
+    }
+
+    @Test
+    public void setId_keepsTreatmentInPlace() {
+        TreatmentHistory history = new TreatmentHistory();
+        history.addFirst(new FeverTreatment(FeverTreatment.DEFAULT_ID, TIME, "Paracetamol"));
+        history.addFirst(new FeverTreatment(FeverTreatment.DEFAULT_ID, TIME, "Ibuprofen"));
+        history.setId(1, 7);
+        history.setId(0, 5);
+        assertEquals(0, history.binarySearch(new FeverTreatment(5, TIME, "Ibuprofen")));
+        assertEquals(1, history.binarySearch(new FeverTreatment(7, TIME, "Paracetamol")));
+    }
+
+    @Test
+    public void update_movesTreatmentAmongSameTimes() {
+        TreatmentHistory history = new TreatmentHistory();
+        history.replaceAll(Arrays.asList(
+                new FeverTreatment(1, TIME, "Paracetamol"),
+                new FeverTreatment(2, TIME, "Ibuprofen"),
+                new FeverTreatment(3, TIME.minusHours(1), "Aspirin")));
+        int index = history.update(2, new FeverTreatment(3, TIME, "Aspirin"));
+        assertOrdered(history);
+        assertEquals(index, history.binarySearch(new FeverTreatment(3, TIME, "Aspirin")));
+        assertEquals(1, history.get(history.binarySearch(
+                new FeverTreatment(1, TIME, "Paracetamol"))).getId());
+    }
+
+    @Test
+    public void randomChanges_matchList() {
+        Random random = new Random(42);
+        for (int round = 0; round < ROUNDS; round++) {
+            TreatmentHistory history = new TreatmentHistory();
+            List<FeverTreatment> reference = new ArrayList<>();
+            int nextId = 1;
+            // Loaded rows keep the DB order, by time and then by id.
+            int loaded = random.nextInt(20);
+            List<FeverTreatment> rows = new ArrayList<>();
+            for (int minutes = 0; rows.size() < loaded; minutes++) {
+                for (int i = random.nextInt(3); i > 0 && rows.size() < loaded; i--) {
+                    rows.add(new FeverTreatment(nextId++, TIME.minusMinutes(minutes),
+                            NAMES[random.nextInt(NAMES.length)]));
+                }
+            }
+            history.replaceAll(rows);
+            reference.addAll(rows);
+            for (int operation = 0; operation < OPERATIONS; operation++) {
+                String message = "Round " + round + ", operation " + operation;
+                int choice = random.nextInt(4);
+                if (choice == 0 || reference.isEmpty()) {
+                    FeverTreatment treatment = randomTreatment(random, nextId++);
+                    int index = history.insert(treatment);
+                    assertEquals(message, treatment.getId(), history.get(index).getId());
+                    reference.add(treatment);
+                }
+                else {
+                    FeverTreatment treatment = reference.get(random.nextInt(reference.size()));
+                    int index = history.binarySearch(treatment);
+                    assertTrue(message, index >= 0);
+                    assertEquals(message, treatment, history.get(index));
+                    if (choice == 1) {
+                        history.remove(index);
+                        reference.remove(treatment);
+                    }
+                    else if (choice == 2) {
+                        FeverTreatment edited = randomTreatment(random, treatment.getId());
+                        index = history.update(index, edited);
+                        assertEquals(message, edited, history.get(index));
+                        reference.set(reference.indexOf(treatment), edited);
+                    }
+                    else {
+                        FeverTreatment saved = new FeverTreatment(nextId++,
+                                treatment.getTreatmentTime(), treatment.getTreatmentName());
+                        history.setId(index, saved.getId());
+                        assertEquals(message, saved, history.get(index));
+                        reference.set(reference.indexOf(treatment), saved);
+                    }
+                }
+                assertEquals(message, reference.size(), history.size());
+                assertOrdered(history);
+            }
+            for (FeverTreatment treatment : reference) {
+                assertEquals(treatment, history.get(history.binarySearch(treatment)));
+            }
+        }
+    }
+
+    // Small time range, so treatments often have the same time.
+    private static FeverTreatment randomTreatment(Random random, int id) {
+        return new FeverTreatment(id, TIME.minusMinutes(random.nextInt(5)),
+                NAMES[random.nextInt(NAMES.length)]);
+    }
+
+    // Checks the descending time order.
+    private static void assertOrdered(TreatmentHistory history) {
+        for (int i = 1; i < history.size(); i++) {
+            assertTrue("Treatment " + i + " is newer than the previous one",
+                    history.getTimeKey(i - 1) >= history.getTimeKey(i));
+        }
+    }
+}